@@ -0,0 +1,59 @@
+package Benchmarks;
+
+import DocIndexingManagement.Indexing.Dictionary;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dictionary.insert end to end: the logged occurrence, and the postings of a document once the next one starts.
+ * Documents of a fixed length are replayed in docID order as the indexer does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DictionaryBenchmark
+{
+    private static final int WORDS_PER_DOCUMENT = 300;
+    private static int dictionaryCounter = 1000;
+
+    @Param({"10000", "100000"})
+    public int vocabularySize;
+
+    private int dictionaryID;
+    private Dictionary dictionary;
+    private String[] words;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setUp()
+    {
+        dictionaryID = dictionaryCounter++;
+        dictionary = Dictionary.getIntance(dictionaryID, false);
+        words = new SyntheticCorpus(vocabularySize, 42).words(1 << 20);
+        next = 0;
+    }
+
+    /**
+     * a dictionary writes its files to the working directory, every iteration removes those of its own
+     */
+    @TearDown(Level.Iteration)
+    public void tearDown()
+    {
+        dictionary.close();
+        for (String name : new String[]{"index" + dictionaryID, "postingVector" + dictionaryID})
+            for (String suffix : new String[]{"", ".wal", ".manifest", ".terms"})
+                new File(name + suffix).delete();
+    }
+
+    @Benchmark
+    public void insert()
+    {
+        dictionary.insert(words[next & (words.length - 1)], next / WORDS_PER_DOCUMENT);
+        next++;
+    }
+}
@@ -0,0 +1,49 @@
+package Benchmarks;
+
+import FileManagement.FileReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizes a whole synthetic corpus per invocation; the bytes counter reports the input bytes per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileReaderBenchmark
+{
+    @Param({"1000000"})
+    public int bufferSize;
+
+    private File corpusFile;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes
+    {
+        public long bytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        corpusFile = new SyntheticCorpus(50000, 42).writeCorpus(2000, 500);
+    }
+
+    @Benchmark
+    public void tokenize(Bytes counter, Blackhole blackhole)
+    {
+        FileReader reader = new FileReader(corpusFile.getPath());
+        Vector<String> words;
+        while ((words = reader.readWithBufferSize(bufferSize)) != null)
+            blackhole.consume(words);
+        counter.bytes += corpusFile.length();
+    }
+}
@@ -0,0 +1,82 @@
+package Benchmarks;
+
+import DataStructures.Postings.PostingsCursor;
+import DataStructures.Postings.PostingsFile;
+import DataStructures.Postings.PostingsList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends of one posting to lists, skips with a cursor and full reads of a list on a postings file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PostingsFileBenchmark
+{
+    @Param({"100", "10000"})
+    public int listLength;
+
+    @Param({"100"})
+    public int listCount;
+
+    private PostingsFile postingsFile;
+    private long[] lists;
+    private int[] lastDocIDs;
+    private int[] targets;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        postingsFile = new PostingsFile(SyntheticCorpus.newIndexFile("postings"));
+        Random random = new Random(42);
+        lists = new long[listCount];
+        lastDocIDs = new int[listCount];
+        for (int i = 0; i < listCount; i++)
+        {
+            PostingsList postingsList = new PostingsList(listLength);
+            int docID = 0;
+            for (int j = 0; j < listLength; j++)
+                postingsList.append(docID += 1 + random.nextInt(8), 1 + random.nextInt(4));
+            lists[i] = postingsFile.write(postingsList);
+            lastDocIDs[i] = docID;
+        }
+        targets = new int[1 << 16];
+        for (int i = 0; i < targets.length; i++)
+            targets[i] = random.nextInt(4 * listLength);
+        next = 0;
+    }
+
+    /**
+     * a new document for one of the lists, the lists keep growing over the iterations
+     */
+    @Benchmark
+    public long append()
+    {
+        next = (next + 1) % listCount;
+        PostingsList posting = new PostingsList(1);
+        posting.append(++lastDocIDs[next], 1);
+        return lists[next] = postingsFile.append(lists[next], posting);
+    }
+
+    @Benchmark
+    public int advance()
+    {
+        next = (next + 1) & (targets.length - 1);
+        PostingsCursor cursor = postingsFile.cursor(lists[next % listCount]);
+        return cursor.advance(targets[next]);
+    }
+
+    @Benchmark
+    public PostingsList read()
+    {
+        next = (next + 1) % listCount;
+        return postingsFile.read(lists[next]);
+    }
+}
@@ -0,0 +1,77 @@
+package Benchmarks;
+
+import DataStructures.Tree.RamFileBtree;
+import Primitives.TermAbstractDetail;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert, search and update on the dictionary tree, with the whole tree in RAM
+ * and with every node spilled to file behind the node cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RamFileBtreeBenchmark
+{
+    private static final int KEY_MAX_SIZE = 71;
+
+    @Param({"1000", "100000", "1000000"})
+    public int treeSize;
+
+    @Param({"ram", "spilled"})
+    public String mode;
+
+    private RamFileBtree<TermAbstractDetail> tree;
+    private String[] keys, newKeys;
+    private int next, nextNew;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        SyntheticCorpus corpus = new SyntheticCorpus(treeSize, 42);
+        keys = corpus.getVocabulary();
+        newKeys = new SyntheticCorpus(treeSize, 43).getVocabulary();
+        int fileID = SyntheticCorpus.newIndexFile("tree");
+        tree = new RamFileBtree<>(KEY_MAX_SIZE, new TermAbstractDetail(null, null).sizeof(), 17,
+                TermAbstractDetail.class, fileID);
+        for (int i = 0; i < keys.length; i++)
+            if (tree.search(keys[i]) == null)
+                tree.insert(keys[i], new TermAbstractDetail(1, (long) i));
+        if (mode.equals("spilled"))
+            tree.initializeForSequentialRead(); // moves everything below the root to file
+        tree.checkpoint();
+        next = 0;
+        nextNew = 0;
+    }
+
+    @Benchmark
+    public TermAbstractDetail search()
+    {
+        next = (next + 1) % keys.length;
+        return tree.search(keys[next]);
+    }
+
+    @Benchmark
+    public void update()
+    {
+        next = (next + 1) % keys.length;
+        tree.update(keys[next], new TermAbstractDetail(2, (long) next));
+    }
+
+    /**
+     * inserts keys that are not in the tree yet, the tree keeps growing over the iterations
+     */
+    @Benchmark
+    public void insert() throws Exception
+    {
+        String key = newKeys[nextNew] + nextNew;
+        nextNew = (nextNew + 1) % newKeys.length;
+        if (tree.search(key) == null)
+            tree.insert(key, new TermAbstractDetail(1, (long) nextNew));
+    }
+}
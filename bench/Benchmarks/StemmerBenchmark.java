@@ -0,0 +1,37 @@
+package Benchmarks;
+
+import Stemmer.StateHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Words stemmed per second by StateHandler.detectType, called with its neighbours as Main.stemming does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StemmerBenchmark
+{
+    private StateHandler stateHandler;
+    private String[] words;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        stateHandler = new StateHandler();
+        words = new SyntheticCorpus(50000, 42).words(1 << 16);
+        next = 1;
+    }
+
+    @Benchmark
+    public String detectType()
+    {
+        next = next + 1 < words.length - 1 ? next + 1 : 1;
+        return stateHandler.detectType(words[next - 1], words[next], words[next + 1], true);
+    }
+}
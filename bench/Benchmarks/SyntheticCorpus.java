@@ -0,0 +1,102 @@
+package Benchmarks;
+
+import FileManagement.RandomAccessFileManager;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Fixed, seeded Persian-like corpora for the benchmarks, so every run measures the same input.
+ * Word frequencies follow a Zipf-like distribution over a generated vocabulary.
+ */
+public class SyntheticCorpus
+{
+    public static final String ARTICLE_MARKER = "<مقاله>";
+    private static final String LETTERS = "ابپتثجچحخدذرزژسشصضطظعغفقکگلمنوهی";
+    private static final String[] SUFFIXES = {"", "", "", "ها", "ات", "ترین", "گاه", "ستان", "یم", "ند"};
+    private static int fileCounter = 0;
+
+    private final Random random;
+    private final String[] vocabulary;
+    private final double[] cumulativeWeights;
+
+    public SyntheticCorpus(int vocabularySize, long seed)
+    {
+        random = new Random(seed);
+        vocabulary = new String[vocabularySize];
+        cumulativeWeights = new double[vocabularySize];
+        double sum = 0;
+        for (int i = 0; i < vocabularySize; i++)
+        {
+            vocabulary[i] = randomWord();
+            sum += 1.0 / (i + 1);
+            cumulativeWeights[i] = sum;
+        }
+        for (int i = 0; i < vocabularySize; i++)
+            cumulativeWeights[i] /= sum;
+    }
+
+    private String randomWord()
+    {
+        int length = 2 + random.nextInt(6);
+        StringBuilder word = new StringBuilder(length + 4);
+        for (int i = 0; i < length; i++)
+            word.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        word.append(SUFFIXES[random.nextInt(SUFFIXES.length)]);
+        return word.toString();
+    }
+
+    public String[] getVocabulary()
+    {
+        return vocabulary;
+    }
+
+    public String nextWord()
+    {
+        int index = java.util.Arrays.binarySearch(cumulativeWeights, random.nextDouble());
+        return vocabulary[index >= 0 ? index : Math.min(-index - 1, vocabulary.length - 1)];
+    }
+
+    public String[] words(int count)
+    {
+        String[] words = new String[count];
+        for (int i = 0; i < count; i++)
+            words[i] = nextWord();
+        return words;
+    }
+
+    /**
+     * writes articles separated by the article marker and returns the file
+     */
+    public File writeCorpus(int articles, int wordsPerArticle) throws IOException
+    {
+        File file = File.createTempFile("isr-bench-corpus", ".txt");
+        file.deleteOnExit();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))
+        {
+            for (int i = 0; i < articles; i++)
+            {
+                writer.write(ARTICLE_MARKER);
+                writer.write('\n');
+                for (int j = 0; j < wordsPerArticle; j++)
+                {
+                    writer.write(nextWord());
+                    writer.write(j % 15 == 14 ? "،\n" : " ");
+                }
+                writer.write('\n');
+            }
+        }
+        return file;
+    }
+
+    /**
+     * opens a fresh index file in the temp directory, RandomAccessFileManager keeps files by name
+     */
+    public static synchronized int newIndexFile(String name)
+    {
+        String fileName = System.getProperty("java.io.tmpdir") + File.separator + "isr-bench-" + name + "-" + (fileCounter++);
+        new File(fileName).deleteOnExit();
+        return RandomAccessFileManager.createNewInstance(fileName);
+    }
+}
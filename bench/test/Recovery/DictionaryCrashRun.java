@@ -0,0 +1,104 @@
+package Recovery;
+
+import DataStructures.Postings.PostingsCursor;
+import DocIndexingManagement.Indexing.Dictionary;
+import FileManagement.WriteAheadLog;
+
+import java.util.*;
+
+/**
+ * One run of a dictionary in its own JVM, in the working directory it is started in.
+ * <pre>
+ * crash n    indexes documents 1..n from scratch, checkpointing every CHECKPOINT_INTERVAL, and halts without closing
+ * check n    reopens the dictionary and exits with 0 if it recovered all documents of the crash run,
+ *            with 1 and the first difference otherwise
+ * </pre>
+ * The crash run waits longer than a group commit before its last document, so the commit of that document
+ * forces the whole log and nothing logged may be lost.
+ */
+public class DictionaryCrashRun
+{
+    static final int DICTIONARY_ID = 7;
+    static final int CHECKPOINT_INTERVAL = 700;
+
+    public static void main(String[] args)
+    {
+        int documents = Integer.parseInt(args[1]);
+        if (args[0].equals("crash"))
+        {
+            Dictionary dictionary = Dictionary.getIntance(DICTIONARY_ID, false);
+            for (int docID = 1; docID <= documents; docID++)
+            {
+                if (docID == documents)
+                    sleep(2 * WriteAheadLog.DEFAULT_GROUP_COMMIT_MILLIS);
+                dictionary.addDocument(document(docID), docID);
+                if (docID % CHECKPOINT_INTERVAL == 0)
+                    dictionary.checkpoint();
+            }
+            Runtime.getRuntime().halt(0);
+        }
+        String difference = check(Dictionary.getIntance(DICTIONARY_ID), documents);
+        if (difference != null)
+            System.out.println(difference);
+        Runtime.getRuntime().halt(difference == null ? 0 : 1);
+    }
+
+    /**
+     * the first difference between the recovered dictionary and the documents of the crash run, null if there is none
+     */
+    private static String check(Dictionary dictionary, int documents)
+    {
+        if (dictionary.getReplayedRecords() < 0)
+            return "the dictionary did not recover";
+        if (dictionary.getLastDocumentID() != documents || dictionary.getNumberOfDocuments() != documents)
+            return "recovered " + dictionary.getNumberOfDocuments() + " documents up to document "
+                    + dictionary.getLastDocumentID() + " of " + documents;
+        TreeMap<String, TreeMap<Integer, Integer>> postings = new TreeMap<>();
+        for (int docID = 1; docID <= documents; docID++)
+            for (Map.Entry<String, Integer> entry : document(docID).entrySet())
+                postings.computeIfAbsent(entry.getKey(), term -> new TreeMap<>()).put(docID, entry.getValue());
+        for (Map.Entry<String, TreeMap<Integer, Integer>> entry : postings.entrySet())
+        {
+            PostingsCursor cursor = dictionary.getPostingsCursor(entry.getKey());
+            if (cursor == null)
+                return "term " + entry.getKey() + " is lost";
+            for (Map.Entry<Integer, Integer> posting : entry.getValue().entrySet())
+            {
+                if (cursor.docID() != posting.getKey() || cursor.freq() != posting.getValue())
+                    return "term " + entry.getKey() + ": document " + cursor.docID() + " freq " + cursor.freq()
+                            + " instead of document " + posting.getKey() + " freq " + posting.getValue();
+                cursor.next();
+            }
+            if (cursor.docID() != PostingsCursor.NO_MORE_DOCS)
+                return "term " + entry.getKey() + " has document " + cursor.docID() + " it is not in";
+        }
+        return null;
+    }
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * the counted terms of document docID, the same in every run
+     */
+    static Map<String, Integer> document(int docID)
+    {
+        Random random = new Random(docID);
+        HashMap<String, Integer> termFreqs = new HashMap<>();
+        for (int i = 0; i < 60; i++)
+        {
+            String term = "ترم" + (int) Math.abs(random.nextGaussian() * 2000);
+            Integer freq = termFreqs.get(term);
+            termFreqs.put(term, freq == null ? 1 : freq + 1);
+        }
+        return termFreqs;
+    }
+}
@@ -0,0 +1,66 @@
+package Recovery;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A dictionary halted in the middle of indexing, without closing, comes back with everything its log forced.
+ * Both runs are JVMs of their own in a fresh directory, see DictionaryCrashRun.
+ */
+public class DictionaryRecoveryTest
+{
+    private File directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException
+    {
+        directory = Files.createTempDirectory("isr-recovery").toFile();
+    }
+
+    @AfterEach
+    public void deleteDirectory()
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void recoversAfterHalt() throws Exception
+    {
+        assertEquals(0, run("crash", 2500), "crash run");
+        assertEquals(0, run("check", 2500), "recovered dictionary");
+    }
+
+    @Test
+    public void recoversAfterHaltAtCheckpoint() throws Exception
+    {
+        assertEquals(0, run("crash", 2 * DictionaryCrashRun.CHECKPOINT_INTERVAL), "crash run");
+        assertEquals(0, run("check", 2 * DictionaryCrashRun.CHECKPOINT_INTERVAL), "recovered dictionary");
+    }
+
+    private int run(String mode, int documents) throws Exception
+    {
+        File output = new File(directory, mode + ".out");
+        Process process = new ProcessBuilder(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath(),
+                "-Dfile.encoding=UTF-8", "-cp", System.getProperty("java.class.path"),
+                DictionaryCrashRun.class.getName(), mode, String.valueOf(documents))
+                .directory(directory).redirectErrorStream(true).redirectOutput(output).start();
+        assertTrue(process.waitFor(5, TimeUnit.MINUTES), mode + " run did not finish");
+        if (process.exitValue() != 0)
+            System.out.println(new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8));
+        return process.exitValue();
+    }
+}
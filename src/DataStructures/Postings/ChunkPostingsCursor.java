@@ -0,0 +1,231 @@
+package DataStructures.Postings;
+
+import FileManagement.PageStore;
+import Utilities.VByteUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads a postings list of a PostingsFile in docID order, decoding one block of SKIP_INTERVAL postings at a time.
+ * advance uses the skip data of a chunk to jump over the blocks before its target without reading them,
+ * and skips whole chunks by their last docID, so a list is only decoded where a query looks at it.
+ * Positions are read only when asked for, a block at a time.
+ */
+class ChunkPostingsCursor extends PostingsCursor
+{
+    private final PageStore store;
+    private final int size, maxFreq;
+    private final long[] chunks; // oldest first
+    private int chunk; // index in chunks of the current chunk
+    private int chunkSize, blockCount;
+    private long skipsStart, dataStart;
+    private int dataLength, positionsLength;
+    private long positionsStart; // -1 for a chunk without positions
+    private int[] blockLastDocIDs, blockOffsets, blockPositionsOffsets; // skip data of the current chunk
+    private int block; // current block in the chunk
+    private final int[] docIDs, freqs; // decoded postings of the current block
+    private int blockSize, index;
+    private final ByteBuffer blockData;
+    private int docID;
+    private int positionsBlock; // block whose positions are decoded, -1 for none
+    private int[] positionOffsets, positions; // positions of the decoded block, as in PostingsList
+
+    ChunkPostingsCursor(PageStore store, long ptr)
+    {
+        this.store = store;
+        size = store.readInt(ptr);
+        maxFreq = store.readInt(ptr + PostingsFile.MAX_FREQ_OFFSET);
+        int chunkCount = 0;
+        for (long chunk = ptr; chunk != -1; chunk = store.readLong(chunk + PostingsFile.PREVIOUS_OFFSET))
+            chunkCount++;
+        chunks = new long[chunkCount];
+        long chunkPtr = ptr;
+        for (int i = chunkCount - 1; i >= 0; i--)
+        {
+            chunks[i] = chunkPtr;
+            chunkPtr = store.readLong(chunkPtr + PostingsFile.PREVIOUS_OFFSET);
+        }
+        docIDs = new int[PostingsFile.SKIP_INTERVAL];
+        freqs = new int[PostingsFile.SKIP_INTERVAL];
+        blockData = ByteBuffer.allocate(2 * VByteUtils.MAX_BYTES * PostingsFile.SKIP_INTERVAL);
+        blockLastDocIDs = new int[0];
+        blockOffsets = new int[0];
+        blockPositionsOffsets = new int[0];
+        positionOffsets = new int[PostingsFile.SKIP_INTERVAL + 1];
+        positions = new int[16];
+        chunk = -1;
+        docID = -1;
+        if (!openChunk(0))
+            docID = NO_MORE_DOCS;
+        else
+            readBlock(0);
+    }
+
+    @Override
+    public int docID()
+    {
+        return docID;
+    }
+
+    @Override
+    public int freq()
+    {
+        return freqs[index];
+    }
+
+    @Override
+    public int[] positions()
+    {
+        if (positionsStart == -1)
+            return new int[0];
+        if (positionsBlock != block)
+            readBlockPositions();
+        return Arrays.copyOfRange(positions, positionOffsets[index], positionOffsets[index + 1]);
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public int getMaxFreq()
+    {
+        return maxFreq;
+    }
+
+    @Override
+    public int next()
+    {
+        if (docID == NO_MORE_DOCS)
+            return docID;
+        if (++index < blockSize)
+            return docID = docIDs[index];
+        if (block + 1 < blockCount)
+            readBlock(block + 1);
+        else if (openChunk(chunk + 1))
+            readBlock(0);
+        else
+            docID = NO_MORE_DOCS;
+        return docID;
+    }
+
+    @Override
+    public int advance(int target)
+    {
+        if (docID >= target)
+            return docID;
+        // later chunks hold larger docIDs, skip those ending before target
+        if (blockLastDocIDs[blockCount - 1] < target)
+        {
+            do
+            {
+                if (!openChunk(chunk + 1))
+                    return docID = NO_MORE_DOCS;
+            } while (blockLastDocIDs[blockCount - 1] < target);
+            readBlock(findBlock(target, 0));
+        } else if (blockLastDocIDs[block] < target)
+            readBlock(findBlock(target, block + 1));
+        while (docID < target)
+            docID = docIDs[++index];
+        return docID;
+    }
+
+    /**
+     * first block of the current chunk from block from on whose last docID is not less than target
+     */
+    private int findBlock(int target, int from)
+    {
+        int to = blockCount - 1;
+        while (from < to)
+        {
+            int mid = (from + to) >>> 1;
+            if (blockLastDocIDs[mid] < target)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+        return from;
+    }
+
+    /**
+     * reads the header and skip data of chunk, false if there is no such chunk
+     */
+    private boolean openChunk(int chunk)
+    {
+        if (chunk >= chunks.length)
+            return false;
+        this.chunk = chunk;
+        long ptr = chunks[chunk];
+        chunkSize = store.readInt(ptr + PostingsFile.CHUNK_SIZE_OFFSET);
+        blockCount = store.readInt(ptr + PostingsFile.BLOCK_COUNT_OFFSET);
+        dataLength = store.readInt(ptr + PostingsFile.DATA_LENGTH_OFFSET);
+        positionsLength = store.readInt(ptr + PostingsFile.POSITIONS_LENGTH_OFFSET);
+        positionsStart = store.readLong(ptr + PostingsFile.POSITIONS_OFFSET);
+        positionsBlock = -1;
+        skipsStart = ptr + PostingsFile.HEADER_SIZE;
+        dataStart = skipsStart + (long) blockCount * PostingsFile.SKIP_ENTRY_SIZE;
+        if (blockCount == 0)
+            return openChunk(chunk + 1);
+        ByteBuffer skips = ByteBuffer.allocate(blockCount * PostingsFile.SKIP_ENTRY_SIZE);
+        store.read(skipsStart, skips);
+        skips.flip();
+        if (blockLastDocIDs.length < blockCount)
+        {
+            blockLastDocIDs = new int[blockCount];
+            blockOffsets = new int[blockCount];
+            blockPositionsOffsets = new int[blockCount];
+        }
+        for (int i = 0; i < blockCount; i++)
+        {
+            blockLastDocIDs[i] = skips.getInt();
+            blockOffsets[i] = skips.getInt();
+            blockPositionsOffsets[i] = skips.getInt();
+        }
+        return true;
+    }
+
+    /**
+     * decodes block of the current chunk and moves to its first posting
+     */
+    private void readBlock(int block)
+    {
+        this.block = block;
+        int end = block + 1 < blockCount ? blockOffsets[block + 1] : dataLength;
+        blockData.clear();
+        blockData.limit(end - blockOffsets[block]);
+        store.read(dataStart + blockOffsets[block], blockData);
+        blockData.flip();
+        blockSize = Math.min(PostingsFile.SKIP_INTERVAL, chunkSize - block * PostingsFile.SKIP_INTERVAL);
+        int lastDocID = block == 0 ? 0 : blockLastDocIDs[block - 1];
+        for (int i = 0; i < blockSize; i++)
+        {
+            lastDocID += VByteUtils.read(blockData);
+            docIDs[i] = lastDocID;
+            freqs[i] = VByteUtils.read(blockData);
+        }
+        index = 0;
+        docID = docIDs[0];
+    }
+
+    private void readBlockPositions()
+    {
+        int start = blockPositionsOffsets[block];
+        int end = block + 1 < blockCount ? blockPositionsOffsets[block + 1] : positionsLength;
+        ByteBuffer data = ByteBuffer.allocate(end - start);
+        store.read(positionsStart + start, data);
+        data.flip();
+        for (int i = 0; i < blockSize; i++)
+        {
+            int count = VByteUtils.read(data);
+            positionOffsets[i + 1] = positionOffsets[i] + count;
+            if (positionOffsets[i + 1] > positions.length)
+                positions = Arrays.copyOf(positions, Math.max(positionOffsets[i + 1], 2 * positions.length));
+            for (int j = positionOffsets[i], position = 0; j < positionOffsets[i + 1]; j++)
+                positions[j] = position += VByteUtils.read(data);
+        }
+        positionsBlock = block;
+    }
+}
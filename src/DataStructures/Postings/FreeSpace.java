@@ -0,0 +1,92 @@
+package DataStructures.Postings;
+
+import java.util.Arrays;
+
+/**
+ * Regions of a store that nothing refers to any more, kept by size class. Regions shorter than EXACT_LENGTHS
+ * have a class per length, as chunks of one list come back in much the same sizes; longer ones are classed by
+ * their power of two, class c holding 2^c to 2^(c+1) - 1 bytes. A request takes a region of its own length,
+ * else one at most twice as long, else one of the first large class whose regions all fit it.
+ * What is left of a region after a request goes back as a smaller region.
+ * <p>
+ * Only kept in memory; space freed before a restart is not found again after it.
+ */
+class FreeSpace
+{
+    private static final int MIN_REGION = 16; // smaller remainders are not worth keeping
+    private static final int EXACT_LENGTHS = 1024;
+    private static final int LOG_EXACT_LENGTHS = 10;
+
+    private final long[][] offsets;
+    private final int[][] lengths;
+    private final int[] counts;
+    private long freeBytes;
+
+    FreeSpace()
+    {
+        int classes = EXACT_LENGTHS + Integer.SIZE - LOG_EXACT_LENGTHS;
+        offsets = new long[classes][];
+        lengths = new int[classes][];
+        counts = new int[classes];
+    }
+
+    synchronized void free(long offset, int length)
+    {
+        if (length < MIN_REGION)
+            return;
+        int sizeClass = length < EXACT_LENGTHS ? length : EXACT_LENGTHS + floorLog2(length) - LOG_EXACT_LENGTHS;
+        if (offsets[sizeClass] == null)
+        {
+            offsets[sizeClass] = new long[16];
+            lengths[sizeClass] = new int[16];
+        } else if (counts[sizeClass] == offsets[sizeClass].length)
+        {
+            offsets[sizeClass] = Arrays.copyOf(offsets[sizeClass], 2 * counts[sizeClass]);
+            lengths[sizeClass] = Arrays.copyOf(lengths[sizeClass], 2 * counts[sizeClass]);
+        }
+        offsets[sizeClass][counts[sizeClass]] = offset;
+        lengths[sizeClass][counts[sizeClass]++] = length;
+        freeBytes += length;
+    }
+
+    /**
+     * position of length free bytes, now taken, or -1 if no free region is large enough
+     */
+    synchronized long allocate(int length)
+    {
+        if (length < EXACT_LENGTHS)
+            for (int sizeClass = length; sizeClass <= Math.min(2 * length, EXACT_LENGTHS - 1); sizeClass++)
+                if (counts[sizeClass] > 0)
+                    return take(sizeClass, length);
+        int firstFitting = length < EXACT_LENGTHS ? EXACT_LENGTHS : EXACT_LENGTHS + ceilLog2(length) - LOG_EXACT_LENGTHS;
+        for (int sizeClass = firstFitting; sizeClass < counts.length; sizeClass++)
+            if (counts[sizeClass] > 0)
+                return take(sizeClass, length);
+        return -1;
+    }
+
+    synchronized long getFreeBytes()
+    {
+        return freeBytes;
+    }
+
+    private long take(int sizeClass, int length)
+    {
+        int last = --counts[sizeClass];
+        long offset = offsets[sizeClass][last];
+        int regionLength = lengths[sizeClass][last];
+        freeBytes -= regionLength;
+        free(offset + length, regionLength - length);
+        return offset;
+    }
+
+    private static int floorLog2(int n)
+    {
+        return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(n);
+    }
+
+    private static int ceilLog2(int n)
+    {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(n - 1);
+    }
+}
@@ -0,0 +1,79 @@
+package DataStructures.Postings;
+
+import java.util.Arrays;
+
+/**
+ * Cursor over a PostingsList in memory; advance gallops ahead from the current posting and then searches binary.
+ */
+class ListPostingsCursor extends PostingsCursor
+{
+    private final PostingsList postingsList;
+    private final int maxFreq;
+    private int index;
+
+    ListPostingsCursor(PostingsList postingsList)
+    {
+        this.postingsList = postingsList;
+        int maxFreq = 0;
+        for (int i = 0; i < postingsList.size(); i++)
+            maxFreq = Math.max(maxFreq, postingsList.getFreq(i));
+        this.maxFreq = maxFreq;
+        index = 0;
+    }
+
+    @Override
+    public int docID()
+    {
+        return index < postingsList.size() ? postingsList.getDocID(index) : NO_MORE_DOCS;
+    }
+
+    @Override
+    public int freq()
+    {
+        return postingsList.getFreq(index);
+    }
+
+    @Override
+    public int[] positions()
+    {
+        int offset = postingsList.getPositionsOffset(index);
+        return postingsList.getPositionCount(index) == 0 ? new int[0]
+                : Arrays.copyOfRange(postingsList.getPositions(), offset, offset + postingsList.getPositionCount(index));
+    }
+
+    @Override
+    public int size()
+    {
+        return postingsList.size();
+    }
+
+    @Override
+    public int getMaxFreq()
+    {
+        return maxFreq;
+    }
+
+    @Override
+    public int next()
+    {
+        if (index < postingsList.size())
+            index++;
+        return docID();
+    }
+
+    @Override
+    public int advance(int target)
+    {
+        int size = postingsList.size();
+        if (index >= size || postingsList.getDocID(index) >= target)
+            return docID();
+        int step = 1;
+        while (index + step < size && postingsList.getDocID(index + step) < target)
+            step *= 2;
+        int from = index + step / 2 + 1, to = Math.min(index + step, size);
+        index = Arrays.binarySearch(postingsList.getDocIDs(), from, to, target);
+        if (index < 0)
+            index = -index - 1;
+        return docID();
+    }
+}
@@ -0,0 +1,39 @@
+package DataStructures.Postings;
+
+/**
+ * Reads the postings of a term in docID order, one posting at a time, for queries that skip most of them.
+ * The cursor starts on the first posting; docID() is NO_MORE_DOCS once it has passed the last one.
+ * A PostingsFile reads its lists lazily through a cursor of its own, a PostingsList already in memory
+ * gives one over its arrays.
+ */
+public abstract class PostingsCursor
+{
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    public abstract int docID();
+
+    public abstract int freq();
+
+    /**
+     * positions of the term in the current document, empty if they were not indexed
+     */
+    public abstract int[] positions();
+
+    /**
+     * document frequency of the term
+     */
+    public abstract int size();
+
+    public abstract int getMaxFreq();
+
+    /**
+     * moves to the next posting and returns its docID
+     */
+    public abstract int next();
+
+    /**
+     * moves to the first posting whose docID is not less than target and returns its docID;
+     * the cursor does not move back
+     */
+    public abstract int advance(int target);
+}
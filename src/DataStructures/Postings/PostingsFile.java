@@ -0,0 +1,286 @@
+package DataStructures.Postings;
+
+import FileManagement.PageStore;
+import FileManagement.RandomAccessFileManager;
+import Utilities.VByteUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Vector;
+
+/**
+ * Postings lists stored on a page store as chains of chunks, newest first. Every chunk is written once as:
+ * <pre>
+ * int size, int maxFreq, int chunkSize, int blockCount, int dataLength, int positionsLength,
+ * long previous chunk (-1 for the oldest), long positions (-1 for a chunk without positions)
+ * blockCount * (int lastDocID, int dataOffset, int positionsOffset)    skip data, one entry per SKIP_INTERVAL postings
+ * chunkSize * (docID gap, freq)                                         variable byte coded
+ * </pre>
+ * Positions are a separate region of the store: per posting the number of positions and their gaps, variable byte coded.
+ * Readers that do not ask for positions never read them.
+ * size and maxFreq cover the whole chain up to this chunk, so the head holds the document frequency and
+ * the largest term frequency of the list.
+ * Gaps run across block boundaries, so a reader skipping to block i starts from the lastDocID of block i - 1;
+ * every chunk starts again from zero.
+ * <p>
+ * Appending writes the new postings as a new head instead of rewriting the list. The head first takes in
+ * the chunks behind it that are at most twice its size, like a binary counter, so chains stay logarithmic
+ * and every posting is rewritten a logarithmic number of times.
+ * <p>
+ * The chunks taken in, with their positions, are freed and their space goes to later chunks, so the file holds
+ * little more than the live lists. A cursor must not be used after an append to its list.
+ * Free space is only known in memory; a crash needs nothing more, as the page store returns
+ * overwritten bytes to their checkpointed state.
+ */
+public class PostingsFile
+{
+    public static final int SKIP_INTERVAL = 128;
+    public static final int HEADER_SIZE = 6 * Integer.BYTES + 2 * Long.BYTES;
+    public static final int SKIP_ENTRY_SIZE = 3 * Integer.BYTES;
+    static final int MAX_FREQ_OFFSET = Integer.BYTES, CHUNK_SIZE_OFFSET = 2 * Integer.BYTES,
+            BLOCK_COUNT_OFFSET = 3 * Integer.BYTES, DATA_LENGTH_OFFSET = 4 * Integer.BYTES,
+            POSITIONS_LENGTH_OFFSET = 5 * Integer.BYTES, PREVIOUS_OFFSET = 6 * Integer.BYTES,
+            POSITIONS_OFFSET = 6 * Integer.BYTES + Long.BYTES;
+
+    protected final int fileID;
+    private final FreeSpace freeSpace;
+
+    public PostingsFile(int fileID)
+    {
+        this.fileID = fileID;
+        freeSpace = new FreeSpace();
+    }
+
+    /**
+     * appends a new list to the file and returns its pointer
+     */
+    public long write(PostingsList postingsList)
+    {
+        return writeChunk(postingsList, -1, postingsList.size(), 0);
+    }
+
+    public long write(int[] docIDs, int[] freqs, int size)
+    {
+        return write(toPostingsList(docIDs, freqs, size));
+    }
+
+    /**
+     * adds postings to the list at ptr and returns the new pointer of the list; docIDs must be sorted,
+     * and may continue the last document of the list
+     */
+    public long append(long ptr, PostingsList postingsList)
+    {
+        PageStore store = RandomAccessFileManager.getPageStore(fileID);
+        PostingsList merged = postingsList;
+        Vector<Long> takenIn = new Vector<>();
+        long previous = ptr;
+        // take in small chunks, and any chunk the new postings do not follow strictly
+        while (previous != -1 && (store.readInt(previous + CHUNK_SIZE_OFFSET) <= 2 * merged.size()
+                || lastDocID(previous) >= merged.getDocID(0)))
+        {
+            PostingsList chunk = new PostingsList(store.readInt(previous + CHUNK_SIZE_OFFSET) + merged.size());
+            readChunk(previous, chunk, true);
+            if (chunk.size() == 0 || chunk.getDocID(chunk.size() - 1) < merged.getDocID(0))
+                chunk.appendAll(merged);
+            else
+                chunk = PostingsList.merge(chunk, merged); // documents added out of order, as by the shards of a ShardedDictionary
+            merged = chunk;
+            takenIn.add(previous);
+            previous = store.readLong(previous + PREVIOUS_OFFSET);
+        }
+        int listSize = merged.size() + (previous == -1 ? 0 : size(previous));
+        int previousMaxFreq = previous == -1 ? 0 : maxFreq(previous);
+        long head = writeChunk(merged, previous, listSize, previousMaxFreq);
+        for (long chunk : takenIn)
+            free(store, chunk);
+        return head;
+    }
+
+    public long append(long ptr, int[] docIDs, int[] freqs, int size)
+    {
+        return append(ptr, toPostingsList(docIDs, freqs, size));
+    }
+
+    private static PostingsList toPostingsList(int[] docIDs, int[] freqs, int size)
+    {
+        PostingsList postingsList = new PostingsList(size);
+        for (int i = 0; i < size; i++)
+            postingsList.append(docIDs[i], freqs[i]);
+        return postingsList;
+    }
+
+    private long writeChunk(PostingsList chunk, long previous, int size, int maxFreq)
+    {
+        int chunkSize = chunk.size();
+        for (int i = 0; i < chunkSize; i++)
+            maxFreq = Math.max(maxFreq, chunk.getFreq(i));
+        boolean withPositions = chunk.hasPositions();
+        int blockCount = (chunkSize + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+        ByteBuffer skips = ByteBuffer.allocate(blockCount * SKIP_ENTRY_SIZE);
+        ByteBuffer data = ByteBuffer.allocate(2 * VByteUtils.MAX_BYTES * chunkSize);
+        ByteBuffer positions = ByteBuffer.allocate(withPositions
+                ? VByteUtils.MAX_BYTES * (chunkSize + chunk.getPositionsOffset(chunkSize)) : 0);
+        int lastDocID = 0;
+        for (int i = 0; i < chunkSize; i++)
+        {
+            if (i % SKIP_INTERVAL == 0)
+            {
+                int blockEnd = Math.min(i + SKIP_INTERVAL, chunkSize) - 1;
+                skips.putInt(chunk.getDocID(blockEnd));
+                skips.putInt(data.position());
+                skips.putInt(positions.position());
+            }
+            VByteUtils.write(data, chunk.getDocID(i) - lastDocID);
+            VByteUtils.write(data, chunk.getFreq(i));
+            lastDocID = chunk.getDocID(i);
+            if (withPositions)
+            {
+                int count = chunk.getPositionCount(i), offset = chunk.getPositionsOffset(i), lastPosition = 0;
+                VByteUtils.write(positions, count);
+                for (int j = offset; j < offset + count; j++)
+                {
+                    VByteUtils.write(positions, chunk.getPositions()[j] - lastPosition);
+                    lastPosition = chunk.getPositions()[j];
+                }
+            }
+        }
+        skips.flip();
+        data.flip();
+        positions.flip();
+
+        PageStore store = RandomAccessFileManager.getPageStore(fileID);
+        long positionsPtr = -1;
+        if (withPositions)
+        {
+            // a region of its own, reading postings never touches it
+            positionsPtr = allocate(store, positions.remaining());
+            store.write(positionsPtr, positions.duplicate());
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(size);
+        header.putInt(maxFreq);
+        header.putInt(chunkSize);
+        header.putInt(blockCount);
+        header.putInt(data.remaining());
+        header.putInt(positions.remaining());
+        header.putLong(previous);
+        header.putLong(positionsPtr);
+        header.flip();
+
+        long ptr = allocate(store, HEADER_SIZE + skips.remaining() + data.remaining());
+        store.write(ptr, header);
+        store.write(ptr + HEADER_SIZE, skips);
+        store.write(ptr + HEADER_SIZE + blockCount * SKIP_ENTRY_SIZE, data);
+        return ptr;
+    }
+
+    private long allocate(PageStore store, int length)
+    {
+        long ptr = freeSpace.allocate(length);
+        return ptr != -1 ? ptr : store.allocate(length);
+    }
+
+    /**
+     * gives the space of the chunk at ptr and of its positions to later chunks
+     */
+    private void free(PageStore store, long ptr)
+    {
+        long positionsPtr = store.readLong(ptr + POSITIONS_OFFSET);
+        if (positionsPtr != -1)
+            freeSpace.free(positionsPtr, store.readInt(ptr + POSITIONS_LENGTH_OFFSET));
+        freeSpace.free(ptr, HEADER_SIZE + store.readInt(ptr + BLOCK_COUNT_OFFSET) * SKIP_ENTRY_SIZE
+                + store.readInt(ptr + DATA_LENGTH_OFFSET));
+    }
+
+    /**
+     * document frequency of the list at ptr, read from its header only
+     */
+    public int size(long ptr)
+    {
+        return RandomAccessFileManager.getPageStore(fileID).readInt(ptr);
+    }
+
+    /**
+     * largest term frequency in the list at ptr, read from its header only
+     */
+    public int maxFreq(long ptr)
+    {
+        return RandomAccessFileManager.getPageStore(fileID).readInt(ptr + MAX_FREQ_OFFSET);
+    }
+
+    /**
+     * reads the list at ptr lazily, a block of postings at a time
+     */
+    public PostingsCursor cursor(long ptr)
+    {
+        return new ChunkPostingsCursor(RandomAccessFileManager.getPageStore(fileID), ptr);
+    }
+
+    /**
+     * the list at ptr without its positions
+     */
+    public PostingsList read(long ptr)
+    {
+        return read(ptr, false);
+    }
+
+    public PostingsList read(long ptr, boolean withPositions)
+    {
+        PageStore store = RandomAccessFileManager.getPageStore(fileID);
+        Vector<Long> chunks = new Vector<>();
+        for (long chunk = ptr; chunk != -1; chunk = store.readLong(chunk + PREVIOUS_OFFSET))
+            chunks.add(chunk);
+        PostingsList postingsList = new PostingsList(size(ptr));
+        for (int i = chunks.size() - 1; i >= 0; i--)
+            readChunk(chunks.elementAt(i), postingsList, withPositions);
+        return postingsList;
+    }
+
+    private void readChunk(long ptr, PostingsList postingsList, boolean withPositions)
+    {
+        PageStore store = RandomAccessFileManager.getPageStore(fileID);
+        int chunkSize = store.readInt(ptr + CHUNK_SIZE_OFFSET);
+        int blockCount = store.readInt(ptr + BLOCK_COUNT_OFFSET);
+        int dataLength = store.readInt(ptr + DATA_LENGTH_OFFSET);
+        ByteBuffer data = ByteBuffer.allocate(dataLength);
+        store.read(ptr + HEADER_SIZE + blockCount * SKIP_ENTRY_SIZE, data);
+        data.flip();
+        long positionsPtr = store.readLong(ptr + POSITIONS_OFFSET);
+        ByteBuffer positions = null;
+        int[] documentPositions = new int[0];
+        if (withPositions && positionsPtr != -1)
+        {
+            positions = ByteBuffer.allocate(store.readInt(ptr + POSITIONS_LENGTH_OFFSET));
+            store.read(positionsPtr, positions);
+            positions.flip();
+        }
+
+        int docID = 0;
+        for (int i = 0; i < chunkSize; i++)
+        {
+            docID += VByteUtils.read(data);
+            int freq = VByteUtils.read(data);
+            if (positions == null)
+            {
+                postingsList.append(docID, freq);
+                continue;
+            }
+            int count = VByteUtils.read(positions);
+            if (documentPositions.length < count)
+                documentPositions = new int[Math.max(count, 2 * documentPositions.length)];
+            for (int j = 0, position = 0; j < count; j++)
+                documentPositions[j] = position += VByteUtils.read(positions);
+            postingsList.appendWithPositions(docID, freq, documentPositions, 0, count);
+        }
+    }
+
+    /**
+     * last docID of a chunk, from its last skip entry
+     */
+    private int lastDocID(long ptr)
+    {
+        PageStore store = RandomAccessFileManager.getPageStore(fileID);
+        int blockCount = store.readInt(ptr + BLOCK_COUNT_OFFSET);
+        return blockCount == 0 ? -1 : store.readInt(ptr + HEADER_SIZE + (blockCount - 1) * SKIP_ENTRY_SIZE);
+    }
+}
@@ -0,0 +1,219 @@
+package DataStructures.Postings;
+
+import java.util.Arrays;
+
+/**
+ * Decoded postings of one term: docIDs in increasing order with their term frequencies,
+ * and optionally the positions of the term in every document.
+ */
+public class PostingsList
+{
+    protected int[] docIDs;
+    protected int[] freqs;
+    protected int size;
+    // positions of posting i are positions[positionOffsets[i] .. positionOffsets[i + 1]); null while no posting has any
+    protected int[] positionOffsets;
+    protected int[] positions;
+
+    public PostingsList(int capacity)
+    {
+        docIDs = new int[Math.max(capacity, 2)];
+        freqs = new int[docIDs.length];
+        size = 0;
+    }
+
+    public PostingsList()
+    {
+        this(2);
+    }
+
+    public void add(int docID)
+    {
+        append(docID, 1);
+    }
+
+    /**
+     * adds freq occurrences in docID; docIDs arriving out of order are inserted at their sorted place
+     */
+    public void append(int docID, int freq)
+    {
+        int index = size;
+        if (size > 0 && docIDs[size - 1] >= docID)
+        {
+            index = Arrays.binarySearch(docIDs, 0, size, docID);
+            if (index >= 0)
+            {
+                freqs[index] += freq;
+                return;
+            }
+            index = -index - 1;
+        }
+        grow();
+        System.arraycopy(docIDs, index, docIDs, index + 1, size - index);
+        System.arraycopy(freqs, index, freqs, index + 1, size - index);
+        if (positionOffsets != null)
+        {
+            // the new posting has no positions
+            System.arraycopy(positionOffsets, index + 1, positionOffsets, index + 2, size - index);
+            positionOffsets[index + 1] = positionOffsets[index];
+        }
+        docIDs[index] = docID;
+        freqs[index] = freq;
+        size++;
+    }
+
+    /**
+     * adds a posting with the positions source[from .. from + count) of the term in the document;
+     * docID must be larger than the docIDs in the list
+     */
+    public void appendWithPositions(int docID, int freq, int[] source, int from, int count)
+    {
+        if (count == 0)
+        {
+            append(docID, freq);
+            return;
+        }
+        if (size > 0 && docIDs[size - 1] >= docID)
+            throw new IllegalArgumentException("postings with positions must come in increasing docID order: " + docID);
+        grow();
+        if (positionOffsets == null)
+        {
+            positionOffsets = new int[docIDs.length + 1];
+            positions = new int[Math.max(count, 4)];
+        }
+        int end = positionOffsets[size];
+        if (end + count > positions.length)
+            positions = Arrays.copyOf(positions, Math.max(end + count, 2 * positions.length));
+        System.arraycopy(source, from, positions, end, count);
+        docIDs[size] = docID;
+        freqs[size] = freq;
+        positionOffsets[size + 1] = end + count;
+        size++;
+    }
+
+    private void grow()
+    {
+        if (size < docIDs.length)
+            return;
+        docIDs = Arrays.copyOf(docIDs, size * 2);
+        freqs = Arrays.copyOf(freqs, size * 2);
+        if (positionOffsets != null)
+            positionOffsets = Arrays.copyOf(positionOffsets, size * 2 + 1);
+    }
+
+    public void appendAll(PostingsList other)
+    {
+        for (int i = 0; i < other.size; i++)
+            appendPosting(other, i);
+    }
+
+    /**
+     * the postings of both lists in docID order, for lists whose documents interleave;
+     * a document in both gets the sum of its freqs and the positions of both
+     */
+    public static PostingsList merge(PostingsList first, PostingsList second)
+    {
+        PostingsList merged = new PostingsList(first.size + second.size);
+        int i = 0, j = 0;
+        while (i < first.size || j < second.size)
+        {
+            if (j == second.size || i < first.size && first.docIDs[i] < second.docIDs[j])
+                merged.appendPosting(first, i++);
+            else if (i == first.size || second.docIDs[j] < first.docIDs[i])
+                merged.appendPosting(second, j++);
+            else
+            {
+                int firstCount = first.getPositionCount(i), secondCount = second.getPositionCount(j);
+                int[] positions = new int[firstCount + secondCount];
+                if (firstCount > 0)
+                    System.arraycopy(first.positions, first.positionOffsets[i], positions, 0, firstCount);
+                if (secondCount > 0)
+                    System.arraycopy(second.positions, second.positionOffsets[j], positions, firstCount, secondCount);
+                Arrays.sort(positions);
+                merged.appendWithPositions(first.docIDs[i], first.freqs[i] + second.freqs[j], positions, 0, positions.length);
+                i++;
+                j++;
+            }
+        }
+        return merged;
+    }
+
+    private void appendPosting(PostingsList other, int index)
+    {
+        int count = other.getPositionCount(index);
+        if (count > 0)
+            appendWithPositions(other.docIDs[index], other.freqs[index], other.positions, other.positionOffsets[index], count);
+        else
+            append(other.docIDs[index], other.freqs[index]);
+    }
+
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * whether any posting has positions
+     */
+    public boolean hasPositions()
+    {
+        return positionOffsets != null && positionOffsets[size] > 0;
+    }
+
+    public int getPositionCount(int index)
+    {
+        return positionOffsets == null ? 0 : positionOffsets[index + 1] - positionOffsets[index];
+    }
+
+    /**
+     * start of the positions of posting index in getPositions()
+     */
+    public int getPositionsOffset(int index)
+    {
+        return positionOffsets == null ? 0 : positionOffsets[index];
+    }
+
+    public int[] getPositions()
+    {
+        return positions;
+    }
+
+    public int getDocID(int index)
+    {
+        return docIDs[index];
+    }
+
+    public int getFreq(int index)
+    {
+        return freqs[index];
+    }
+
+    public int[] getDocIDs()
+    {
+        return docIDs;
+    }
+
+    public int[] getFreqs()
+    {
+        return freqs;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * reads the list through a cursor, like the lists of a PostingsFile; the list must not change meanwhile
+     */
+    public PostingsCursor cursor()
+    {
+        return new ListPostingsCursor(this);
+    }
+
+    public long capacityInBytes()
+    {
+        long positionsCapacity = positionOffsets == null ? 0 : positionOffsets.length + positions.length;
+        return Integer.BYTES * (2L * docIDs.length + positionsCapacity);
+    }
+}
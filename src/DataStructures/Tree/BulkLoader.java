@@ -0,0 +1,171 @@
+package DataStructures.Tree;
+
+import DataStructures.Tree.Nodes.FileNode;
+import Primitives.Interfaces.Parsable;
+import Primitives.Interfaces.Sizeofable;
+import Utilities.VByteUtils;
+import javafx.util.Pair;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * Builds file nodes bottom up from keys in increasing order.
+ * Every level keeps one open node; when the next key does not fit the open node at the fill factor,
+ * the node is written and a separator goes up to the next level. A full leaf is chained to the leaf opened after it,
+ * which starts with the key and sends a copy of it up; in a full inner node the key itself moves up.
+ * Each node is written once, pages are allocated in the order they are filled.
+ * The topmost node is not written, it is returned to become the root in RAM.
+ */
+class BulkLoader<Value extends Sizeofable & Parsable>
+{
+    private final int keyMaxSize, valueMaxSize, halfMaxSize, fileID;
+    private final Class<Value> valueClassType;
+    private final double fillFactor;
+    private final Vector<FileNode<Value>> levels; // open node of every level, leaves first
+    private final Vector<Integer> estimatedSizes; // upper bound of the encoded size of every open node
+    private long numberOfKeys;
+
+    BulkLoader(int keyMaxSize, int valueMaxSize, int halfMaxSize, Class<Value> valueClassType, int fileID, double fillFactor)
+    {
+        if (fillFactor <= 0 || fillFactor > 1)
+            throw new IllegalArgumentException("fill factor must be in (0, 1]");
+        this.keyMaxSize = keyMaxSize;
+        this.valueMaxSize = valueMaxSize;
+        this.halfMaxSize = halfMaxSize;
+        this.valueClassType = valueClassType;
+        this.fileID = fileID;
+        this.fillFactor = fillFactor;
+        levels = new Vector<>();
+        estimatedSizes = new Vector<>();
+        numberOfKeys = 0;
+    }
+
+    /**
+     * adds every pair of sortedInput, keys must be strictly increasing
+     *
+     * @return the topmost node, not written to file, or null for an empty input
+     */
+    FileNode<Value> load(Iterator<Pair<String, Value>> sortedInput) throws Exception
+    {
+        String lastKey = null;
+        while (sortedInput.hasNext())
+        {
+            Pair<String, Value> pair = sortedInput.next();
+            if (lastKey != null && pair.getKey().compareTo(lastKey) <= 0)
+                throw new Exception("bulk load input is not sorted: " + pair.getKey());
+            if (pair.getKey().getBytes(StandardCharsets.UTF_8).length > keyMaxSize || pair.getValue().sizeof() > valueMaxSize)
+                throw new Exception("length exceeded");
+            lastKey = pair.getKey();
+            if (levels.isEmpty())
+                openNode(0, null);
+            add(0, pair, null);
+            numberOfKeys++;
+        }
+        return finish();
+    }
+
+    long getNumberOfKeys()
+    {
+        return numberOfKeys;
+    }
+
+    private FileNode<Value> openNode(int level, Long firstChild)
+    {
+        FileNode<Value> node = new FileNode<>(keyMaxSize, valueMaxSize, halfMaxSize, null, valueClassType, fileID);
+        node.allocateOnFile();
+        node.getChild().add(firstChild);
+        if (level == levels.size())
+        {
+            levels.add(node);
+            estimatedSizes.add(0);
+        } else
+        {
+            levels.set(level, node);
+            estimatedSizes.set(level, 0);
+        }
+        return node;
+    }
+
+    /**
+     * adds pair with rightChild after it to the open node of level, closing the node first if the pair does not fit
+     */
+    private void add(int level, Pair<String, Value> pair, Long rightChild)
+    {
+        FileNode<Value> node = levels.elementAt(level);
+        int limit = (int) (node.getPageSize() * fillFactor);
+        int keyLength = pair.getKey().getBytes(StandardCharsets.UTF_8).length;
+        // slot, suffix length and key, plus the value of leaves or the child pointer of inner nodes;
+        // front coding only makes it smaller
+        int estimatedSize = estimatedSizes.elementAt(level) + Short.BYTES + VByteUtils.size(keyLength) + keyLength
+                + (level == 0 ? pair.getValue().sizeof() : Long.BYTES);
+        node.getKeyValPair().add(pair);
+        node.getChild().add(rightChild);
+        if (node.getSize() > 1 && estimatedSize > limit && node.getEncodedSize() > limit)
+        {
+            node.getKeyValPair().remove(node.getSize() - 1);
+            node.getChild().remove(node.getChild().size() - 1);
+            if (level == 0)
+            {
+                closeNode(level, new Pair<>(pair.getKey(), null));
+                add(level, pair, null);
+            } else
+            {
+                closeNode(level, pair);
+                levels.elementAt(level).getChild().set(0, rightChild);
+            }
+        } else
+            estimatedSizes.set(level, estimatedSize);
+    }
+
+    /**
+     * writes the open node of level and moves separator up, the node that follows it at this level starts empty
+     */
+    private void closeNode(int level, Pair<String, Value> separator)
+    {
+        FileNode<Value> node = levels.elementAt(level);
+        if (level + 1 == levels.size())
+            openNode(level + 1, node.getMyPointer());
+        // the open node one level up holds this node as its last child
+        node.setParent(levels.elementAt(level + 1).getMyPointer());
+        FileNode<Value> next = openNode(level, null);
+        if (level == 0)
+            node.setNext(next.getMyPointer());
+        node.writeToFile();
+        add(level + 1, separator, next.getMyPointer());
+    }
+
+    private FileNode<Value> finish()
+    {
+        if (levels.isEmpty())
+            return null;
+        int top = levels.size() - 1;
+        // an inner node left without keys only links its single child, hang that child on the level above instead
+        for (int level = top - 1; level >= 1; level--)
+        {
+            FileNode<Value> node = levels.elementAt(level);
+            if (node.getSize() > 0)
+                continue;
+            FileNode<Value> parent = openParentOf(level);
+            parent.getChild().set(parent.getChild().size() - 1, node.getChild().firstElement());
+            levels.set(level, null);
+        }
+        for (int level = 0; level < top; level++)
+        {
+            FileNode<Value> node = levels.elementAt(level);
+            if (node == null)
+                continue;
+            node.setParent(openParentOf(level).getMyPointer());
+            node.writeToFile();
+        }
+        return levels.elementAt(top);
+    }
+
+    private FileNode<Value> openParentOf(int level)
+    {
+        for (int parentLevel = level + 1; ; parentLevel++)
+            if (levels.elementAt(parentLevel) != null)
+                return levels.elementAt(parentLevel);
+    }
+}
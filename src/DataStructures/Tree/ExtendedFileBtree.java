@@ -6,6 +6,7 @@ import DataStructures.Tree.Nodes.FileNode;
 import DataStructures.Tree.Nodes.RamFileNode;
 import Primitives.Interfaces.Parsable;
 import Primitives.Interfaces.Sizeofable;
+import Primitives.Interfaces.ValueMerger;
 import javafx.util.Pair;
 
 import java.util.HashMap;
@@ -15,8 +16,9 @@ public class ExtendedFileBtree<Value extends Sizeofable & Parsable> extends File
 {
     private HashMap<Long, RootInfo> roots;
     private RamFileBtree<Value> ramFileBtree;
+    private FileNode<Value> lastLeafMoved; // while nodes move to file, the leaf written last, the next leaf follows it
 
-    public ExtendedFileBtree(int keyMaxSize, int valueMaxSize, int halfMaxSize, Class valueClassType, RamFileBtree<Value> ramFileBtree, int fileID)
+    public ExtendedFileBtree(int keyMaxSize, int valueMaxSize, int halfMaxSize, Class<Value> valueClassType, RamFileBtree<Value> ramFileBtree, int fileID)
     {
         super(keyMaxSize, valueMaxSize, halfMaxSize, valueClassType, fileID);
         roots = new HashMap<>();
@@ -65,6 +67,22 @@ public class ExtendedFileBtree<Value extends Sizeofable & Parsable> extends File
         }
     }
 
+    public Value upsert(String key, ValueMerger<Value> merger, Long startingNode)
+    {
+        FileDataLocation<Value> loc = findLoc(key, getNode(startingNode));
+        if (thisDataExists(key, loc))
+        {
+            Value value = merger.merge(loc.getNode().getKeyValPair().elementAt(loc.getOffset()).getValue());
+            updateValue(key, value, loc.getNode(), loc.getOffset());
+            return value;
+        }
+        Value value = merger.merge(null);
+        insert(loc.getNode(), new Pair<>(key, value),
+                null, null);
+        numberOfTermsAdded++;
+        return value;
+    }
+
     @Override
     public void update(String key, Value value)
     {
@@ -76,13 +94,30 @@ public class ExtendedFileBtree<Value extends Sizeofable & Parsable> extends File
         roots.clear();
     }
 
-    protected Long addNewRoot(RamFileNode<Value> newRamRoot, RamFileNode<Value> ramParent,
-                              int newRamPointerLocInParent)
+    /**
+     * moves every subtree of ramParent to file, each one becomes the root of a file tree.
+     * The subtrees are moved in key order, so the leaves moved are chained in the order they are written.
+     */
+    protected void addNewRoots(RamFileNode<Value> ramParent)
+    {
+        invalidateRoots();
+        lastLeafMoved = null;
+        for (int i = 0; i <= ramParent.getSize(); i++)
+        {
+            FileNode<Value> newFileNode = convertRamNodeToFileNode(ramParent.getChild().elementAt(i), null);
+            roots.put(newFileNode.getMyPointer(), new RootInfo(newFileNode.getMyPointer(), new RamDataLocation<>(ramParent, i)));
+            ramParent.getFileChild().set(i, newFileNode.getMyPointer());
+            ramParent.getChild().set(i, null);
+        }
+        lastLeafMoved = null;
+    }
+
+    /**
+     * registers a node already on file as the root of the file tree under position newRamPointerLocInParent of ramParent
+     */
+    protected void addExistingRoot(Long rootPointer, RamFileNode<Value> ramParent, int newRamPointerLocInParent)
     {
-        FileNode<Value> newFileNode = convertRamNodeToFileNode(newRamRoot, null);
-        roots.put(newFileNode.getMyPointer(),
-                new RootInfo(newFileNode.getMyPointer(), new RamDataLocation<>(ramParent, newRamPointerLocInParent)));
-        return newFileNode.getMyPointer();
+        roots.put(rootPointer, new RootInfo(rootPointer, new RamDataLocation<>(ramParent, newRamPointerLocInParent)));
     }
 
     @Override
@@ -92,7 +127,7 @@ public class ExtendedFileBtree<Value extends Sizeofable & Parsable> extends File
     }
 
     @Override
-    protected void addVictimToParent(FileNode<Value> smallerChild, int victim, FileNode<Value> biggerChild)
+    protected void addSeparatorToParent(FileNode<Value> smallerChild, Pair<String, Value> separator, FileNode<Value> biggerChild)
     {
         if (smallerChild.getParent() == null)
         {
@@ -106,13 +141,13 @@ public class ExtendedFileBtree<Value extends Sizeofable & Parsable> extends File
 
             roots.put(biggerChild.getMyPointer(), tempRootInfo);
             ramFileBtree.insert(roots.get(smallerChild.getMyPointer()).locationDetailsInParent.getNode(),
-                    smallerChild.getKeyValPair().remove(victim),
+                    separator,
                     null, null,
                     biggerChild.getMyPointer(), smallerChild.getMyPointer());
         } else
         {
             FileNode<Value> parentNodeTemplate = getNode(smallerChild.getParent());
-            insert(parentNodeTemplate, smallerChild.getKeyValPair().remove(victim), biggerChild.getMyPointer(),
+            insert(parentNodeTemplate, separator, biggerChild.getMyPointer(),
                     smallerChild.getMyPointer());
         }
     }
@@ -120,11 +155,21 @@ public class ExtendedFileBtree<Value extends Sizeofable & Parsable> extends File
     private FileNode<Value> convertRamNodeToFileNode(RamFileNode<Value> newRamNode, Long parent)
     {
         FileNode<Value> newFileNode = createNewMiddleNode(parent);
+        newFileNode.pin();
 
         newFileNode.setKeyValPair(newRamNode.getKeyValPair());
         newFileNode.setId(newRamNode.getId());
         newRamNode.setKeyValPair(null);
-        if (newRamNode.isChildAreOnFile())
+        if (newRamNode.isLeaf())
+        {
+            newFileNode.setChild(newRamNode.getFileChild());
+            if (lastLeafMoved != null)
+            {
+                lastLeafMoved.setNext(newFileNode.getMyPointer());
+                lastLeafMoved.commitChanges();
+            }
+            lastLeafMoved = newFileNode;
+        } else if (newRamNode.isChildAreOnFile())
         {
             newFileNode.setChild(newRamNode.getFileChild());
             for (int i = 0; i < newFileNode.getChild().size(); i++)
@@ -153,11 +198,13 @@ public class ExtendedFileBtree<Value extends Sizeofable & Parsable> extends File
         newRamNode.setFileChild(null);
         newRamNode.setChild(null);
         newRamNode.setParent(null);
+        newRamNode.setNext(null);
         newFileNode.commitChanges();
+        newFileNode.unpin();
         return newFileNode;
     }
 
-    public void updateParent(Long pointer, RamFileNode node)
+    public void updateParent(Long pointer, RamFileNode<Value> node)
     {
         roots.get(pointer).locationDetailsInParent.setNode(node);
     }
@@ -6,13 +6,14 @@ import Primitives.Interfaces.Parsable;
 import Primitives.Interfaces.Sizeofable;
 import javafx.util.Pair;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Vector;
 
 public class FileBtree<Value extends Sizeofable & Parsable> extends FileBtreeTemplate<Value>
 {
     Long root;
 
-    public FileBtree(int keyMaxSize, int valueMaxSize, int halfMaxSize, Class valueClassType, int fileID)
+    public FileBtree(int keyMaxSize, int valueMaxSize, int halfMaxSize, Class<Value> valueClassType, int fileID)
     {
         super(keyMaxSize, valueMaxSize, halfMaxSize, valueClassType, fileID);
         this.root = createNewLeafNode(null).getMyPointer();
@@ -25,7 +26,7 @@ public class FileBtree<Value extends Sizeofable & Parsable> extends FileBtreeTem
 
     public void insert(String key, Value value) throws Exception
     {
-        if (key.getBytes().length > KEY_MAX_SIZE || value.sizeof() > VALUE_MAX_SIZE)
+        if (key.getBytes(StandardCharsets.UTF_8).length > KEY_MAX_SIZE || value.sizeof() > VALUE_MAX_SIZE)
             throw new Exception("length exceeded");
         FileNode<Value> rootNodeTemplate = getRootNode();
         if (rootNodeTemplate.getSize() == 0)
@@ -54,10 +55,10 @@ public class FileBtree<Value extends Sizeofable & Parsable> extends FileBtreeTem
     }
 
     @Override
-    protected void addVictimToParent(FileNode<Value> startingNode, int victim, FileNode<Value> newNodeTemplate)
+    protected void addSeparatorToParent(FileNode<Value> startingNode, Pair<String, Value> separator, FileNode<Value> newNodeTemplate)
     {
         FileNode<Value> parentNodeTemplate = getNode(startingNode.getParent());
-        insert(parentNodeTemplate, startingNode.getKeyValPair().remove(victim), newNodeTemplate.getMyPointer(),
+        insert(parentNodeTemplate, separator, newNodeTemplate.getMyPointer(),
                 startingNode.getMyPointer());
     }
 
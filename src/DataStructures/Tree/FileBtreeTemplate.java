@@ -6,7 +6,6 @@ import Primitives.Interfaces.Parsable;
 import Primitives.Interfaces.Sizeofable;
 import javafx.util.Pair;
 
-import java.util.HashMap;
 import java.util.Vector;
 
 public abstract class FileBtreeTemplate<Value extends Sizeofable & Parsable>
@@ -14,16 +13,17 @@ public abstract class FileBtreeTemplate<Value extends Sizeofable & Parsable>
     protected final int KEY_MAX_SIZE, VALUE_MAX_SIZE;
     protected final int HALF_MAX_SIZE, MAX_SIZE;
     protected final int fileID;
-    protected final Class valueClassType;
+    protected final Class<Value> valueClassType;
     protected int depth;
-    protected HashMap<Long, FileNode<Value>> nodeCache;
+    protected NodeCache<Value> nodeCache;
+    private final ThreadLocal<FileDataLocation<Value>> location = ThreadLocal.withInitial(() -> new FileDataLocation<>(null, 0));
 
     protected long numberOfTermsAdded;
 
-    public FileBtreeTemplate(int keyMaxSize, int valueMaxSize, int halfMaxSize, Class valueClassType, int fileID)
+    public FileBtreeTemplate(int keyMaxSize, int valueMaxSize, int halfMaxSize, Class<Value> valueClassType, int fileID)
     {
         this.fileID = fileID;
-        nodeCache = new HashMap<>();
+        nodeCache = new NodeCache<>();
         KEY_MAX_SIZE = keyMaxSize;
         VALUE_MAX_SIZE = valueMaxSize;
         this.HALF_MAX_SIZE = halfMaxSize;
@@ -41,16 +41,21 @@ public abstract class FileBtreeTemplate<Value extends Sizeofable & Parsable>
 
     protected abstract void createParentIfRequired(FileNode<Value> oldNodeTemplate, FileNode<Value> newNodeTemplate);
 
-    protected abstract void addVictimToParent(FileNode<Value> startingNode, int victim, FileNode<Value> newNodeTemplate);
+    /**
+     * adds separator, the smallest key under biggerChild, to the parent of smallerChild with biggerChild after it
+     */
+    protected abstract void addSeparatorToParent(FileNode<Value> smallerChild, Pair<String, Value> separator, FileNode<Value> biggerChild);
 
     protected void insert(FileNode<Value> startingNode, Pair<String, Value> newData, Long biggerChild, Long smallerChild)
     {
 //        System.out.println("adding data, pointer: " + startingNode.myPointer + " node size: " + startingNode.getSize());
+        startingNode.pin(); // nodes on the insert path must not be evicted while they are changing
         updateKeyValAndChilds(startingNode, newData, biggerChild, smallerChild);
-        if (startingNode.getSize() > MAX_SIZE)
+        if (!startingNode.fitsInPage())
             splitCurrentNode(startingNode);
 //        System.out.println("data added, pointer: " + startingNode.myPointer + " node size: " + startingNode.getSize());
         startingNode.commitChanges();
+        startingNode.unpin();
     }
 
     private void updateKeyValAndChilds(FileNode<Value> startingNode, Pair<String, Value> newData, Long biggerChild, Long smallerChild)
@@ -108,7 +113,7 @@ public abstract class FileBtreeTemplate<Value extends Sizeofable & Parsable>
         {
             FileNode<Value> resultNode = new FileNode<>(KEY_MAX_SIZE, VALUE_MAX_SIZE, HALF_MAX_SIZE, null, valueClassType, fileID);
             resultNode.fetchNodeFromHard(obj);
-            nodeCache.put(resultNode.getMyPointer(), resultNode);
+            nodeCache.put(resultNode);
             cacheResult = resultNode;
         }
         return cacheResult;
@@ -131,7 +136,7 @@ public abstract class FileBtreeTemplate<Value extends Sizeofable & Parsable>
     {
         FileNode<Value> resultNode = new FileNode<Value>(KEY_MAX_SIZE, VALUE_MAX_SIZE, HALF_MAX_SIZE, parent, valueClassType, fileID);
         resultNode.fetchNodeFromHard(null);
-        nodeCache.put(resultNode.getMyPointer(), resultNode);
+        nodeCache.put(resultNode);
         return resultNode;
     }
 
@@ -142,29 +147,55 @@ public abstract class FileBtreeTemplate<Value extends Sizeofable & Parsable>
 
     protected boolean thisDataExists(String key, FileDataLocation<Value> newLoc)
     {
-        if (newLoc.getOffset() == newLoc.getNode().getSize() ||
-                key.compareTo(newLoc.getNode().getKeyValPair().elementAt(newLoc.getOffset()).getKey()) != 0)
-            return false;
-        return true;
+        return newLoc.isFound();
     }
 
 
+    /**
+     * a leaf keeps its keys before the split index and a copy of the first key of the new leaf goes up,
+     * the new leaf is chained after it; an inner node moves the key at the split index up
+     */
     protected FileNode<Value>[] splitCurrentNode(FileNode<Value> startingNode)
     {
         FileNode<Value> newNodeTemplate = createNewLeafNode(startingNode.getParent());
-        int victim = HALF_MAX_SIZE;
-        int offset = victim + 1;
-        moveDataToSiblingAndCreateParentIfRequired(startingNode, newNodeTemplate, offset);
-        addVictimToParent(startingNode, victim, newNodeTemplate);
+        newNodeTemplate.pin();
+        int victim = startingNode.getSplitIndex();
+        Pair<String, Value> separator;
+        if (startingNode.isLeaf())
+        {
+            moveLeafDataToSiblingAndCreateParentIfRequired(startingNode, newNodeTemplate, victim);
+            separator = new Pair<>(newNodeTemplate.getKeyValPair().firstElement().getKey(), null);
+            newNodeTemplate.setNext(startingNode.getNext());
+            startingNode.setNext(newNodeTemplate.getMyPointer());
+        } else
+        {
+            moveDataToSiblingAndCreateParentIfRequired(startingNode, newNodeTemplate, victim + 1);
+            separator = startingNode.getKeyValPair().remove(victim);
+        }
+        addSeparatorToParent(startingNode, separator, newNodeTemplate);
         newNodeTemplate.commitChanges();
+        newNodeTemplate.unpin();
         return null;
     }
 
+    private void moveLeafDataToSiblingAndCreateParentIfRequired(FileNode<Value> oldNodeTemplate, FileNode<Value> newNodeTemplate, int offset)
+    {
+        while (oldNodeTemplate.getSize() > offset)
+        {
+            newNodeTemplate.getKeyValPair().add(oldNodeTemplate.getKeyValPair().remove(offset));
+            newNodeTemplate.getChild().add(null);
+            oldNodeTemplate.getChild().remove(oldNodeTemplate.getChild().size() - 1);
+        }
+        newNodeTemplate.getChild().add(null);
+        createParentIfRequired(oldNodeTemplate, newNodeTemplate);
+    }
+
     protected void moveDataToSiblingAndCreateParentIfRequired(FileNode<Value> oldNodeTemplate, FileNode<Value> newNodeTemplate, int offset)
     {
-        for (int i = offset; i <= MAX_SIZE; i++)
+        int movedKeys = oldNodeTemplate.getSize() - offset;
+        for (int i = 0; i < movedKeys; i++)
         {
-            if (i == offset) // first node
+            if (i == 0) // first node
             {
                 Long smallerChild = oldNodeTemplate.getChild().remove(offset), biggerChild = oldNodeTemplate.getChild().remove(offset);
                 updateKeyValAndChilds(newNodeTemplate, oldNodeTemplate.getKeyValPair().remove(offset)
@@ -175,18 +206,25 @@ public abstract class FileBtreeTemplate<Value extends Sizeofable & Parsable>
         createParentIfRequired(oldNodeTemplate, newNodeTemplate);
     }
 
+    /**
+     * descends from startingNodeTemplate to the leaf holding key, or to the leaf where key would be added;
+     * a separator equal to key leads to the child after it. The location returned is reused by the next search
+     * of the same thread on this tree.
+     */
     protected FileDataLocation<Value> findLoc(String key, FileNode<Value> startingNodeTemplate)
     {
-        if (startingNodeTemplate.getSize() == 0) return new FileDataLocation<Value>(startingNodeTemplate, 0);
-        Long nextChild;
-        int i1 = startingNodeTemplate.binarySearchForLocationToAdd(key);
-        if (i1 == startingNodeTemplate.getSize())
-            nextChild = startingNodeTemplate.getChild().elementAt(i1);
-        else if (startingNodeTemplate.getKeyValPair().elementAt(i1).getKey().compareTo(key) == 0)
-            return new FileDataLocation<Value>(startingNodeTemplate, i1);
-        else
-            nextChild = startingNodeTemplate.getChild().elementAt(i1);
-        return (nextChild == null ? new FileDataLocation<Value>(startingNodeTemplate, i1) : findLoc(key, getNode(nextChild)));
+        FileDataLocation<Value> loc = location.get();
+        FileNode<Value> node = startingNodeTemplate;
+        while (true)
+        {
+            int i1 = node.binarySearch(key);
+            if (node.isLeaf())
+            {
+                loc.set(node, i1 >= 0 ? i1 : -i1 - 1, i1 >= 0);
+                return loc;
+            }
+            node = getNode(node.getChild().elementAt(i1 >= 0 ? i1 + 1 : -i1 - 1));
+        }
     }
 
     protected String toString(Vector<FileNode<Value>> nodeTemplateQ, int stringDepth)
@@ -217,6 +255,24 @@ public abstract class FileBtreeTemplate<Value extends Sizeofable & Parsable>
                 "\t" + toString(nodeTemplateQ, stringDepth);
     }
 
+    /**
+     * checkpoint: writes all dirty cached nodes to the file
+     */
+    public void flush()
+    {
+        nodeCache.flush();
+    }
+
+    public NodeCache<Value> getNodeCache()
+    {
+        return nodeCache;
+    }
+
+    public void setCacheBudget(long bytes)
+    {
+        nodeCache.setBudget(bytes);
+    }
+
     public long getNumberOfTermsAdded()
     {
         return numberOfTermsAdded;
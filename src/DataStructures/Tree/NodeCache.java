@@ -0,0 +1,140 @@
+package DataStructures.Tree;
+
+import DataStructures.Tree.Nodes.FileNode;
+import Primitives.Interfaces.Parsable;
+import Primitives.Interfaces.Sizeofable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Buffer pool for file nodes, bounded by the total size of their records.
+ * Least recently used unpinned nodes are evicted first, dirty nodes are written back on eviction or flush.
+ */
+public class NodeCache<Value extends Sizeofable & Parsable>
+{
+    public static final long DEFAULT_BUDGET = 64 * 1024 * 1024;
+
+    private final LinkedHashMap<Long, FileNode<Value>> nodes;
+    private long budget;
+    private long usedBytes;
+    private long hits, misses, evictions, writeBacks;
+
+    public NodeCache(long budget)
+    {
+        this.budget = budget;
+        nodes = new LinkedHashMap<>(16, 0.75f, true); // access order gives LRU iteration
+        usedBytes = 0;
+    }
+
+    public NodeCache()
+    {
+        this(DEFAULT_BUDGET);
+    }
+
+    public FileNode<Value> get(Long pointer)
+    {
+        FileNode<Value> node = nodes.get(pointer);
+        if (node == null)
+            misses++;
+        else
+            hits++;
+        return node;
+    }
+
+    public void put(FileNode<Value> node)
+    {
+        FileNode<Value> oldNode = nodes.put(node.getMyPointer(), node);
+        if (oldNode != null)
+            release(oldNode);
+        node.setCached(true);
+        usedBytes += node.getRecordSize();
+        evictIfRequired();
+    }
+
+    /**
+     * writes every dirty node back to its file, nodes stay in the cache
+     */
+    public void flush()
+    {
+        for (FileNode<Value> node : nodes.values())
+            if (node.isDirty())
+            {
+                node.writeToFile();
+                writeBacks++;
+            }
+    }
+
+    public void clear()
+    {
+        for (FileNode<Value> node : nodes.values())
+            release(node);
+        nodes.clear();
+    }
+
+    private void evictIfRequired()
+    {
+        Iterator<FileNode<Value>> iterator = nodes.values().iterator();
+        while (usedBytes > budget && iterator.hasNext())
+        {
+            FileNode<Value> node = iterator.next();
+            if (node.isPinned())
+                continue;
+            iterator.remove();
+            release(node);
+            evictions++;
+        }
+    }
+
+    private void release(FileNode<Value> node)
+    {
+        if (node.isDirty())
+        {
+            node.writeToFile();
+            writeBacks++;
+        }
+        node.setCached(false);
+        usedBytes -= node.getRecordSize();
+    }
+
+    public long getBudget()
+    {
+        return budget;
+    }
+
+    public void setBudget(long budget)
+    {
+        this.budget = budget;
+        evictIfRequired();
+    }
+
+    public long getUsedBytes()
+    {
+        return usedBytes;
+    }
+
+    public int size()
+    {
+        return nodes.size();
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
+    public long getWriteBacks()
+    {
+        return writeBacks;
+    }
+}
@@ -4,6 +4,7 @@ class DataLocation<T>
 {
     private T node;
     private int offset;
+    private boolean found; // the key searched for is at offset of node
 
     public DataLocation(T node, int offset)
     {
@@ -30,4 +31,19 @@ class DataLocation<T>
     {
         this.offset = offset;
     }
+
+    public boolean isFound()
+    {
+        return found;
+    }
+
+    /**
+     * reuses the location for another search result
+     */
+    public void set(T node, int offset, boolean found)
+    {
+        this.node = node;
+        this.offset = offset;
+        this.found = found;
+    }
 }
\ No newline at end of file
@@ -1,27 +1,49 @@
 package DataStructures.Tree.Nodes;
 
 import DataStructures.Tree.RamFileBtree;
+import FileManagement.PageStore;
 import FileManagement.RandomAccessFileManager;
 import Primitives.Interfaces.Parsable;
 import Primitives.Interfaces.Sizeofable;
+import Utilities.VByteUtils;
 import javafx.util.Pair;
 
-import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Vector;
 
+/**
+ * A node is stored as one fixed size slotted page:
+ * header (parent, next leaf, id, key count, prefix length, start of the cells, has children flag),
+ * child pointers when the node is not a leaf, the prefix shared by all keys of the node,
+ * one slot per key holding the offset of its cell, free space, and the cells written back to front from the page end.
+ * A cell is the variable byte coded suffix length, the key suffix (UTF-8) and, in a leaf, the value.
+ * Values are only kept in leaves, the keys of inner nodes are separators and have no value;
+ * every leaf points to the leaf after it in key order.
+ * Nodes are split when their encoded size exceeds the page, not at a fixed key count.
+ */
 public class FileNode<Value extends Sizeofable & Parsable>
 {
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    private static final int MAX_PAGE_SIZE = 1 << 16; // slots are unsigned shorts
+    private static final int HEADER_SIZE = 2 * Long.BYTES + 4 * Integer.BYTES + 1;
+    private static final int SLOT_SIZE = Short.BYTES;
     protected final int KEY_MAX_SIZE, VALUE_MAX_SIZE;
     protected final int HALF_MAX_SIZE, MAX_SIZE;
-    protected final Class valueClassType;
+    protected final Class<Value> valueClassType;
     protected final int fileID;
+    protected final int PAGE_SIZE;
+    // one record buffer per thread, shared by every node it reads or writes
+    private static final ThreadLocal<ByteBuffer> recordBuffer = new ThreadLocal<>();
     protected Vector<Pair<String, Value>> keyValPair;
     protected Vector<Long> child;
     protected Long parent, myPointer;
+    protected Long next; // the next leaf in key order, null for inner nodes and the last leaf
     protected int id;
+    private boolean dirty, cached;
+    private int pinCount;
 
-    public FileNode(int key_max_size, int value_max_size, int halfMaxSize, Long parent, Class valueClassType, int fileID)
+    public FileNode(int key_max_size, int value_max_size, int halfMaxSize, Long parent, Class<Value> valueClassType, int fileID)
     {
         KEY_MAX_SIZE = key_max_size;
         VALUE_MAX_SIZE = value_max_size;
@@ -33,6 +55,11 @@ public class FileNode<Value extends Sizeofable & Parsable>
         keyValPair = new Vector<>();
         child = new Vector<>();
         this.fileID = fileID;
+        // a page must hold the largest node that can come from RAM, which also leaves room for two maximal keys
+        int maxEntrySize = SLOT_SIZE + VByteUtils.MAX_BYTES + KEY_MAX_SIZE + VALUE_MAX_SIZE + Long.BYTES;
+        PAGE_SIZE = Math.max(DEFAULT_PAGE_SIZE, HEADER_SIZE + Long.BYTES + (MAX_SIZE + 1) * maxEntrySize);
+        if (PAGE_SIZE > MAX_PAGE_SIZE)
+            throw new IllegalArgumentException("keys and values too large for a node page");
     }
 
     public int getId()
@@ -75,6 +102,16 @@ public class FileNode<Value extends Sizeofable & Parsable>
         this.parent = parent;
     }
 
+    public Long getNext()
+    {
+        return next;
+    }
+
+    public void setNext(Long next)
+    {
+        this.next = next;
+    }
+
     public Long getMyPointer()
     {
         return myPointer;
@@ -90,6 +127,11 @@ public class FileNode<Value extends Sizeofable & Parsable>
         return keyValPair.size();
     }
 
+    public boolean isLeaf()
+    {
+        return child.isEmpty() || child.firstElement() == null;
+    }
+
     @Override
     public String toString()
     {
@@ -112,186 +154,314 @@ public class FileNode<Value extends Sizeofable & Parsable>
 
     public int binarySearchForLocationToAdd(String key)
     {
-
-        return getSize() == 0 ? 0 :
-                binarySearchForLocationToAdd(key, 0, getSize() - 1);
+        int result = binarySearch(key);
+        return result >= 0 ? result : -result - 1;
     }
 
-    protected int binarySearchForLocationToAdd(String key, int from, int to)
+    /**
+     * iterative binary search over the keys of the node
+     *
+     * @return the index of key, or -(insertion point + 1) when the node does not hold it
+     */
+    public int binarySearch(String key)
     {
-        if (from > to)
-            return -1;
-        int mid = (from + to) / 2;
-        int compareResult = key.compareTo(keyValPair.elementAt(mid).getKey());
-        if (compareResult < 0)
+        Vector<Pair<String, Value>> pairs = keyValPair;
+        int from = 0, to = pairs.size() - 1;
+        while (from <= to)
         {
-            int returnValue = binarySearchForLocationToAdd(key, from, mid - 1);
-            return (returnValue == -1 ? from : returnValue);
-        } else if (compareResult == 0)
-            return mid;
-        else
-        {
-            int returnValue = binarySearchForLocationToAdd(key, mid + 1, to);
-            return (returnValue == -1 ? to + 1 : returnValue);
+            int mid = (from + to) >>> 1;
+            int compareResult = key.compareTo(pairs.elementAt(mid).getKey());
+            if (compareResult < 0)
+                to = mid - 1;
+            else if (compareResult > 0)
+                from = mid + 1;
+            else
+                return mid;
         }
-    }
-
-
-    protected int binarySearchForExistence(String key)
-    {
-        return binarySearchForExistence(key, 0, getSize() - 1);
-    }
-
-
-    protected int binarySearchForExistence(String key, int from, int to)
-    {
-        if (from > to)
-            return -1;
-        int mid = (from + to) / 2;
-        int compareResult = key.compareTo(keyValPair.elementAt(mid).getKey());
-        if (compareResult == 0)
-            return mid;
-        if (compareResult < 0)
-            return binarySearchForExistence(key, from, mid - 1);
-        else
-            return binarySearchForExistence(key, mid + 1, to);
+        return -(from + 1);
     }
 
 
     public void fetchNodeFromHard(Long myPointer)
     {
-        RandomAccessFile instance = RandomAccessFileManager.getInstance(fileID);
+        PageStore store = RandomAccessFileManager.getPageStore(fileID);
         if (myPointer == null)
-            try
-            {
-                instance.seek(instance.getChannel().size());
-                this.myPointer = instance.getFilePointer();
+        {
+            this.myPointer = store.allocate(PAGE_SIZE);
 //                    System.out.println("creating new node; pointer: " + this.myPointer);
-                commitNewNodeOnFile();
-                return;
-            } catch (IOException e)
-            {
-                e.printStackTrace();
-            }
-
+            writeToFile();
+            return;
+        }
 
         try
         {
 //                System.out.println("fetching from hard, pointer: " + myPointer);
             this.myPointer = myPointer;
-            instance.seek(myPointer);
-            parent = instance.readLong();
+            ByteBuffer record = getRecordBuffer((int) Math.min(PAGE_SIZE, store.size() - myPointer));
+            store.read(myPointer, record);
+            parent = record.getLong(0);
             if (parent == -1)
                 parent = null;
-            id = instance.readInt();
-            int size = instance.readInt();
-            for (int i = 0; i < size; i++)
+            next = record.getLong(Long.BYTES);
+            if (next == -1)
+                next = null;
+            id = record.getInt(2 * Long.BYTES);
+            int size = record.getInt(2 * Long.BYTES + Integer.BYTES);
+            int prefixLength = record.getInt(2 * Long.BYTES + 2 * Integer.BYTES);
+            boolean hasChildren = record.get(HEADER_SIZE - 1) == 1;
+
+            int position = HEADER_SIZE;
+            for (int i = 0; size > 0 && i <= size; i++)
             {
-                int readSize = 0;
-                readSize = instance.readInt();
-                byte tempByteArray[] = new byte[readSize];
-                instance.read(tempByteArray, 0, readSize);
-                String key;
-                key = new String(tempByteArray, "UTF-8");
-
-                readSize = instance.readInt();
-                tempByteArray = new byte[readSize];
-                instance.read(tempByteArray);
-                Value value = (Value) valueClassType.newInstance();
-                value.parseFromByteArray(tempByteArray);
-                keyValPair.add(new Pair<>(key, value));
+                if (hasChildren)
+                {
+                    child.add(record.getLong(position));
+                    position += Long.BYTES;
+                } else
+                    child.add(null);
             }
-            for (int i = 0; i <= size; i++)
+            byte[] keyBytes = new byte[prefixLength + KEY_MAX_SIZE];
+            record.position(position);
+            record.get(keyBytes, 0, prefixLength);
+            int slots = position + prefixLength;
+            for (int i = 0; i < size; i++)
             {
-                long childPtr = instance.readLong();
-                if (childPtr == -1)
-                    child.add(null);
-                else
-                    child.add(childPtr);
+                record.position(record.getShort(slots + i * SLOT_SIZE) & 0xFFFF);
+                int suffixLength = VByteUtils.read(record);
+                record.get(keyBytes, prefixLength, suffixLength);
+                String key = new String(keyBytes, 0, prefixLength + suffixLength, StandardCharsets.UTF_8);
+                Value value = null;
+                if (!hasChildren)
+                {
+                    value = valueClassType.newInstance();
+                    value.readFrom(record, record.position());
+                }
+                keyValPair.add(new Pair<>(key, value));
             }
-        } catch (IOException | InstantiationException | IllegalAccessException e)
+        } catch (InstantiationException | IllegalAccessException e)
         {
             e.printStackTrace();
         }
     }
 
-    private void commitNewNodeOnFile()
+    /**
+     * reserves a page for a node that is filled in memory and written later, nothing is written now
+     */
+    public void allocateOnFile()
     {
-        RandomAccessFile instance = RandomAccessFileManager.getInstance(fileID);
-        try
+        myPointer = RandomAccessFileManager.getPageStore(fileID).allocate(PAGE_SIZE);
+    }
+
+    /**
+     * changes the parent of a node already written to file, without reading or rewriting the rest of its page
+     */
+    public static void writeParentOnFile(int fileID, long pointer, Long parent)
+    {
+        RandomAccessFileManager.getPageStore(fileID).writeLong(pointer, parent == null ? -1 : parent);
+    }
+
+    /**
+     * marks the node as changed; a cached node is written back by its cache, other nodes are written at once
+     */
+    public void commitChanges()
+    {
+        if (cached)
+            dirty = true;
+        else
+            writeToFile();
+    }
+
+    public void writeToFile()
+    {
+//            System.out.println("committing, pointer: " + myPointer);
+        int size = keyValPair.size();
+        boolean hasChildren = hasChildren();
+        byte[] prefix = size == 0 ? new byte[0] :
+                keyValPair.firstElement().getKey().substring(0, commonPrefixChars()).getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer record = getRecordBuffer(PAGE_SIZE);
+        record.putLong(parent == null ? -1 : parent);
+        record.putLong(next == null ? -1 : next);
+        record.putInt(id);
+        record.putInt(size);
+        record.putInt(prefix.length);
+        record.putInt(PAGE_SIZE); // start of the cells, set below
+        record.put((byte) (hasChildren ? 1 : 0));
+        for (int i = 0; hasChildren && i <= size; i++)
+            record.putLong(child.elementAt(i));
+        record.put(prefix);
+        int slots = record.position();
+        int slotsEnd = slots + size * SLOT_SIZE;
+
+        int cellStart = PAGE_SIZE;
+        for (int i = 0; i < size; i++)
         {
-            instance.seek(myPointer);
-//            instance.writeLong(parent == null ? -1 : parent);
-            instance.writeLong(-1);
-            instance.writeInt(id);
-//            instance.writeInt(keyValPair.size());
-            instance.writeInt(-1);
-            for (int i = 0; i < MAX_SIZE; i++)
-            {
-                instance.writeInt(-1);
-                instance.writeBytes(new String(new byte[KEY_MAX_SIZE], "UTF-8"));
-                instance.writeInt(-1);
-                instance.write(new byte[VALUE_MAX_SIZE]);
-            }
-            for (int i = 0; i <= MAX_SIZE; i++)
-                instance.writeLong(-1);
-        } catch (IOException e)
+            Pair<String, Value> tempKeyVal = keyValPair.elementAt(i);
+            byte[] keyBytes = tempKeyVal.getKey().getBytes(StandardCharsets.UTF_8);
+            int suffixLength = keyBytes.length - prefix.length;
+            Value value = hasChildren ? null : tempKeyVal.getValue();
+            cellStart -= VByteUtils.size(suffixLength) + suffixLength + (value == null ? 0 : value.sizeof());
+            if (cellStart < slotsEnd)
+                throw new IllegalStateException("node " + id + " does not fit in its page");
+            record.position(cellStart);
+            VByteUtils.write(record, suffixLength);
+            record.put(keyBytes, prefix.length, suffixLength);
+            if (value != null)
+                value.writeTo(record, record.position());
+            record.putShort(slots + i * SLOT_SIZE, (short) cellStart);
+        }
+        record.putInt(2 * Long.BYTES + 3 * Integer.BYTES, cellStart);
+
+        // the free space between the slots and the cells is not written
+        PageStore store = RandomAccessFileManager.getPageStore(fileID);
+        record.limit(slotsEnd).position(0);
+        store.write(myPointer, record);
+        record.limit(PAGE_SIZE).position(cellStart);
+        store.write(myPointer + cellStart, record);
+        dirty = false;
+    }
+
+    /**
+     * bytes the node takes in its page, must not exceed the page size when written
+     */
+    public int getEncodedSize()
+    {
+        int size = keyValPair.size();
+        boolean hasChildren = hasChildren();
+        int length = HEADER_SIZE + (hasChildren ? (size + 1) * Long.BYTES : 0);
+        if (size == 0)
+            return length;
+        int prefixLength = utf8Length(keyValPair.firstElement().getKey(), commonPrefixChars());
+        length += prefixLength;
+        for (Pair<String, Value> pair : keyValPair)
         {
-            e.printStackTrace();
+            int suffixLength = utf8Length(pair.getKey(), pair.getKey().length()) - prefixLength;
+            length += SLOT_SIZE + VByteUtils.size(suffixLength) + suffixLength + (hasChildren ? 0 : pair.getValue().sizeof());
         }
+        return length;
     }
 
-    public void commitChanges()
+    public boolean fitsInPage()
     {
-//            System.out.println("committing, pointer: " + myPointer);
-        RandomAccessFile instance = RandomAccessFileManager.getInstance(fileID);
-        try
+        return getEncodedSize() <= PAGE_SIZE;
+    }
+
+    public int getPageSize()
+    {
+        return PAGE_SIZE;
+    }
+
+    /**
+     * index of the key moved up on a split of an inner node, or of the first key of the new right leaf on a split
+     * of a leaf, chosen so that both halves take about the same number of bytes
+     */
+    public int getSplitIndex()
+    {
+        int size = keyValPair.size();
+        long total = 0;
+        for (Pair<String, Value> pair : keyValPair)
+            total += entrySize(pair);
+        long half = 0;
+        int index = 0;
+        while (index < size - 2 && (half += entrySize(keyValPair.elementAt(index))) < total / 2)
+            index++;
+        return Math.max(index, 1);
+    }
+
+    private int entrySize(Pair<String, Value> pair)
+    {
+        return SLOT_SIZE + Long.BYTES + utf8Length(pair.getKey(), pair.getKey().length())
+                + (pair.getValue() == null ? 0 : pair.getValue().sizeof());
+    }
+
+    private boolean hasChildren()
+    {
+        for (Long tempChild : child)
+            if (tempChild != null)
+                return true;
+        return false;
+    }
+
+    /**
+     * keys are sorted, so the prefix shared by the first and the last key is shared by all of them
+     */
+    private int commonPrefixChars()
+    {
+        if (keyValPair.size() < 2)
+            return 0;
+        String first = keyValPair.firstElement().getKey(), last = keyValPair.lastElement().getKey();
+        int length = Math.min(first.length(), last.length()), i = 0;
+        while (i < length && first.charAt(i) == last.charAt(i))
+            i++;
+        if (i > 0 && Character.isHighSurrogate(first.charAt(i - 1)))
+            i--;
+        return i;
+    }
+
+    private static int utf8Length(String string, int chars)
+    {
+        int length = 0;
+        for (int i = 0; i < chars; i++)
         {
-            instance.seek(myPointer);
-            instance.writeLong(parent == null ? -1 : parent);
-            instance.writeInt(id);
-            instance.writeInt(keyValPair.size());
-            for (int i = 0; i < MAX_SIZE; i++)
-            {
-                if (i < keyValPair.size())
-                {
-//                    int emptyBytes;
-                    byte[] tempByteArray;
-                    Pair<String, Value> tempKeyVal = keyValPair.elementAt(i);
-                    tempByteArray = tempKeyVal.getKey().getBytes();
-                    instance.writeInt(tempByteArray.length);
-                    instance.write(tempByteArray);
-//                    emptyBytes = KEY_MAX_SIZE - tempByteArray.length;
-//                    instance.write(new byte[emptyBytes]);
-//                    instance.writeBytes(new String(bytes, "UTF-8"));
-                    tempByteArray = tempKeyVal.getValue().toByteArray();
-                    instance.writeInt(tempByteArray.length);
-                    instance.write(tempByteArray);
-//                    emptyBytes = VALUE_MAX_SIZE - tempByteArray.length;
-//                    instance.write(new byte[emptyBytes]);
-                }
-// else
-//                {
-//                    instance.writeBytes(new String(new byte[KEY_MAX_SIZE], "UTF-8"));
-//                    int emptyBytes = VALUE_MAX_SIZE;
-//                    instance.write(new byte[emptyBytes]);
-//                }
-            }
-            for (int i = 0; i <= MAX_SIZE; i++)
+            char c = string.charAt(i);
+            if (c < 0x80)
+                length++;
+            else if (c < 0x800)
+                length += 2;
+            else if (Character.isHighSurrogate(c))
             {
-                if (i < child.size())
-                {
-                    Long tempChild = child.elementAt(i);
-                    long childPointer = (tempChild == null ? -1 : tempChild);
-                    instance.writeLong(childPointer);
-                }
-//                else
-//                    instance.writeLong((long) -1);
-            }
-        } catch (IOException e)
+                length += 4;
+                i++;
+            } else
+                length += 3;
+        }
+        return length;
+    }
+
+    private static ByteBuffer getRecordBuffer(int length)
+    {
+        ByteBuffer record = recordBuffer.get();
+        if (record == null || record.capacity() < length)
         {
-            e.printStackTrace();
+            record = ByteBuffer.allocate(length);
+            recordBuffer.set(record);
         }
+        record.clear();
+        record.limit(length);
+        return record;
+    }
+
+    public boolean isDirty()
+    {
+        return dirty;
+    }
+
+    public void setCached(boolean cached)
+    {
+        this.cached = cached;
+    }
+
+    public void pin()
+    {
+        pinCount++;
+    }
+
+    public void unpin()
+    {
+        pinCount--;
+    }
+
+    public boolean isPinned()
+    {
+        return pinCount > 0;
+    }
+
+    /**
+     * bytes reserved on file for every node, nodes are stored back to back
+     */
+    public int getRecordSize()
+    {
+        return PAGE_SIZE;
     }
 
 }
@@ -9,15 +9,20 @@ import java.util.Vector;
 
 public class RamFileNode<Value extends Sizeofable & Parsable>
 {
+    // rough heap footprint estimates, used instead of asking the runtime for free memory
+    public static final int NODE_OVERHEAD = 160; // node object and its three vectors
+    public static final int ENTRY_OVERHEAD = 96; // pair, string header and the two child slots
     //        protected final int HALF_MAX_SIZE, MAX_SIZE;
     protected Vector<Pair<String, Value>> keyValPair;
-    protected Vector<RamFileNode> child;
+    protected Vector<RamFileNode<Value>> child;
     protected Vector<Long> fileChild;
-    protected RamFileNode parent;
+    protected RamFileNode<Value> parent;
+    protected RamFileNode<Value> next; // the next leaf in key order, null for inner nodes and the last leaf
     protected int id;
     boolean childAreOnFile;
+    private long sizeInBytes;
 
-    public RamFileNode(int halfMaxSize, RamFileNode parent)
+    public RamFileNode(int halfMaxSize, RamFileNode<Value> parent)
     {
         childAreOnFile = false;
 //            this.HALF_MAX_SIZE = halfMaxSize;
@@ -27,6 +32,15 @@ public class RamFileNode<Value extends Sizeofable & Parsable>
         keyValPair = new Vector<>();
         child = new Vector<>();
         fileChild = new Vector<>();
+        sizeInBytes = NODE_OVERHEAD;
+    }
+
+    /**
+     * the separators of inner nodes have no value
+     */
+    public static long sizeof(Pair<String, ? extends Sizeofable> pair)
+    {
+        return ENTRY_OVERHEAD + 2L * pair.getKey().length() + (pair.getValue() == null ? 0 : pair.getValue().sizeof());
     }
 
     public int getId()
@@ -57,14 +71,47 @@ public class RamFileNode<Value extends Sizeofable & Parsable>
     public void setKeyValPair(Vector<Pair<String, Value>> keyValPair)
     {
         this.keyValPair = keyValPair;
+        sizeInBytes = NODE_OVERHEAD;
+        if (keyValPair != null)
+            for (Pair<String, Value> pair : keyValPair)
+                sizeInBytes += sizeof(pair);
+    }
+
+    public void addKeyVal(Pair<String, Value> pair)
+    {
+        keyValPair.add(pair);
+        sizeInBytes += sizeof(pair);
     }
 
-    public Vector<RamFileNode> getChild()
+    public void insertKeyValAt(Pair<String, Value> pair, int index)
+    {
+        keyValPair.insertElementAt(pair, index);
+        sizeInBytes += sizeof(pair);
+    }
+
+    public Pair<String, Value> removeKeyValAt(int index)
+    {
+        Pair<String, Value> pair = keyValPair.remove(index);
+        sizeInBytes -= sizeof(pair);
+        return pair;
+    }
+
+    public void setKeyValAt(Pair<String, Value> pair, int index)
+    {
+        sizeInBytes += sizeof(pair) - sizeof(keyValPair.set(index, pair));
+    }
+
+    public long getSizeInBytes()
+    {
+        return sizeInBytes;
+    }
+
+    public Vector<RamFileNode<Value>> getChild()
     {
         return child;
     }
 
-    public void setChild(Vector<RamFileNode> child)
+    public void setChild(Vector<RamFileNode<Value>> child)
     {
         this.child = child;
     }
@@ -79,21 +126,39 @@ public class RamFileNode<Value extends Sizeofable & Parsable>
         this.fileChild = fileChild;
     }
 
-    public RamFileNode getParent()
+    public RamFileNode<Value> getParent()
     {
         return parent;
     }
 
-    public void setParent(RamFileNode parent)
+    public void setParent(RamFileNode<Value> parent)
     {
         this.parent = parent;
     }
 
+    public RamFileNode<Value> getNext()
+    {
+        return next;
+    }
+
+    public void setNext(RamFileNode<Value> next)
+    {
+        this.next = next;
+    }
+
     public int getSize()
     {
         return keyValPair.size();
     }
 
+    /**
+     * a node whose children are on file is not a leaf, although it has no children in RAM
+     */
+    public boolean isLeaf()
+    {
+        return !childAreOnFile && (child.isEmpty() || child.firstElement() == null);
+    }
+
 
     public String toString()
     {
@@ -108,52 +173,34 @@ public class RamFileNode<Value extends Sizeofable & Parsable>
 
     public int binarySearchForLocationToAdd(String key)
     {
-
-        return getSize() == 0 ? 0 :
-                binarySearchForLocationToAdd(key, 0, getSize() - 1);
+        int result = binarySearch(key);
+        return result >= 0 ? result : -result - 1;
     }
 
-    protected int binarySearchForLocationToAdd(String key, int from, int to)
+    /**
+     * iterative binary search over the keys of the node
+     *
+     * @return the index of key, or -(insertion point + 1) when the node does not hold it
+     */
+    public int binarySearch(String key)
     {
-        if (from > to)
-            return -1;
-        int mid = (from + to) / 2;
-        int compareResult = key.compareTo(keyValPair.elementAt(mid).getKey());
-        if (compareResult < 0)
+        Vector<Pair<String, Value>> pairs = keyValPair;
+        int from = 0, to = pairs.size() - 1;
+        while (from <= to)
         {
-            int returnValue = binarySearchForLocationToAdd(key, from, mid - 1);
-            return (returnValue == -1 ? from : returnValue);
-        } else if (compareResult == 0)
-            return mid;
-        else
-        {
-            int returnValue = binarySearchForLocationToAdd(key, mid + 1, to);
-            return (returnValue == -1 ? to + 1 : returnValue);
+            int mid = (from + to) >>> 1;
+            int compareResult = key.compareTo(pairs.elementAt(mid).getKey());
+            if (compareResult < 0)
+                to = mid - 1;
+            else if (compareResult > 0)
+                from = mid + 1;
+            else
+                return mid;
         }
+        return -(from + 1);
     }
 
-
-    protected int binarySearchForExistence(String key)
-    {
-        return binarySearchForExistence(key, 0, getSize() - 1);
-    }
-
-
-    protected int binarySearchForExistence(String key, int from, int to)
-    {
-        if (from > to)
-            return -1;
-        int mid = (from + to) / 2;
-        int compareResult = key.compareTo(keyValPair.elementAt(mid).getKey());
-        if (compareResult == 0)
-            return mid;
-        if (compareResult < 0)
-            return binarySearchForExistence(key, from, mid - 1);
-        else
-            return binarySearchForExistence(key, mid + 1, to);
-    }
-
-    public RamFileNode getMyPointer()
+    public RamFileNode<Value> getMyPointer()
     {
         return this;
     }
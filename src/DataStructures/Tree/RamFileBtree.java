@@ -6,20 +6,26 @@ import DataStructures.Tree.Nodes.RamFileNode;
 import FileManagement.RandomAccessFileManager;
 import Primitives.Interfaces.Parsable;
 import Primitives.Interfaces.Sizeofable;
+import Primitives.Interfaces.ValueMerger;
+import Utilities.VByteUtils;
 import javafx.util.Pair;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.Vector;
 
 public class RamFileBtree<Value extends Sizeofable & Parsable>
 {
-    private static final long MEMORY_LIMIT = 30;
+    public static final long DEFAULT_MEMORY_BUDGET = 128 * 1024 * 1024;
     private static int idCounter = 0;
     protected final int KEY_MAX_SIZE;
     protected final int VALUE_MAX_SIZE;
     protected final int HALF_MAX_SIZE, MAX_SIZE;
-    protected final long MB = 1024 * 1024;
-    protected final Class valueClassType;
+    protected final Class<Value> valueClassType;
     protected final int fileID;
     protected int depth;
     protected RamFileNode<Value> root;
@@ -28,8 +34,17 @@ public class RamFileBtree<Value extends Sizeofable & Parsable>
     private long lastReadLocation;
     private boolean isFirstRead;
     private long numberOfTermsAdded;
+    private long memoryBudget;
+    private long ramSize; // estimated bytes held by the nodes in RAM
+    private long modifications; // changes to keys, values or nodes; a cursor positioned before a change walks again from the root
+    private final ThreadLocal<RamDataLocation<Value>> location = ThreadLocal.withInitial(() -> new RamDataLocation<>(null, 0));
 
-    public RamFileBtree(int keyMaxSize, int valueMaxSize, int halfMaxSize, Class valueClassType, int fileID)
+    public RamFileBtree(int keyMaxSize, int valueMaxSize, int halfMaxSize, Class<Value> valueClassType, int fileID)
+    {
+        this(keyMaxSize, valueMaxSize, halfMaxSize, valueClassType, fileID, DEFAULT_MEMORY_BUDGET);
+    }
+
+    public RamFileBtree(int keyMaxSize, int valueMaxSize, int halfMaxSize, Class<Value> valueClassType, int fileID, long memoryBudget)
     {
         KEY_MAX_SIZE = keyMaxSize;
         VALUE_MAX_SIZE = valueMaxSize;
@@ -41,12 +56,14 @@ public class RamFileBtree<Value extends Sizeofable & Parsable>
         lastReadLocation = 0;
         isFirstRead = true;
         depthIncremented = false;
+        this.memoryBudget = memoryBudget;
+        ramSize = 0;
 
         root = createNewLeafNode(null);
         extendedFileBtree = new ExtendedFileBtree<>(keyMaxSize, valueMaxSize, halfMaxSize, valueClassType, this, fileID);
     }
 
-    public static int getNewID()
+    public static synchronized int getNewID()
     {
         return ++idCounter;
     }
@@ -65,6 +82,7 @@ public class RamFileBtree<Value extends Sizeofable & Parsable>
 
     public void update(String key, Value value)
     {
+        modifications++;
         RamFileNode<Value> rootNodeTemplate = getRootNode();
         if (rootNodeTemplate.getSize() == 0)
             return;
@@ -79,7 +97,8 @@ public class RamFileBtree<Value extends Sizeofable & Parsable>
 
     public void insert(String key, Value value) throws Exception
     {
-        if (key.getBytes().length > KEY_MAX_SIZE || value.sizeof() > VALUE_MAX_SIZE)
+        modifications++;
+        if (key.getBytes(StandardCharsets.UTF_8).length > KEY_MAX_SIZE || value.sizeof() > VALUE_MAX_SIZE)
             throw new Exception("length exceeded");
         RamFileNode<Value> rootNodeTemplate = getRootNode();
         if (rootNodeTemplate.getSize() == 0)
@@ -107,30 +126,292 @@ public class RamFileBtree<Value extends Sizeofable & Parsable>
         }
     }
 
+    /**
+     * finds the location of key once and merges into the existing value or inserts a new one there
+     */
+    public Value upsert(String key, ValueMerger<Value> merger) throws Exception
+    {
+        modifications++;
+        RamDataLocation<Value> loc = findLoc(key, getRootNode());
+        if (thisDataExists(key, loc))
+        {
+            Value value = merger.merge(loc.getNode().getKeyValPair().elementAt(loc.getOffset()).getValue());
+            updateValue(key, value, loc.getNode(), loc.getOffset());
+            return value;
+        }
+        if (key.getBytes(StandardCharsets.UTF_8).length > KEY_MAX_SIZE)
+            throw new Exception("length exceeded");
+        if (loc.getNode().isChildAreOnFile())
+            return extendedFileBtree.upsert(key, merger, loc.getNode().getFileChild().elementAt(loc.getOffset()));
+
+        Value value = merger.merge(null);
+        if (value.sizeof() > VALUE_MAX_SIZE)
+            throw new Exception("length exceeded");
+        insert(loc.getNode(), new Pair<>(key, value),
+                null, null,
+                null, null);
+        numberOfTermsAdded++;
+        checkMemoryAndFreeIfRequired();
+        return value;
+    }
+
+    /**
+     * builds the whole tree from pairs in increasing key order, the tree must be empty.
+     * Nodes are packed to fillFactor of a page and written to file once, in the order they are filled;
+     * only the top of the tree stays in RAM.
+     */
+    public void bulkLoad(Iterator<Pair<String, Value>> sortedInput, double fillFactor) throws Exception
+    {
+        modifications++;
+        if (getRootNode().getSize() != 0 || getRootNode().isChildAreOnFile())
+            throw new Exception("bulk load needs an empty tree");
+        BulkLoader<Value> loader = new BulkLoader<>(KEY_MAX_SIZE, VALUE_MAX_SIZE, HALF_MAX_SIZE, valueClassType, fileID, fillFactor);
+        FileNode<Value> top = loader.load(sortedInput);
+        if (top == null)
+            return;
+        numberOfTermsAdded += loader.getNumberOfKeys();
+        boolean topIsLeaf = top.getChild().firstElement() == null;
+        Vector<Pair<String, Value>> rootKeys;
+        Vector<Long> fileRoots;
+        if (top.getSize() <= MAX_SIZE)
+        {
+            // the top node becomes the RAM root, its children become the roots of the file trees
+            rootKeys = top.getKeyValPair();
+            fileRoots = top.getChild();
+            for (int i = 0; !topIsLeaf && i < fileRoots.size(); i++)
+                FileNode.writeParentOnFile(fileID, fileRoots.elementAt(i), null);
+        } else
+        {
+            // too many keys for a RAM node: the top node is split like a node on file, both halves go to file
+            int middle = top.getSize() / 2;
+            FileNode<Value> right = new FileNode<>(KEY_MAX_SIZE, VALUE_MAX_SIZE, HALF_MAX_SIZE, null, valueClassType, fileID);
+            right.allocateOnFile();
+            rootKeys = new Vector<>();
+            if (topIsLeaf)
+            {
+                while (top.getSize() > middle)
+                {
+                    right.getKeyValPair().add(top.getKeyValPair().remove(middle));
+                    right.getChild().add(null);
+                    top.getChild().remove(top.getChild().size() - 1);
+                }
+                right.getChild().add(null);
+                rootKeys.add(new Pair<>(right.getKeyValPair().firstElement().getKey(), null));
+                top.setNext(right.getMyPointer());
+            } else
+            {
+                while (top.getSize() > middle + 1)
+                    right.getKeyValPair().add(top.getKeyValPair().remove(middle + 1));
+                while (top.getChild().size() > middle + 1)
+                    right.getChild().add(top.getChild().remove(middle + 1));
+                rootKeys.add(top.getKeyValPair().remove(middle));
+            }
+            top.setParent(null);
+            top.writeToFile();
+            right.writeToFile();
+            for (int i = 0; !topIsLeaf && i < right.getChild().size(); i++)
+                FileNode.writeParentOnFile(fileID, right.getChild().elementAt(i), right.getMyPointer());
+            fileRoots = new Vector<>();
+            fileRoots.add(top.getMyPointer());
+            fileRoots.add(right.getMyPointer());
+            topIsLeaf = false;
+        }
+
+        root.setKeyValPair(rootKeys);
+        root.setChildAreOnFile(!topIsLeaf);
+        for (int i = 0; i <= rootKeys.size(); i++)
+        {
+            root.getChild().add(null);
+            root.getFileChild().add(topIsLeaf ? null : fileRoots.elementAt(i));
+            if (!topIsLeaf)
+                extendedFileBtree.addExistingRoot(fileRoots.elementAt(i), root, i);
+        }
+        ramSize = root.getSizeInBytes();
+    }
+
     public void initializeForSequentialRead()
     {
+        modifications++;
         isFirstRead = true;
         lastReadLocation = 0;
-        storeNodesOnFile();
+        if (canStoreNodesOnFile())
+            storeNodesOnFile();
     }
 
+    /**
+     * the keys of the next leaf in file order, the root first if it is a leaf; null after the last one.
+     * Inner nodes only hold separators, which are keys of leaves as well, and are passed over.
+     */
     public Vector<Pair<String, Value>> getNextNode()
     {
         if (isFirstRead)
-            return getRootNode().getKeyValPair();
+        {
+            isFirstRead = false;
+            return getRootNode().isLeaf() ? getRootNode().getKeyValPair() : new Vector<>();
+        }
 
-        FileNode<Value> node = null;
+        while (lastReadLocation < RandomAccessFileManager.getPageStore(fileID).size())
+        {
+            FileNode<Value> node = extendedFileBtree.getNode(lastReadLocation);
+            lastReadLocation += node.getRecordSize();
+            if (node.isLeaf())
+                return node.getKeyValPair();
+        }
+        return null;
+    }
+
+    /**
+     * writes the dirty nodes held by the file tree's node cache back to the file
+     */
+    public void checkpoint()
+    {
+        extendedFileBtree.flush();
+    }
+
+    public NodeCache<Value> getNodeCache()
+    {
+        return extendedFileBtree.getNodeCache();
+    }
+
+    /**
+     * writes the part of the tree that lives only in RAM: the counters and the nodes above the file trees.
+     * Right after checkpoint, this and the file together hold the whole tree.
+     */
+    public void writeState(DataOutputStream out) throws IOException
+    {
+        out.writeInt(depth);
+        out.writeLong(numberOfTermsAdded);
+        out.writeLong(extendedFileBtree.numberOfTermsAdded);
+        writeRamNode(out, getRootNode());
+    }
+
+    /**
+     * replaces the tree by the one written by writeState, its file nodes must be as they were when it was written
+     */
+    public void readState(DataInputStream in) throws IOException
+    {
+        modifications++;
+        depth = in.readInt();
+        numberOfTermsAdded = in.readLong();
+        extendedFileBtree.numberOfTermsAdded = in.readLong();
+        extendedFileBtree.invalidateCache();
+        extendedFileBtree.invalidateRoots();
+        ramSize = 0;
+        root = readRamNode(in, null);
+        linkLeaves(root, null);
+        isFirstRead = true;
+        lastReadLocation = 0;
+    }
+
+    /**
+     * node format: key count, (key length, UTF-8 key, value length, value) per key, children on file flag,
+     * a separator of an inner node has a value length of 0 and no value,
+     * child count and then a file pointer per child, or a present flag followed by the child node per child
+     */
+    private void writeRamNode(DataOutputStream out, RamFileNode<Value> node) throws IOException
+    {
+        out.writeInt(node.getSize());
+        for (Pair<String, Value> pair : node.getKeyValPair())
+        {
+            byte[] keyBytes = pair.getKey().getBytes(StandardCharsets.UTF_8);
+            VByteUtils.write(out, keyBytes.length);
+            out.write(keyBytes);
+            ByteBuffer value = ByteBuffer.allocate(pair.getValue() == null ? 0 : pair.getValue().sizeof());
+            if (pair.getValue() != null)
+                pair.getValue().writeTo(value, 0);
+            VByteUtils.write(out, value.capacity());
+            out.write(value.array());
+        }
+        out.writeBoolean(node.isChildAreOnFile());
+        out.writeInt(node.getChild().size());
+        for (int i = 0; i < node.getChild().size(); i++)
+            if (node.isChildAreOnFile())
+            {
+                Long fileChild = node.getFileChild().elementAt(i);
+                out.writeLong(fileChild == null ? -1 : fileChild);
+            } else
+            {
+                RamFileNode<Value> child = node.getChild().elementAt(i);
+                out.writeBoolean(child != null);
+                if (child != null)
+                    writeRamNode(out, child);
+            }
+    }
+
+    private RamFileNode<Value> readRamNode(DataInputStream in, RamFileNode<Value> parent) throws IOException
+    {
+        RamFileNode<Value> node = createNewMiddleNode(parent);
+        int size = in.readInt();
         try
         {
-            if (lastReadLocation >= RandomAccessFileManager.getInstance(fileID).getChannel().size())
-                return null;
-            node = extendedFileBtree.getNode(lastReadLocation);
-            lastReadLocation = RandomAccessFileManager.getInstance(fileID).getFilePointer();
-        } catch (IOException e)
+            for (int i = 0; i < size; i++)
+            {
+                byte[] keyBytes = new byte[VByteUtils.read(in)];
+                in.readFully(keyBytes);
+                byte[] valueBytes = new byte[VByteUtils.read(in)];
+                in.readFully(valueBytes);
+                Value value = null;
+                if (valueBytes.length > 0)
+                {
+                    value = valueClassType.newInstance();
+                    value.readFrom(ByteBuffer.wrap(valueBytes), 0);
+                }
+                Pair<String, Value> pair = new Pair<>(new String(keyBytes, StandardCharsets.UTF_8), value);
+                node.addKeyVal(pair);
+                ramSize += RamFileNode.sizeof(pair);
+            }
+        } catch (InstantiationException | IllegalAccessException e)
         {
             e.printStackTrace();
         }
-        return node.getKeyValPair();
+        node.setChildAreOnFile(in.readBoolean());
+        int childCount = in.readInt();
+        for (int i = 0; i < childCount; i++)
+            if (node.isChildAreOnFile())
+            {
+                long fileChild = in.readLong();
+                node.getChild().add(null);
+                node.getFileChild().add(fileChild == -1 ? null : fileChild);
+                if (fileChild != -1)
+                    extendedFileBtree.addExistingRoot(fileChild, node, i);
+            } else
+            {
+                node.getChild().add(in.readBoolean() ? readRamNode(in, node) : null);
+                node.getFileChild().add(null);
+            }
+        return node;
+    }
+
+    /**
+     * chains the leaves in RAM under node in key order after previous
+     *
+     * @return the last leaf chained
+     */
+    private RamFileNode<Value> linkLeaves(RamFileNode<Value> node, RamFileNode<Value> previous)
+    {
+        if (node.isLeaf())
+        {
+            if (previous != null)
+                previous.setNext(node);
+            return node;
+        }
+        if (!node.isChildAreOnFile())
+            for (RamFileNode<Value> child : node.getChild())
+                previous = linkLeaves(child, previous);
+        return previous;
+    }
+
+    /**
+     * a cursor over the keys in key order, positioned nowhere until seek or seekFirst is called
+     */
+    public TreeCursor<Value> cursor()
+    {
+        return new TreeCursor<>(this, extendedFileBtree);
+    }
+
+    long getModifications()
+    {
+        return modifications;
     }
 
     private void updateOnExtendedFileBtree(String key, Value value, RamDataLocation<Value> loc)
@@ -147,39 +428,47 @@ public class RamFileBtree<Value extends Sizeofable & Parsable>
 //            depthIncremented = false;
 //            return;
 //        }
-        if (memoryLimitExceeded())
-        {
-            if (!getRootNode().isChildAreOnFile())
-                storeNodesOnFile();
-            extendedFileBtree.invalidateCache();
-            Runtime.getRuntime().gc();
-        }
+        if (memoryLimitExceeded() && canStoreNodesOnFile())
+            storeNodesOnFile();
 
     }
 
+    /**
+     * nodes below the root can go to file once, and only if the root is not a leaf
+     */
+    private boolean canStoreNodesOnFile()
+    {
+        RamFileNode<Value> rootNode = getRootNode();
+        return !rootNode.isChildAreOnFile() && rootNode.getSize() > 0 && rootNode.getChild().firstElement() != null;
+    }
+
     private void storeNodesOnFile()
     {
         System.out.println("depth: " + depth);
-        extendedFileBtree.invalidateRoots();
         RamFileNode<Value> rootNode = getRootNode();
+        extendedFileBtree.addNewRoots(rootNode);
         rootNode.setChildAreOnFile(true);
-        for (int i = 0; i <= rootNode.getSize(); i++)
-        {
-            Long childFileNodePtr = extendedFileBtree.addNewRoot(rootNode.getChild().elementAt(i), rootNode, i);
-            rootNode.getFileChild().set(i, childFileNodePtr);
-            rootNode.getChild().set(i, null);
-        }
+        ramSize = rootNode.getSizeInBytes(); // only the root is left in RAM
     }
 
     protected boolean memoryLimitExceeded()
     {
-        double freeMomory = Runtime.getRuntime().freeMemory() / MB;
-        if (freeMomory < MEMORY_LIMIT)
-        {
-//            System.out.println("Memory freeing -- >> freeMemory: " + freeMomory);
-            return true;
-        }
-        return false;
+        return ramSize > memoryBudget;
+    }
+
+    public long getMemoryBudget()
+    {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long memoryBudget)
+    {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public long getRamSize()
+    {
+        return ramSize;
     }
 
     private Value searchOnExtendedFileBtree(String key, RamDataLocation<Value> loc)
@@ -212,10 +501,13 @@ public class RamFileBtree<Value extends Sizeofable & Parsable>
         }
     }
 
-    protected void addVictimToParent(RamFileNode<Value> startingNode, int victim, RamFileNode<Value> newNodeTemplate)
+    /**
+     * adds separator, the smallest key under newNodeTemplate, to the parent of startingNode with newNodeTemplate after it
+     */
+    protected void addSeparatorToParent(RamFileNode<Value> startingNode, Pair<String, Value> separator, RamFileNode<Value> newNodeTemplate)
     {
         RamFileNode<Value> parentNodeTemplate = getNode(startingNode.getParent());
-        insert(parentNodeTemplate, startingNode.getKeyValPair().remove(victim),
+        insert(parentNodeTemplate, separator,
                 newNodeTemplate.getMyPointer(), startingNode.getMyPointer(),
                 null, null);
     }
@@ -225,9 +517,10 @@ public class RamFileBtree<Value extends Sizeofable & Parsable>
                           Long biggerFileChild, Long smallerFileChild)
     {
 //        System.out.println("adding data, pointer: " + startingNode.myPointer + " getNode() size: " + startingNode.getSize());
+        ramSize += RamFileNode.sizeof(newData);
         if (startingNode.getSize() == 0)
         {
-            startingNode.getKeyValPair().add(newData);
+            startingNode.addKeyVal(newData);
             startingNode.getChild().add(smallerChild);
             startingNode.getFileChild().add(smallerFileChild);
             if (smallerChild != null)
@@ -252,12 +545,12 @@ public class RamFileBtree<Value extends Sizeofable & Parsable>
             int location = startingNode.binarySearchForLocationToAdd(newData.getKey());
             if (location == startingNode.getKeyValPair().size())
             {
-                startingNode.getKeyValPair().add(newData);
+                startingNode.addKeyVal(newData);
                 startingNode.getChild().add(biggerChild);
                 startingNode.getFileChild().add(biggerFileChild);
             } else
             {
-                startingNode.getKeyValPair().insertElementAt(newData, location);
+                startingNode.insertKeyValAt(newData, location);
                 startingNode.getChild().insertElementAt(biggerChild, location + 1);
                 startingNode.getFileChild().insertElementAt(biggerFileChild, location + 1);
             }
@@ -293,12 +586,22 @@ public class RamFileBtree<Value extends Sizeofable & Parsable>
     protected void updateValue(String key, Value value, RamFileNode<Value> startingNodeTemplate, int i1)
     {
         Pair<String, Value> oldKeyValuePair = startingNodeTemplate.getKeyValPair().elementAt(i1);
-        startingNodeTemplate.getKeyValPair().set(i1, new Pair<>(oldKeyValuePair.getKey(), value));
+        long oldSize = startingNodeTemplate.getSizeInBytes();
+        startingNodeTemplate.setKeyValAt(new Pair<>(oldKeyValuePair.getKey(), value), i1);
+        ramSize += startingNodeTemplate.getSizeInBytes() - oldSize;
+    }
+
+    private Pair<String, Value> removeKeyVal(RamFileNode<Value> node, int index)
+    {
+        Pair<String, Value> pair = node.removeKeyValAt(index);
+        ramSize -= RamFileNode.sizeof(pair);
+        return pair;
     }
 
     protected RamFileNode<Value> createNewMiddleNode(RamFileNode<Value> parent)
     {
         RamFileNode<Value> resultNode = new RamFileNode<Value>(HALF_MAX_SIZE, parent);
+        ramSize += resultNode.getSizeInBytes();
         return resultNode;
     }
 
@@ -309,22 +612,47 @@ public class RamFileBtree<Value extends Sizeofable & Parsable>
 
     protected boolean thisDataExists(String key, RamDataLocation<Value> newLoc)
     {
-        if (newLoc.getOffset() == newLoc.getNode().getSize() || key.compareTo(((Pair<String, Value>) newLoc.getNode().getKeyValPair().elementAt(newLoc.getOffset())).getKey()) != 0)
-            return false;
-        return true;
+        return newLoc.isFound();
     }
 
+    /**
+     * a leaf keeps its first HALF_MAX_SIZE keys and a copy of the first key of the new leaf goes up,
+     * the new leaf is chained after it; an inner node moves the key at HALF_MAX_SIZE up
+     */
     protected RamFileNode<Value>[] splitCurrentNode(RamFileNode<Value> startingNode)
     {
         RamFileNode<Value> newNodeTemplate = createNewLeafNode(startingNode.getParent());
         int victim = HALF_MAX_SIZE;
-        int offset = victim + 1;
+        Pair<String, Value> separator;
         newNodeTemplate.setChildAreOnFile(startingNode.isChildAreOnFile());
-        moveDataToSiblingAndCreateParentIfRequired(startingNode, newNodeTemplate, offset);
-        addVictimToParent(startingNode, victim, newNodeTemplate);
+        if (startingNode.isLeaf())
+        {
+            moveLeafDataToSiblingAndCreateParentIfRequired(startingNode, newNodeTemplate, victim);
+            separator = new Pair<>(newNodeTemplate.getKeyValPair().firstElement().getKey(), null);
+            newNodeTemplate.setNext(startingNode.getNext());
+            startingNode.setNext(newNodeTemplate);
+        } else
+        {
+            moveDataToSiblingAndCreateParentIfRequired(startingNode, newNodeTemplate, victim + 1);
+            separator = removeKeyVal(startingNode, victim);
+        }
+        addSeparatorToParent(startingNode, separator, newNodeTemplate);
         return null;
     }
 
+    private void moveLeafDataToSiblingAndCreateParentIfRequired(RamFileNode<Value> oldNodeTemplate, RamFileNode<Value> newNodeTemplate, int offset)
+    {
+        while (oldNodeTemplate.getSize() > offset)
+        {
+            insert(newNodeTemplate, removeKeyVal(oldNodeTemplate, offset),
+                    null, null,
+                    null, null);
+            oldNodeTemplate.getChild().remove(oldNodeTemplate.getChild().size() - 1);
+            oldNodeTemplate.getFileChild().remove(oldNodeTemplate.getFileChild().size() - 1);
+        }
+        createParentIfRequired(oldNodeTemplate, newNodeTemplate);
+    }
+
     protected void moveDataToSiblingAndCreateParentIfRequired(RamFileNode<Value> oldNodeTemplate, RamFileNode<Value> newNodeTemplate, int offset)
     {
         for (int i = offset; i <= MAX_SIZE; i++)
@@ -333,29 +661,42 @@ public class RamFileBtree<Value extends Sizeofable & Parsable>
             {
                 RamFileNode<Value> smallerChild = oldNodeTemplate.getChild().remove(offset), biggerChild = oldNodeTemplate.getChild().remove(offset);
                 Long smallerFileChild = oldNodeTemplate.getFileChild().remove(offset), biggerFileChild = oldNodeTemplate.getFileChild().remove(offset);
-                insert(newNodeTemplate, oldNodeTemplate.getKeyValPair().remove(offset),
+                insert(newNodeTemplate, removeKeyVal(oldNodeTemplate, offset),
                         biggerChild, smallerChild,
                         biggerFileChild, smallerFileChild);
             } else
-                insert(newNodeTemplate, oldNodeTemplate.getKeyValPair().remove(offset),
+                insert(newNodeTemplate, removeKeyVal(oldNodeTemplate, offset),
                         oldNodeTemplate.getChild().remove(offset), null,
                         oldNodeTemplate.getFileChild().remove(offset), null);
         }
         createParentIfRequired(oldNodeTemplate, newNodeTemplate);
     }
 
+    /**
+     * descends from startingNodeTemplate to the leaf holding key, or to the RAM node where the search goes on
+     * in a file tree or to the leaf where key would be added; a separator equal to key leads to the child after it.
+     * The location returned is reused by the next search of the same thread.
+     */
     protected RamDataLocation<Value> findLoc(String key, RamFileNode<Value> startingNodeTemplate)
     {
-        if (startingNodeTemplate.getSize() == 0) return new RamDataLocation<Value>(startingNodeTemplate, 0);
-        RamFileNode<Value> nextChild;
-        int i1 = startingNodeTemplate.binarySearchForLocationToAdd(key);
-        if (i1 == startingNodeTemplate.getSize())
-            nextChild = startingNodeTemplate.getChild().elementAt(i1);
-        else if (startingNodeTemplate.getKeyValPair().elementAt(i1).getKey().compareTo(key) == 0)
-            return new RamDataLocation<Value>(startingNodeTemplate, i1);
-        else
-            nextChild = startingNodeTemplate.getChild().elementAt(i1);
-        return (nextChild == null ? new RamDataLocation<Value>(startingNodeTemplate, i1) : findLoc(key, getNode(nextChild)));
+        RamDataLocation<Value> loc = location.get();
+        RamFileNode<Value> node = startingNodeTemplate;
+        while (true)
+        {
+            int i1 = node.binarySearch(key);
+            if (node.isLeaf())
+            {
+                loc.set(node, i1 >= 0 ? i1 : -i1 - 1, i1 >= 0);
+                return loc;
+            }
+            i1 = i1 >= 0 ? i1 + 1 : -i1 - 1;
+            if (node.isChildAreOnFile())
+            {
+                loc.set(node, i1, false);
+                return loc;
+            }
+            node = getNode(node.getChild().elementAt(i1));
+        }
     }
 
     protected String toString(Vector<RamFileNode<Value>> nodeTemplateQ, int stringDepth)
@@ -0,0 +1,186 @@
+package DataStructures.Tree;
+
+import DataStructures.Tree.Nodes.FileNode;
+import DataStructures.Tree.Nodes.RamFileNode;
+import Primitives.Interfaces.Parsable;
+import Primitives.Interfaces.Sizeofable;
+import javafx.util.Pair;
+
+import java.util.Vector;
+
+/**
+ * Walks the keys of a RamFileBtree in key order, along the chain of its leaves.
+ * seek descends once from the root to the leaf where key belongs, through the nodes in RAM and then those on file;
+ * next goes on in the current leaf and then in the leaf it points to, so a scan reads only the leaves holding its keys
+ * after that one path. The leaves are all in RAM until the tree first stores its nodes on file, and all on file after.
+ * When the tree changed since the cursor was positioned, a split or a spill to file may have moved its keys,
+ * so the cursor seeks its current key again from the root before going on; keys are never removed, so it finds it again.
+ */
+public class TreeCursor<Value extends Sizeofable & Parsable>
+{
+    private final RamFileBtree<Value> tree;
+    private final ExtendedFileBtree<Value> extendedFileBtree;
+    private RamFileNode<Value> ramLeaf; // current leaf when it is in RAM
+    private FileNode<Value> fileLeaf; // current leaf when it is on file
+    private Vector<Pair<String, Value>> keys; // of the current leaf
+    private int index;
+    private long modifications; // of the tree when the leaf was reached
+    private String key; // current key, null when the cursor is not on one
+
+    TreeCursor(RamFileBtree<Value> tree, ExtendedFileBtree<Value> extendedFileBtree)
+    {
+        this.tree = tree;
+        this.extendedFileBtree = extendedFileBtree;
+    }
+
+    /**
+     * moves to the smallest key
+     *
+     * @return false if the tree is empty
+     */
+    public boolean seekFirst()
+    {
+        return seek("");
+    }
+
+    /**
+     * moves to the smallest key not less than key
+     *
+     * @return false if there is no such key
+     */
+    public boolean seek(String key)
+    {
+        modifications = tree.getModifications();
+        RamFileNode<Value> ramNode = tree.getRootNode();
+        while (!ramNode.isLeaf() && !ramNode.isChildAreOnFile())
+            ramNode = ramNode.getChild().elementAt(childIndex(ramNode.getKeyValPair(), key));
+        if (ramNode.isLeaf())
+            setLeaf(ramNode, null);
+        else
+        {
+            FileNode<Value> fileNode = extendedFileBtree.getNode(
+                    ramNode.getFileChild().elementAt(childIndex(ramNode.getKeyValPair(), key)));
+            while (!fileNode.isLeaf())
+                fileNode = extendedFileBtree.getNode(fileNode.getChild().elementAt(childIndex(fileNode.getKeyValPair(), key)));
+            setLeaf(null, fileNode);
+        }
+        index = lowerBound(keys, key);
+        return positioned(skipFinishedLeaves());
+    }
+
+    /**
+     * moves to the next key
+     *
+     * @return false when the cursor passed the last key
+     */
+    public boolean next()
+    {
+        if (key == null || !revalidate())
+            return false;
+        index++;
+        return positioned(skipFinishedLeaves());
+    }
+
+    public boolean isValid()
+    {
+        return key != null;
+    }
+
+    public String getKey()
+    {
+        revalidate();
+        return keys.elementAt(index).getKey();
+    }
+
+    public Value getValue()
+    {
+        revalidate();
+        return keys.elementAt(index).getValue();
+    }
+
+    /**
+     * all pairs whose key starts with prefix, in key order
+     */
+    public Vector<Pair<String, Value>> prefixScan(String prefix)
+    {
+        Vector<Pair<String, Value>> result = new Vector<>();
+        for (boolean valid = seek(prefix); valid && getKey().startsWith(prefix); valid = next())
+            result.add(keys.elementAt(index));
+        return result;
+    }
+
+    /**
+     * takes the path to the current key again if the tree changed since it was taken
+     *
+     * @return false if the key is gone
+     */
+    private boolean revalidate()
+    {
+        if (modifications == tree.getModifications())
+            return true;
+        String current = key;
+        return seek(current) && key.equals(current);
+    }
+
+    private boolean positioned(boolean valid)
+    {
+        key = valid ? keys.elementAt(index).getKey() : null;
+        return valid;
+    }
+
+    /**
+     * follows the chain of leaves while the current one has no key left
+     */
+    private boolean skipFinishedLeaves()
+    {
+        while (index >= keys.size())
+        {
+            if (ramLeaf != null && ramLeaf.getNext() != null)
+                setLeaf(ramLeaf.getNext(), null);
+            else if (fileLeaf != null && fileLeaf.getNext() != null)
+                setLeaf(null, extendedFileBtree.getNode(fileLeaf.getNext()));
+            else
+                return false;
+            index = 0;
+        }
+        return true;
+    }
+
+    private void setLeaf(RamFileNode<Value> ramLeaf, FileNode<Value> fileLeaf)
+    {
+        this.ramLeaf = ramLeaf;
+        this.fileLeaf = fileLeaf;
+        keys = ramLeaf != null ? ramLeaf.getKeyValPair() : fileLeaf.getKeyValPair();
+    }
+
+    /**
+     * the child of an inner node whose keys are not less than the separator before it and less than the one after it
+     */
+    private static <Value> int childIndex(Vector<Pair<String, Value>> separators, String key)
+    {
+        int from = 0, to = separators.size();
+        while (from < to)
+        {
+            int mid = (from + to) >>> 1;
+            if (separators.elementAt(mid).getKey().compareTo(key) <= 0)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+        return from;
+    }
+
+    private static <Value> int lowerBound(Vector<Pair<String, Value>> keys, String key)
+    {
+        int from = 0, to = keys.size();
+        while (from < to)
+        {
+            int mid = (from + to) >>> 1;
+            if (keys.elementAt(mid).getKey().compareTo(key) < 0)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+        return from;
+    }
+}
@@ -1,11 +1,11 @@
 package DataStructures.Vector;
 
+import FileManagement.PageStore;
 import FileManagement.RandomAccessFileManager;
 import Primitives.Interfaces.Parsable;
 import Primitives.Interfaces.Sizeofable;
 
-import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.Vector;
 
 public class FileVector<Value extends Sizeofable & Parsable>
@@ -13,8 +13,10 @@ public class FileVector<Value extends Sizeofable & Parsable>
     protected final int fileID;
     private final int INDEX_DATA_SIZE = 10;
     private final Long NEXT_INDEX_Ptr_LOC_REL_TO_CURR_INDEX = (long) (Long.BYTES * INDEX_DATA_SIZE);
+    private final int INDEX_SIZE = Long.BYTES * (INDEX_DATA_SIZE + 1);
     private final Class valueClassType;
     private int numberOfItemsAdded;
+    private ByteBuffer valueBuffer; // reused for every value read and written, holds the size and the value
 
     public FileVector(Class valueClassType, int fileID)
     {
@@ -44,56 +46,44 @@ public class FileVector<Value extends Sizeofable & Parsable>
 
     private Long createIndexAndFindValuePtrOnFile(Long indexPtr, int offset)
     {
-        RandomAccessFile instance = RandomAccessFileManager.getInstance(fileID);
-        Long tempIndexPtr = indexPtr;
+        PageStore store = RandomAccessFileManager.getPageStore(fileID);
+        long tempIndexPtr = indexPtr;
         while (true)
         {
-            try
+            if (offset < INDEX_DATA_SIZE)
             {
-                if (offset < INDEX_DATA_SIZE)
-                {
-                    instance.seek(tempIndexPtr + offset * Long.BYTES);
-                    Long resPtr = instance.readLong();
-                    if (resPtr == -1)
-                        resPtr = writeNewValueOnFile(tempIndexPtr + offset * Long.BYTES);
-                    return resPtr;
-                }
-
-                instance.seek(tempIndexPtr + NEXT_INDEX_Ptr_LOC_REL_TO_CURR_INDEX);
-                Long tempNextIndexPtr = instance.readLong();
-                if (tempNextIndexPtr == -1)
-                {
-                    tempNextIndexPtr = createNewIndex();
-                    instance.seek(tempIndexPtr + NEXT_INDEX_Ptr_LOC_REL_TO_CURR_INDEX);
-                    instance.writeLong(tempNextIndexPtr);
-                }
-                tempIndexPtr = tempNextIndexPtr;
-                offset -= INDEX_DATA_SIZE;
-
-            } catch (IOException e)
+                long resPtr = store.readLong(tempIndexPtr + offset * Long.BYTES);
+                if (resPtr == -1)
+                    resPtr = writeNewValueOnFile(tempIndexPtr + offset * Long.BYTES);
+                return resPtr;
+            }
+
+            long tempNextIndexPtr = store.readLong(tempIndexPtr + NEXT_INDEX_Ptr_LOC_REL_TO_CURR_INDEX);
+            if (tempNextIndexPtr == -1)
             {
-                e.printStackTrace();
+                tempNextIndexPtr = createNewIndex();
+                store.writeLong(tempIndexPtr + NEXT_INDEX_Ptr_LOC_REL_TO_CURR_INDEX, tempNextIndexPtr);
             }
+            tempIndexPtr = tempNextIndexPtr;
+            offset -= INDEX_DATA_SIZE;
         }
     }
 
     private Value readValueAt(Long valuePtrOnFile)
     {
-        RandomAccessFile instance = RandomAccessFileManager.getInstance(fileID);
+        PageStore store = RandomAccessFileManager.getPageStore(fileID);
         Value value = null;
         try
         {
             value = (Value) valueClassType.newInstance();
             if (valuePtrOnFile < 0)
                 System.out.println("ljlskdjfl");
-            instance.seek(valuePtrOnFile);
-            int size = instance.readInt();
-            if (size == -1)
+            ByteBuffer buffer = getValueBuffer(value.sizeof());
+            store.read(valuePtrOnFile, buffer);
+            if (buffer.getInt(0) == -1)
                 return null;
-            byte tempByteArray[] = new byte[size];
-            instance.read(tempByteArray);
-            value.parseFromByteArray(tempByteArray);
-        } catch (InstantiationException | IllegalAccessException | IOException e)
+            value.readFrom(buffer, Integer.BYTES);
+        } catch (InstantiationException | IllegalAccessException e)
         {
             e.printStackTrace();
         }
@@ -102,33 +92,32 @@ public class FileVector<Value extends Sizeofable & Parsable>
 
     private void writeValueAt(Long valuePtrOnFile, Value value)
     {
-        RandomAccessFile instance = RandomAccessFileManager.getInstance(fileID);
-        try
-        {
-            instance.seek(valuePtrOnFile);
-            byte[] bytes = value.toByteArray();
-            instance.writeInt(bytes.length);
-            instance.write(bytes);
-        } catch (IOException e)
-        {
-            e.printStackTrace();
-        }
+        ByteBuffer buffer = getValueBuffer(value.sizeof());
+        buffer.putInt(0, value.sizeof());
+        value.writeTo(buffer, Integer.BYTES);
+        RandomAccessFileManager.getPageStore(fileID).write(valuePtrOnFile, buffer);
+    }
+
+    private ByteBuffer getValueBuffer(int valueSize)
+    {
+        if (valueBuffer == null || valueBuffer.capacity() < Integer.BYTES + valueSize)
+            valueBuffer = ByteBuffer.allocate(Integer.BYTES + valueSize);
+        valueBuffer.clear();
+        valueBuffer.limit(Integer.BYTES + valueSize);
+        return valueBuffer;
     }
 
     private Long writeNewValueOnFile(Long ptrInIndex)
     {
-        RandomAccessFile instance = RandomAccessFileManager.getInstance(fileID);
+        PageStore store = RandomAccessFileManager.getPageStore(fileID);
         Long resPtr = null;
         try
         {
-            resPtr = instance.getChannel().size();
-            instance.seek(ptrInIndex);
-            instance.writeLong(resPtr);
-            instance.seek(resPtr);
-            instance.writeInt(-1);
-            instance.write(new byte[((Value) valueClassType.newInstance()).sizeof()]);
+            resPtr = store.allocate(Integer.BYTES + ((Value) valueClassType.newInstance()).sizeof());
+            store.writeLong(ptrInIndex, resPtr);
+            store.writeInt(resPtr, -1);
             numberOfItemsAdded++;
-        } catch (IOException | InstantiationException | IllegalAccessException e)
+        } catch (InstantiationException | IllegalAccessException e)
         {
             e.printStackTrace();
         }
@@ -137,80 +126,62 @@ public class FileVector<Value extends Sizeofable & Parsable>
 
     private Long findValuePtrOnFile(Long indexPtr, int offset)
     {
-        RandomAccessFile instance = RandomAccessFileManager.getInstance(fileID);
-        Long tempIndexPtr = indexPtr;
+        PageStore store = RandomAccessFileManager.getPageStore(fileID);
+        long tempIndexPtr = indexPtr;
         while (true)
         {
-            try
-            {
-                if (offset < INDEX_DATA_SIZE)
-                {
-                    instance.seek(tempIndexPtr + offset * Long.BYTES);
-                    Long resPtr = instance.readLong();
-                    return resPtr == -1 ? null : resPtr;
-                }
-
-                instance.seek(tempIndexPtr + NEXT_INDEX_Ptr_LOC_REL_TO_CURR_INDEX);
-                Long tempNextIndexPtr = instance.readLong();
-                if (tempNextIndexPtr == -1)
-                    return null;
-                tempIndexPtr = tempNextIndexPtr;
-                offset -= INDEX_DATA_SIZE;
-            } catch (IOException e)
+            if (offset < INDEX_DATA_SIZE)
             {
-                e.printStackTrace();
+                long resPtr = store.readLong(tempIndexPtr + offset * Long.BYTES);
+                return resPtr == -1 ? null : resPtr;
             }
+
+            long tempNextIndexPtr = store.readLong(tempIndexPtr + NEXT_INDEX_Ptr_LOC_REL_TO_CURR_INDEX);
+            if (tempNextIndexPtr == -1)
+                return null;
+            tempIndexPtr = tempNextIndexPtr;
+            offset -= INDEX_DATA_SIZE;
         }
     }
 
     private Long createNewIndex()
     {
-        Long returnAdd = null;
-        RandomAccessFile instance = RandomAccessFileManager.getInstance(fileID);
-        try
-        {
-            instance.seek(instance.getChannel().size());
-            returnAdd = instance.getFilePointer();
-            for (int i = 0; i <= INDEX_DATA_SIZE; i++) // one more write for ptr at end to next index
-                instance.writeLong(-1);
-
-        } catch (IOException e)
-        {
-            e.printStackTrace();
-        }
+        ByteBuffer index = ByteBuffer.allocate(INDEX_SIZE);
+        for (int i = 0; i <= INDEX_DATA_SIZE; i++) // one more write for ptr at end to next index
+            index.putLong(-1);
+        index.flip();
+        PageStore store = RandomAccessFileManager.getPageStore(fileID);
+        long returnAdd = store.allocate(INDEX_SIZE);
+        store.write(returnAdd, index);
         return returnAdd;
     }
 
 
     public Vector<Value> getAllElements(Long indexPtr)
     {
-        RandomAccessFile instance = RandomAccessFileManager.getInstance(fileID);
+        PageStore store = RandomAccessFileManager.getPageStore(fileID);
         Vector<Value> resultVector = new Vector<>();
+        ByteBuffer index = ByteBuffer.allocate(INDEX_SIZE);
         long tempIndexPtr = indexPtr;
-        try
+        while (true)
         {
-            while (true)
+            index.clear();
+            store.read(tempIndexPtr, index);
+            index.flip();
+            for (int i = 0; i < INDEX_DATA_SIZE; i++)
             {
-                instance.seek(tempIndexPtr);
-                for (int i = 0; i < INDEX_DATA_SIZE; i++)
-                {
-                    long valuePtr = instance.readLong();
-                    if (valuePtr == -1)
-                        return resultVector;
-                    Value value = readValueAt(valuePtr);
-                    if (value != null)
-                        resultVector.add(value);
-                }
-                long nextIndexPtr = instance.readLong();
-                if (nextIndexPtr == -1)
+                long valuePtr = index.getLong();
+                if (valuePtr == -1)
                     return resultVector;
-                tempIndexPtr = nextIndexPtr;
+                Value value = readValueAt(valuePtr);
+                if (value != null)
+                    resultVector.add(value);
             }
-        } catch (IOException e)
-        {
-            e.printStackTrace();
+            long nextIndexPtr = index.getLong();
+            if (nextIndexPtr == -1)
+                return resultVector;
+            tempIndexPtr = nextIndexPtr;
         }
-        return resultVector;
     }
 
     public int size()
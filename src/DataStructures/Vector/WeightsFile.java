@@ -0,0 +1,186 @@
+package DataStructures.Vector;
+
+import Primitives.FreqWeight;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Weight vectors of all terms in one file, written as a single sequential stream: per term, the column of
+ * frequencies (long) and then the column of weights (double), one entry per posting of the term.
+ * An offset table indexed by term ID finds the vector of a term; it is kept in RAM and written to
+ * name.offsets on close as int number of terms, then per term ID: long offset (-1 for none), int size.
+ * <p>
+ * Weights are derived data: a file whose offset table is missing, because the run that wrote it did not close it,
+ * is started over.
+ */
+public class WeightsFile
+{
+    private static final int ENTRY_SIZE = Long.BYTES + Double.BYTES;
+
+    private final File file, offsetsFile;
+    private final FileOutputStream fileOut;
+    private final DataOutputStream out;
+    private FileChannel channel; // for reads, opened on the first one
+    private long end; // bytes written to out
+    private long[] offsets; // by term ID
+    private int[] sizes;
+    private int termCount; // one more than the largest term ID written
+
+    public WeightsFile(String fileName)
+    {
+        file = new File(fileName);
+        offsetsFile = new File(fileName + ".offsets");
+        offsets = new long[1024];
+        sizes = new int[offsets.length];
+        Arrays.fill(offsets, -1);
+        FileOutputStream fileStream = null;
+        try
+        {
+            boolean reopen = file.exists() && offsetsFile.exists() && readOffsets();
+            if (!reopen)
+            {
+                Arrays.fill(offsets, -1);
+                termCount = 0;
+            }
+            // the table is rewritten on close, until then the file is not complete
+            offsetsFile.delete();
+            fileStream = new FileOutputStream(file, reopen);
+            end = reopen ? file.length() : 0;
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        fileOut = fileStream;
+        out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16));
+    }
+
+    /**
+     * appends the weight vector of termID, replacing the one it had
+     */
+    public synchronized void write(int termID, long[] freqs, double[] weights, int size)
+    {
+        try
+        {
+            for (int i = 0; i < size; i++)
+                out.writeLong(freqs[i]);
+            for (int i = 0; i < size; i++)
+                out.writeDouble(weights[i]);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+            return;
+        }
+        if (termID >= offsets.length)
+        {
+            int oldLength = offsets.length;
+            offsets = Arrays.copyOf(offsets, Math.max(termID + 1, 2 * oldLength));
+            sizes = Arrays.copyOf(sizes, offsets.length);
+            Arrays.fill(offsets, oldLength, offsets.length, -1);
+        }
+        offsets[termID] = end;
+        sizes[termID] = size;
+        termCount = Math.max(termCount, termID + 1);
+        end += (long) size * ENTRY_SIZE;
+    }
+
+    /**
+     * entry index of the vector of termID, null if there is none
+     */
+    public synchronized FreqWeight elementAt(int termID, int index)
+    {
+        if (termID >= termCount || offsets[termID] == -1 || index >= sizes[termID])
+            return null;
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+            FreqWeight freqWeight = new FreqWeight();
+            read(offsets[termID] + (long) index * Long.BYTES, buffer);
+            freqWeight.setFreq(buffer.getLong(0));
+            read(offsets[termID] + (long) sizes[termID] * Long.BYTES + (long) index * Double.BYTES, buffer);
+            freqWeight.setValue(buffer.getDouble(0));
+            return freqWeight;
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * length of the vector of termID, 0 if there is none
+     */
+    public synchronized int size(int termID)
+    {
+        return termID < termCount && offsets[termID] != -1 ? sizes[termID] : 0;
+    }
+
+    /**
+     * writes what is buffered and the offset table, forced to disk; the table replaces the old one at once
+     */
+    public synchronized void close()
+    {
+        File newOffsets = new File(offsetsFile.getPath() + ".tmp");
+        try
+        {
+            out.flush();
+            fileOut.getFD().sync();
+            out.close();
+            if (channel != null)
+                channel.close();
+            try (FileOutputStream offsetsOut = new FileOutputStream(newOffsets);
+                 DataOutputStream tableOut = new DataOutputStream(new BufferedOutputStream(offsetsOut, 1 << 16)))
+            {
+                tableOut.writeInt(termCount);
+                for (int i = 0; i < termCount; i++)
+                {
+                    tableOut.writeLong(offsets[i]);
+                    tableOut.writeInt(sizes[i]);
+                }
+                tableOut.flush();
+                offsetsOut.getFD().sync();
+            }
+            Files.move(newOffsets.toPath(), offsetsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private void read(long position, ByteBuffer buffer) throws IOException
+    {
+        if (channel == null)
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        out.flush();
+        buffer.clear();
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("weights file " + file + " is cut short");
+    }
+
+    private boolean readOffsets()
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(offsetsFile), 1 << 16)))
+        {
+            termCount = in.readInt();
+            offsets = new long[Math.max(termCount, offsets.length)];
+            sizes = new int[offsets.length];
+            Arrays.fill(offsets, -1);
+            for (int i = 0; i < termCount; i++)
+            {
+                offsets[i] = in.readLong();
+                sizes[i] = in.readInt();
+            }
+            return true;
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package DocIndexingManagement.Clustering;
 
+import Primitives.DocVector;
 import Primitives.FreqWeight;
 
 public class Arithmatics
@@ -11,6 +12,22 @@ public class Arithmatics
         return ans;
     }
 
+    /**
+     * euclidean distance of the dense sample of a cluster over the term IDs and a sparse document vector;
+     * the squared norm of the sample is kept by the cluster, so only the terms of the document are visited
+     */
+    static double getDistance(Cluster cluster, DocVector doc)
+    {
+        FreqWeight[] sample = cluster.getTermFreqVectorSample();
+        double ans = cluster.getSquaredNorm();
+        for (int i = 0; i < doc.size(); i++)
+        {
+            double value = doc.getTermID(i) < sample.length ? sample[doc.getTermID(i)].getValue() : 0;
+            ans += doc.getWeight(i) * (doc.getWeight(i) - 2 * value);
+        }
+        return Math.sqrt(Math.max(ans, 0));
+    }
+
     static double getArcCosine(double cosine)
     {
         //TODO: Maybe using look-up table
@@ -1,6 +1,7 @@
 package DocIndexingManagement.Clustering;
 
 import Primitives.Doc;
+import Primitives.DocVector;
 import Primitives.FreqWeight;
 
 import java.util.Vector;
@@ -12,10 +13,14 @@ public class Cluster
 {
     Vector<Doc> followers;
     private FreqWeight[] termFreqVectorSample;
+    private double squaredNorm; // of the sample, updated whenever the sample changes
 
     Cluster(FreqWeight[] termFreqVectorSample)
     {
         this.termFreqVectorSample = termFreqVectorSample;
+        this.followers = new Vector<Doc>();
+        for (FreqWeight freqWeight : termFreqVectorSample)
+            squaredNorm += freqWeight.getValue() * freqWeight.getValue();
     }
 
     public FreqWeight[] getTermFreqVectorSample()
@@ -23,6 +28,11 @@ public class Cluster
         return this.termFreqVectorSample;
     }
 
+    public double getSquaredNorm()
+    {
+        return squaredNorm;
+    }
+
     public void normalizeSample()
     {
 
@@ -30,20 +40,25 @@ public class Cluster
         int m = termFreqVectorSample.length;
         FreqWeight[] res = new FreqWeight[m];
         double[] tmpVal = new double[m];
-        FreqWeight[] tmpFW;
+        DocVector tmpDV;
 
+        if (n == 0)
+            return;
         for (int i = 0; i < n; i++)
         {
-//            tmpFW = followers.elementAt(i).getTermVector().getFreqWeight();
-            for (int j = 0; j < m; j++)
+            tmpDV = followers.elementAt(i).getDocVector();
+            for (int j = 0; j < tmpDV.size(); j++)
             {
-//                tmpVal[j] += tmpFW[j].getValue();
+                if (tmpDV.getTermID(j) < m)
+                    tmpVal[tmpDV.getTermID(j)] += tmpDV.getWeight(j);
             }
         }
+        squaredNorm = 0;
         for (int j = 0; j < m; j++)
         {
             tmpVal[j] /= n;
             termFreqVectorSample[j].setValue(tmpVal[j]);
+            squaredNorm += tmpVal[j] * tmpVal[j];
         }
 
 
@@ -54,8 +69,8 @@ public class Cluster
         //TODO:
         for (Doc doc : followers)
         {
-//            double tmp = Arithmatics.getDistance(doc.getTermVector().getFreqWeight(), termFreqVectorSample);
-//            doc.setDistanceFromLeader(tmp);
+            double tmp = Arithmatics.getDistance(this, doc.getDocVector());
+            doc.setDistanceFromLeader(tmp);
         }
     }
 
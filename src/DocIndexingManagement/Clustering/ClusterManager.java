@@ -1,5 +1,6 @@
 package DocIndexingManagement.Clustering;
 
+import DocIndexingManagement.Indexing.DocTermIndexer;
 import Primitives.Doc;
 import Primitives.FreqWeight;
 
@@ -17,10 +18,11 @@ public class ClusterManager
     int vectorLength;
     Vector<Cluster> clusters;
 
-    public ClusterManager()
+    public ClusterManager(DocTermIndexer forwardIndex)
     {
-        this.vectorLength = Support.getVectorLength();
-        this.allDocs = Support.getAllDoc();
+        this.vectorLength = Support.getVectorLength(forwardIndex);
+        this.allDocs = Support.getAllDoc(forwardIndex);
+        this.clusters = new Vector<Cluster>();
         docsNumber = allDocs.size();
         generateClusters();
         addDocsToClusters();
@@ -37,6 +39,7 @@ public class ClusterManager
             FreqWeight[] termFreqVectorSample = new FreqWeight[vectorLength];
             for (int j = 0; j < vectorLength; j++)
             {
+                termFreqVectorSample[j] = new FreqWeight();
                 termFreqVectorSample[j].setValue(Math.random());//random between 0 and 1
             }
             Cluster tmp = new Cluster(termFreqVectorSample);
@@ -52,12 +55,12 @@ public class ClusterManager
             Cluster condidateCl = null;
             for (Cluster cl : clusters)
             {
-//                double tmp = Arithmatics.getDistance(cl.getTermFreqVectorSample(), doc.getTermVector().getFreqWeight());
-//                if (tmp < bestDistance)
-//                {
-//                    condidateCl = cl;
-//                    bestDistance = tmp;
-//                }
+                double tmp = Arithmatics.getDistance(cl, doc.getDocVector());
+                if (tmp < bestDistance)
+                {
+                    condidateCl = cl;
+                    bestDistance = tmp;
+                }
             }
             condidateCl.addToFollowers(doc);
         }
@@ -86,12 +89,12 @@ public class ClusterManager
                 {
                     if (i != j)
                     {
-//                        double tmp = Arithmatics.getDistance(doc.getTermVector().getFreqWeight(), clusters.elementAt(j).getTermFreqVectorSample());
-//                        if (tmp < bestDistance)
-//                        {
-//                            bestDistance = tmp;
-//                            bestIndex = j;
-//                        }
+                        double tmp = Arithmatics.getDistance(clusters.elementAt(j), doc.getDocVector());
+                        if (tmp < bestDistance)
+                        {
+                            bestDistance = tmp;
+                            bestIndex = j;
+                        }
                     }
                 }
                 if (bestIndex != i)
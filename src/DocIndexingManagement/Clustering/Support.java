@@ -1,7 +1,9 @@
 package DocIndexingManagement.Clustering;
 
+import DocIndexingManagement.Indexing.DocTermIndexer;
 import Primitives.Doc;
 
+import java.io.IOException;
 import java.util.Vector;
 
 /**
@@ -9,15 +11,25 @@ import java.util.Vector;
  */
 public class Support
 {
-    public static int getVectorLength()
+    public static int getVectorLength(DocTermIndexer forwardIndex)
     {
-        //TODO
-        return 2500;
+        return forwardIndex.getTermCount();
     }
 
-    public static Vector<Doc> getAllDoc()
+    /**
+     * every document with its vector, read in one pass over the forward index
+     */
+    public static Vector<Doc> getAllDoc(DocTermIndexer forwardIndex)
     {
-        Vector<Doc> tmp = null;
+        Vector<Doc> tmp = new Vector<Doc>();
+        try (DocTermIndexer.DocVectorIterator iterator = forwardIndex.iterator())
+        {
+            while (iterator.hasNext())
+                tmp.add(new Doc(iterator.next()));
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
         return tmp;
     }
 }
@@ -1,76 +1,808 @@
 package DocIndexingManagement.Indexing;
 
+import DataStructures.Postings.PostingsCursor;
+import DataStructures.Postings.PostingsFile;
+import DataStructures.Postings.PostingsList;
 import DataStructures.Tree.RamFileBtree;
-import DataStructures.Vector.FileVector;
+import DataStructures.Tree.TreeCursor;
+import FileManagement.PageStore;
 import FileManagement.RandomAccessFileManager;
+import FileManagement.WriteAheadLog;
 import Primitives.TermAbstractDetail;
 import Primitives.TermDocDetail;
 import Primitives.TermPosting;
+import Utilities.VByteUtils;
 import javafx.util.Pair;
 
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Vector;
+import java.util.regex.Pattern;
 
-public class Dictionary
+/**
+ * Terms in a tree, postings lists in a postings file, and a write-ahead log protecting both.
+ * Every change is logged as a redo record before it is made, and the log is forced in groups.
+ * A checkpoint forces both files and starts a new log with the RAM part of the tree; after it,
+ * the first change to every checkpointed block of the files logs the block's before-image.
+ * Opening a dictionary whose log survived a crash puts the images back, cuts the files to their checkpointed size,
+ * reloads the tree of the checkpoint and replays the redo records.
+ * <p>
+ * Closing writes a manifest instead: magic, version, then the same state a checkpoint keeps, that is
+ * the sizes of both files, the last document, the number of documents and the RAM part of the tree.
+ * Opening a closed dictionary reads it back and takes the files as they are, without rebuilding anything.
+ * <p>
+ * Every term also has a dense ID from TermIDs, kept in its tree entry; the IDs are forced before a checkpoint,
+ * so the tree never holds an ID whose term is not on disk. Dictionaries that are parts of one index share the TermIDs
+ * of the index, which its owner closes.
+ * <p>
+ * Terms inserted one at a time are collected for their document and added as one posting per term when
+ * another document starts, or before anything reads or checkpoints the dictionary. Until then only the log has them.
+ */
+public class Dictionary implements InvertedIndex
 {
-    private static Dictionary instance = null;
+    public static final long CHECKPOINT_LOG_SIZE = 64 * 1024 * 1024; // a longer log is replaced by a checkpoint
+    private static final byte INSERT = 16, ADD_POSTINGS = 17, ADD_DOCUMENT = 18, ADD_POSITIONAL_DOCUMENT = 19; // redo record types
+    private static final int INDEX_STORE = 0, VECTOR_STORE = 1; // store numbers of the before-images
+    private static final int MANIFEST_MAGIC = 0x44494354, MANIFEST_VERSION = 5;
+    private static HashMap<Integer, Dictionary> instances = new HashMap<>();
     private final int indexFileID, vectorFileID;
+    private final TermIDs termIDs;
+    private final boolean ownTermIDs; // false for TermIDs shared with other dictionaries
     public RamFileBtree<TermAbstractDetail> tree;
-    private FileVector<TermDocDetail> fileVector;
+    private PostingsFile postingsFile;
     private int lastOffsetRead;
     private Vector<Pair<String, TermAbstractDetail>> lastNodeRead;
+    private final WriteAheadLog log;
+    private boolean logging; // off while the log is replayed and while adding postings the caller can add again
+    private int lastDocumentID;
+    private int numberOfDocuments;
+    private ByteBuffer recordBuffer;
+    private final HashMap<String, Integer> pendingTerms; // inserted for pendingDocID, not yet in the tree
+    private int pendingDocID;
+    private final File manifest;
+    private boolean reopened;
+    private int replayedRecords; // by the recovery on open, -1 if there was none
 
-    private Dictionary(int id)
+    Dictionary(String indexFileName, String vectorFileName)
     {
-        indexFileID = RandomAccessFileManager.createNewInstance("index"+id);
-        vectorFileID = RandomAccessFileManager.createNewInstance("postingVector"+id);
-        String temp = "ممممممممممممممممممممممممممممممممممممممممممممممممممممممممممممممممممممممم";
-        TermAbstractDetail termAbstractDetail = new TermAbstractDetail(null, null);
-        tree = new RamFileBtree<>(temp.length(), termAbstractDetail.sizeof(), 17, TermAbstractDetail.class, indexFileID);
-        fileVector = new FileVector<>(TermDocDetail.class, vectorFileID);
+        this(indexFileName, vectorFileName, true);
+    }
+
+    /**
+     * @param reopen whether to take the index the last run left, recovering it if that run crashed, or to start empty
+     */
+    Dictionary(String indexFileName, String vectorFileName, boolean reopen)
+    {
+        this(indexFileName, vectorFileName, reopen, null);
+    }
+
+    /**
+     * @param sharedTermIDs term IDs of the index this dictionary is a part of, null for IDs of its own
+     */
+    Dictionary(String indexFileName, String vectorFileName, boolean reopen, TermIDs sharedTermIDs)
+    {
+        String logName = indexFileName + ".wal";
+        manifest = new File(indexFileName + ".manifest");
+        boolean recover = reopen && WriteAheadLog.exists(logName);
+        reopen = reopen && !recover && manifest.exists();
+        if (recover || reopen)
+        {
+            indexFileID = RandomAccessFileManager.openExistingInstance(indexFileName);
+            vectorFileID = RandomAccessFileManager.openExistingInstance(vectorFileName);
+        } else
+        {
+            indexFileID = RandomAccessFileManager.createNewInstance(indexFileName);
+            vectorFileID = RandomAccessFileManager.createNewInstance(vectorFileName);
+            manifest.delete();
+        }
+        ownTermIDs = sharedTermIDs == null;
+        termIDs = ownTermIDs ? new TermIDs(indexFileName + ".terms", recover || reopen) : sharedTermIDs;
+        tree = createTree();
+        postingsFile = new PostingsFile(vectorFileID);
         lastOffsetRead = Integer.MAX_VALUE;
         lastNodeRead = null;
+        log = new WriteAheadLog(logName);
+        logging = true;
+        lastDocumentID = -1;
+        numberOfDocuments = 0;
+        pendingTerms = new HashMap<>();
+        replayedRecords = -1;
+        if (recover)
+            recover();
+        else if (reopen)
+            reopened = readManifest();
+        checkpoint();
     }
 
-    public static Dictionary getIntance(int id)
+    private RamFileBtree<TermAbstractDetail> createTree()
     {
+        String temp = "ممممممممممممممممممممممممممممممممممممممممممممممممممممممممممممممممممممممم";
+        TermAbstractDetail termAbstractDetail = new TermAbstractDetail(null, null);
+        return new RamFileBtree<>(temp.length(), termAbstractDetail.sizeof(), 17, TermAbstractDetail.class, indexFileID);
+    }
+
+    public static synchronized Dictionary getIntance(int id)
+    {
+        return getIntance(id, true);
+    }
+
+    /**
+     * @param reopen false to start empty even if an index with this id was left by the last run
+     */
+    public static synchronized Dictionary getIntance(int id, boolean reopen)
+    {
+        Dictionary instance = instances.get(id);
         if (instance == null)
-            instance = new Dictionary(id);
+        {
+            instance = new Dictionary("index" + id, "postingVector" + id, reopen);
+            instances.put(id, instance);
+        }
         return instance;
     }
 
     public TermAbstractDetail search(String key){
+        applyPendingInserts();
         return tree.search(key);
     }
 
+    /**
+     * the entry of the term with termID, null if the ID is unknown or the term has no postings here
+     */
+    public TermAbstractDetail search(int termID)
+    {
+        if (termID < 0 || termID >= termIDs.size())
+            return null;
+        return search(termIDs.getTerm(termID));
+    }
 
-    public void insert(String term, int docID)
+    public TermIDs getTermIDs()
     {
-        TermAbstractDetail searchRes = tree.search(term);
-        if (searchRes == null)
+        return termIDs;
+    }
+
+
+    /**
+     * adds one occurrence of term in docID; the occurrences of a document are counted and reach the postings together.
+     * Bulk indexing should go through SpimiIndexer and addPostings instead
+     */
+    public void insert(String term, final int docID)
+    {
+        if (logging)
+        {
+            ByteBuffer record = getRecordBuffer(2 * VByteUtils.MAX_BYTES + 3 * term.length());
+            putTerm(record, term);
+            VByteUtils.write(record, docID);
+            record.flip();
+            log.append(INSERT, record);
+        }
+        applyInsert(term, docID);
+        afterChange();
+    }
+
+    private void applyInsert(String term, int docID)
+    {
+        if (docID != pendingDocID)
+            applyPendingInserts();
+        pendingDocID = docID;
+        Integer freq = pendingTerms.get(term);
+        pendingTerms.put(term, freq == null ? 1 : freq + 1);
+    }
+
+    /**
+     * adds the terms inserted for the pending document, one posting per term with the number of its occurrences
+     */
+    private void applyPendingInserts()
+    {
+        if (pendingTerms.isEmpty())
+            return;
+        for (Map.Entry<String, Integer> entry : pendingTerms.entrySet())
+        {
+            PostingsList postingsList = new PostingsList(1);
+            postingsList.append(pendingDocID, entry.getValue());
+            applyAddPostings(entry.getKey(), postingsList);
+        }
+        pendingTerms.clear();
+    }
+
+    /**
+     * adds the whole postings list of a term at once, docIDs must be sorted
+     */
+    public void addPostings(String term, final int[] docIDs, final int[] freqs, final int size)
+    {
+        if (logging)
+        {
+            ByteBuffer record = getRecordBuffer((2 + 2 * size) * VByteUtils.MAX_BYTES + 3 * term.length());
+            putTerm(record, term);
+            VByteUtils.write(record, size);
+            int lastDocID = 0;
+            for (int i = 0; i < size; i++)
+            {
+                VByteUtils.write(record, docIDs[i] - lastDocID);
+                VByteUtils.write(record, freqs[i]);
+                lastDocID = docIDs[i];
+            }
+            record.flip();
+            log.append(ADD_POSTINGS, record);
+        }
+        applyAddPostings(term, docIDs, freqs, size);
+        afterChange();
+    }
+
+    /**
+     * adds the counted terms of one document, logged as a single record so that a crash keeps all of them or none
+     */
+    public void addDocument(Map<String, Integer> termFreqs, int docID)
+    {
+        if (logging)
         {
-            Long indexPtr = fileVector.writeElementAt(null, docID, new TermDocDetail(1));
-            try
+            int maxLength = 2 * VByteUtils.MAX_BYTES;
+            for (String term : termFreqs.keySet())
+                maxLength += 2 * VByteUtils.MAX_BYTES + 3 * term.length();
+            ByteBuffer record = getRecordBuffer(maxLength);
+            VByteUtils.write(record, docID);
+            VByteUtils.write(record, termFreqs.size());
+            for (Map.Entry<String, Integer> entry : termFreqs.entrySet())
             {
-                tree.insert(term, new TermAbstractDetail(1, indexPtr));
-            } catch (Exception e)
+                putTerm(record, entry.getKey());
+                VByteUtils.write(record, entry.getValue());
+            }
+            record.flip();
+            log.append(ADD_DOCUMENT, record);
+        }
+        applyAddDocument(termFreqs, docID);
+        afterChange();
+    }
+
+    /**
+     * adds one document with the positions of its terms, for phrase queries; logged as a single record like addDocument
+     */
+    public void addPositionalDocument(Map<String, int[]> termPositions, int docID)
+    {
+        if (logging)
+        {
+            int maxLength = 2 * VByteUtils.MAX_BYTES;
+            for (Map.Entry<String, int[]> entry : termPositions.entrySet())
+                maxLength += (1 + entry.getValue().length) * VByteUtils.MAX_BYTES + 3 * entry.getKey().length() + VByteUtils.MAX_BYTES;
+            ByteBuffer record = getRecordBuffer(maxLength);
+            VByteUtils.write(record, docID);
+            VByteUtils.write(record, termPositions.size());
+            for (Map.Entry<String, int[]> entry : termPositions.entrySet())
             {
-                e.printStackTrace();
+                putTerm(record, entry.getKey());
+                int[] positions = entry.getValue();
+                VByteUtils.write(record, positions.length);
+                for (int i = 0, lastPosition = 0; i < positions.length; lastPosition = positions[i++])
+                    VByteUtils.write(record, positions[i] - lastPosition);
             }
+            record.flip();
+            log.append(ADD_POSITIONAL_DOCUMENT, record);
+        }
+        applyAddPositionalDocument(termPositions, docID);
+        afterChange();
+    }
 
-        } else
+    private void applyAddPositionalDocument(Map<String, int[]> termPositions, int docID)
+    {
+        applyPendingInserts();
+        for (Map.Entry<String, int[]> entry : termPositions.entrySet())
         {
-            TermDocDetail termDocDetail = fileVector.elementAt(searchRes.getFilePtr(), docID);
-            if (termDocDetail == null)
-                termDocDetail = new TermDocDetail(0);
-            searchRes.incrementOccurences();
-            termDocDetail.incrementOccurences();
-            fileVector.writeElementAt(searchRes.getFilePtr(), docID, termDocDetail);
-            tree.update(term, searchRes);
+            int[] positions = entry.getValue();
+            PostingsList postingsList = new PostingsList(1);
+            postingsList.appendWithPositions(docID, positions.length, positions, 0, positions.length);
+            applyAddPostings(entry.getKey(), postingsList);
         }
+        lastDocumentID = Math.max(lastDocumentID, docID);
+        numberOfDocuments++;
+    }
+
+    private void applyAddDocument(Map<String, Integer> termFreqs, int docID)
+    {
+        int[] docIDs = {docID};
+        for (Map.Entry<String, Integer> entry : termFreqs.entrySet())
+            applyAddPostings(entry.getKey(), docIDs, new int[]{entry.getValue()}, 1);
+        lastDocumentID = Math.max(lastDocumentID, docID);
+        numberOfDocuments++;
+    }
+
+    private void applyAddPostings(String term, final int[] docIDs, final int[] freqs, final int size)
+    {
+        applyPendingInserts();
+        PostingsList postingsList = new PostingsList(size);
+        for (int i = 0; i < size; i++)
+            postingsList.append(docIDs[i], freqs[i]);
+        applyAddPostings(term, postingsList);
+    }
+
+    private void applyAddPostings(String term, final PostingsList postingsList)
+    {
+        try
+        {
+            tree.upsert(term, termAbstractDetail ->
+            {
+                int occurences = 0;
+                for (int i = 0; i < postingsList.size(); i++)
+                    occurences += postingsList.getFreq(i);
+                if (termAbstractDetail == null)
+                    return new TermAbstractDetail(occurences, postingsFile.write(postingsList), termIDs.getOrAdd(term));
+
+                // only the new postings are written, the list keeps its old chunks
+                termAbstractDetail.setFilePtr(postingsFile.append(termAbstractDetail.getFilePtr(), postingsList));
+                termAbstractDetail.setOccurences(termAbstractDetail.getOccurences() + occurences);
+                return termAbstractDetail;
+            });
+        } catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * adds postings lists in increasing term order of numberOfDocuments documents, the last being lastDocumentID;
+     * an empty dictionary is bulk loaded. Nothing is logged, the dictionary checkpoints at the end instead:
+     * a crash before that brings it back to where it was, and the caller, who still has the postings, adds them again.
+     */
+    public void addSortedPostings(Iterator<Pair<String, PostingsList>> sortedPostings, int lastDocumentID, int numberOfDocuments,
+                                  double fillFactor)
+    {
+        applyPendingInserts();
+        logging = false;
+        try
+        {
+            if (isEmpty())
+                bulkLoadTree(sortedPostings, fillFactor);
+            else
+                while (sortedPostings.hasNext())
+                {
+                    Pair<String, PostingsList> termPostings = sortedPostings.next();
+                    PostingsList postingsList = termPostings.getValue();
+                    applyAddPostings(termPostings.getKey(), postingsList);
+                }
+            this.lastDocumentID = Math.max(this.lastDocumentID, lastDocumentID);
+            this.numberOfDocuments += numberOfDocuments;
+        } finally
+        {
+            logging = true;
+        }
+        checkpoint();
+    }
+
+    /**
+     * builds an empty dictionary from postings lists in increasing term order, see RamFileBtree.bulkLoad.
+     * Like addSortedPostings it is not logged and ends with a checkpoint.
+     */
+    public void bulkLoad(final Iterator<Pair<String, PostingsList>> sortedPostings, double fillFactor)
+    {
+        bulkLoadTree(sortedPostings, fillFactor);
+        checkpoint();
+    }
+
+    private void bulkLoadTree(final Iterator<Pair<String, PostingsList>> sortedPostings, double fillFactor)
+    {
+        try
+        {
+            tree.bulkLoad(new Iterator<Pair<String, TermAbstractDetail>>()
+            {
+                @Override
+                public boolean hasNext()
+                {
+                    return sortedPostings.hasNext();
+                }
+
+                @Override
+                public Pair<String, TermAbstractDetail> next()
+                {
+                    Pair<String, PostingsList> termPostings = sortedPostings.next();
+                    PostingsList postingsList = termPostings.getValue();
+                    int occurences = 0;
+                    for (int i = 0; i < postingsList.size(); i++)
+                        occurences += postingsList.getFreq(i);
+                    return new Pair<>(termPostings.getKey(), new TermAbstractDetail(occurences, postingsFile.write(postingsList),
+                            termIDs.getOrAdd(termPostings.getKey())));
+                }
+            }, fillFactor);
+        } catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * terms starting with prefix, in term order
+     */
+    public Vector<String> expandPrefix(String prefix)
+    {
+        applyPendingInserts();
+        Vector<String> terms = new Vector<>();
+        for (Pair<String, TermAbstractDetail> pair : tree.cursor().prefixScan(prefix))
+            terms.add(pair.getKey());
+        return terms;
+    }
+
+    /**
+     * terms matching pattern, where * stands for any number of characters and ? for one character;
+     * only the terms sharing the part of pattern before its first wildcard are visited
+     */
+    public Vector<String> expandWildcard(String pattern)
+    {
+        int firstWildcard = 0;
+        while (firstWildcard < pattern.length() && pattern.charAt(firstWildcard) != '*' && pattern.charAt(firstWildcard) != '?')
+            firstWildcard++;
+        String prefix = pattern.substring(0, firstWildcard);
+        Pattern regex = wildcardToRegex(pattern);
+        Vector<String> terms = new Vector<>();
+        applyPendingInserts();
+        TreeCursor<TermAbstractDetail> cursor = tree.cursor();
+        for (boolean valid = cursor.seek(prefix); valid && cursor.getKey().startsWith(prefix); valid = cursor.next())
+            if (regex.matcher(cursor.getKey()).matches())
+                terms.add(cursor.getKey());
+        return terms;
+    }
+
+    static Pattern wildcardToRegex(String pattern)
+    {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++)
+        {
+            char c = pattern.charAt(i);
+            if (c != '*' && c != '?')
+            {
+                literal.append(c);
+                continue;
+            }
+            if (literal.length() > 0)
+                regex.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+            regex.append(c == '*' ? ".*" : ".");
+        }
+        if (literal.length() > 0)
+            regex.append(Pattern.quote(literal.toString()));
+        return Pattern.compile(regex.toString());
+    }
+
+    public boolean isEmpty()
+    {
+        applyPendingInserts();
+        return tree.getNumberOfTermsAdded() == 0;
+    }
+
+    public PostingsList getPostings(TermAbstractDetail termAbstractDetail)
+    {
+        applyPendingInserts();
+        return postingsFile.read(termAbstractDetail.getFilePtr());
+    }
+
+    public PostingsList getPostingsWithPositions(TermAbstractDetail termAbstractDetail)
+    {
+        applyPendingInserts();
+        return postingsFile.read(termAbstractDetail.getFilePtr(), true);
+    }
+
+    /**
+     * reads the postings lazily, for queries that skip most of them
+     */
+    public PostingsCursor getPostingsCursor(TermAbstractDetail termAbstractDetail)
+    {
+        applyPendingInserts();
+        return postingsFile.cursor(termAbstractDetail.getFilePtr());
+    }
+
+    @Override
+    public PostingsCursor getPostingsCursor(String term)
+    {
+        TermAbstractDetail termAbstractDetail = search(term);
+        return termAbstractDetail == null ? null : getPostingsCursor(termAbstractDetail);
+    }
+
+    /**
+     * length of every document in term occurrences, indexed by docID; one pass over all postings
+     */
+    @Override
+    public int[] getDocumentLengths()
+    {
+        applyPendingInserts();
+        int[] lengths = new int[lastDocumentID + 1];
+        TreeCursor<TermAbstractDetail> cursor = tree.cursor();
+        for (boolean valid = cursor.seekFirst(); valid; valid = cursor.next())
+        {
+            PostingsList postingsList = getPostings(cursor.getValue());
+            for (int i = 0; i < postingsList.size(); i++)
+            {
+                int docID = postingsList.getDocID(i);
+                if (docID >= lengths.length)
+                    lengths = Arrays.copyOf(lengths, Math.max(docID + 1, 2 * lengths.length));
+                lengths[docID] += postingsList.getFreq(i);
+            }
+        }
+        return lengths;
+    }
+
+    @Override
+    public int getLastDocumentID()
+    {
+        return lastDocumentID;
+    }
+
+    @Override
+    public int getNumberOfDocuments()
+    {
+        return numberOfDocuments;
+    }
+
+    /**
+     * whether the dictionary took the closed index of the last run instead of starting empty or recovering
+     */
+    public boolean isReopened()
+    {
+        return reopened;
+    }
+
+    /**
+     * redo records replayed when the dictionary recovered from a crash on open, -1 if it did not recover
+     */
+    public int getReplayedRecords()
+    {
+        return replayedRecords;
+    }
+
+    /**
+     * makes the current state durable and starts a new log: dirty nodes are written, both files are forced,
+     * and the checkpoint record keeps their sizes and the RAM part of the tree
+     */
+    public void checkpoint()
+    {
+        applyPendingInserts();
+        termIDs.sync();
+        tree.checkpoint();
+        PageStore indexStore = RandomAccessFileManager.getPageStore(indexFileID);
+        PageStore vectorStore = RandomAccessFileManager.getPageStore(vectorFileID);
+        indexStore.force();
+        vectorStore.force();
+        log.checkpoint(ByteBuffer.wrap(getState()));
+        indexStore.protect(log, INDEX_STORE);
+        vectorStore.protect(log, VECTOR_STORE);
+    }
+
+    /**
+     * writes the dirty nodes, forces the files and replaces the log by the manifest, the next run opens them as they are
+     */
+    public void close()
+    {
+        applyPendingInserts();
+        if (ownTermIDs)
+            termIDs.close();
+        else
+            termIDs.sync();
+        tree.checkpoint();
+        RandomAccessFileManager.getPageStore(indexFileID).force();
+        RandomAccessFileManager.getPageStore(vectorFileID).force();
+        File newManifest = new File(manifest.getPath() + ".tmp");
+        try
+        {
+            try (FileOutputStream file = new FileOutputStream(newManifest);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file)))
+            {
+                out.writeInt(MANIFEST_MAGIC);
+                out.writeInt(MANIFEST_VERSION);
+                out.write(getState());
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(newManifest.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e)
+        {
+            // keep the log, the next run recovers from it instead
+            e.printStackTrace();
+            log.sync();
+            return;
+        }
+        log.delete();
+    }
+
+    /**
+     * state kept by checkpoints and the manifest: file sizes, last document, number of documents and the tree
+     */
+    private byte[] getState()
+    {
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(state))
+        {
+            out.writeLong(RandomAccessFileManager.getPageStore(indexFileID).size());
+            out.writeLong(RandomAccessFileManager.getPageStore(vectorFileID).size());
+            out.writeInt(lastDocumentID);
+            out.writeInt(numberOfDocuments);
+            tree.writeState(out);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        return state.toByteArray();
+    }
+
+    /**
+     * goes back to a state written by getState, the files must hold at least what they held then
+     */
+    private void setState(DataInputStream in) throws IOException
+    {
+        RandomAccessFileManager.getPageStore(indexFileID).truncate(in.readLong());
+        RandomAccessFileManager.getPageStore(vectorFileID).truncate(in.readLong());
+        lastDocumentID = in.readInt();
+        numberOfDocuments = in.readInt();
+        tree.readState(in);
+    }
+
+    private boolean readManifest()
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest))))
+        {
+            if (in.readInt() != MANIFEST_MAGIC || in.readInt() != MANIFEST_VERSION)
+                throw new IOException("unknown manifest " + manifest);
+            setState(in);
+            return true;
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+            RandomAccessFileManager.getPageStore(indexFileID).truncate(0);
+            RandomAccessFileManager.getPageStore(vectorFileID).truncate(0);
+            tree = createTree();
+            lastDocumentID = -1;
+            numberOfDocuments = 0;
+            return false;
+        }
+    }
+
+    /**
+     * brings the files back to the last checkpoint and replays the redo records logged after it
+     */
+    private void recover()
+    {
+        PageStore[] stores = {RandomAccessFileManager.getPageStore(indexFileID), RandomAccessFileManager.getPageStore(vectorFileID)};
+        try
+        {
+            Vector<WriteAheadLog.Record> records = log.recover();
+            if (records.isEmpty() || records.firstElement().getType() != WriteAheadLog.CHECKPOINT)
+                throw new IOException("log of index file " + indexFileID + " does not start with a checkpoint");
+            stores[INDEX_STORE].protect(log, INDEX_STORE);
+            stores[VECTOR_STORE].protect(log, VECTOR_STORE);
+            for (WriteAheadLog.Record record : records)
+                if (record.getType() == WriteAheadLog.PAGE_IMAGE)
+                {
+                    ByteBuffer image = record.getPayload();
+                    stores[PageStore.storeNumberOf(image)].restoreImage(image);
+                }
+            ByteBuffer checkpoint = records.firstElement().getPayload();
+            byte[] state = new byte[checkpoint.remaining()];
+            checkpoint.get(state);
+            setState(new DataInputStream(new ByteArrayInputStream(state)));
+
+            logging = false;
+            replayedRecords = 0;
+            for (WriteAheadLog.Record record : records)
+                if (replay(record.getType(), record.getPayload()))
+                    replayedRecords++;
+        } catch (IOException e)
+        {
+            // nothing trustworthy is left, start empty
+            e.printStackTrace();
+            stores[INDEX_STORE].truncate(0);
+            stores[VECTOR_STORE].truncate(0);
+            tree = createTree();
+            lastDocumentID = -1;
+            numberOfDocuments = 0;
+            pendingTerms.clear();
+            replayedRecords = 0;
+        } finally
+        {
+            logging = true;
+        }
+    }
+
+    private boolean replay(byte type, ByteBuffer record)
+    {
+        switch (type)
+        {
+            case INSERT:
+            {
+                String term = getTerm(record);
+                applyInsert(term, VByteUtils.read(record));
+                return true;
+            }
+            case ADD_POSTINGS:
+            {
+                String term = getTerm(record);
+                int size = VByteUtils.read(record);
+                int[] docIDs = new int[size], freqs = new int[size];
+                int docID = 0;
+                for (int i = 0; i < size; i++)
+                {
+                    docID += VByteUtils.read(record);
+                    docIDs[i] = docID;
+                    freqs[i] = VByteUtils.read(record);
+                }
+                applyAddPostings(term, docIDs, freqs, size);
+                return true;
+            }
+            case ADD_DOCUMENT:
+            {
+                int docID = VByteUtils.read(record);
+                int size = VByteUtils.read(record);
+                HashMap<String, Integer> termFreqs = new HashMap<>();
+                for (int i = 0; i < size; i++)
+                {
+                    String term = getTerm(record);
+                    termFreqs.put(term, VByteUtils.read(record));
+                }
+                applyAddDocument(termFreqs, docID);
+                return true;
+            }
+            case ADD_POSITIONAL_DOCUMENT:
+            {
+                int docID = VByteUtils.read(record);
+                int size = VByteUtils.read(record);
+                HashMap<String, int[]> termPositions = new HashMap<>();
+                for (int i = 0; i < size; i++)
+                {
+                    String term = getTerm(record);
+                    int[] positions = new int[VByteUtils.read(record)];
+                    for (int j = 0, position = 0; j < positions.length; j++)
+                        positions[j] = position += VByteUtils.read(record);
+                    termPositions.put(term, positions);
+                }
+                applyAddPositionalDocument(termPositions, docID);
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * group commits the record just logged, and checkpoints once the log is long
+     */
+    private void afterChange()
+    {
+        if (!logging)
+            return;
+        log.commit();
+        if (log.size() > CHECKPOINT_LOG_SIZE)
+            checkpoint();
+    }
+
+    /**
+     * a term is logged as its UTF-8 length and bytes; a char takes at most 3 bytes
+     */
+    private static void putTerm(ByteBuffer record, String term)
+    {
+        byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+        VByteUtils.write(record, termBytes.length);
+        record.put(termBytes);
+    }
+
+    private static String getTerm(ByteBuffer record)
+    {
+        byte[] termBytes = new byte[VByteUtils.read(record)];
+        record.get(termBytes);
+        return new String(termBytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer getRecordBuffer(int maxLength)
+    {
+        if (recordBuffer == null || recordBuffer.capacity() < maxLength)
+            recordBuffer = ByteBuffer.allocate(Math.max(maxLength, 4096));
+        recordBuffer.clear();
+        return recordBuffer;
     }
 
     public void initializeForSequentialRead()
     {
+        applyPendingInserts();
         tree.initializeForSequentialRead();
         lastNodeRead = tree.getNextNode();
         lastOffsetRead = 0;
@@ -78,7 +810,9 @@ public class Dictionary
 
     public TermPosting getNextTermPosting()
     {
-        if (lastOffsetRead >= lastNodeRead.size())
+        if (lastNodeRead == null)
+            initializeForSequentialRead();
+        while (lastOffsetRead >= lastNodeRead.size()) // nodes may be empty
         {
             lastNodeRead = tree.getNextNode();
             if (lastNodeRead == null)
@@ -87,9 +821,12 @@ public class Dictionary
         }
 
         Pair<String, TermAbstractDetail> currentPair = lastNodeRead.elementAt(lastOffsetRead);
-        Vector<TermDocDetail> allElements = fileVector.getAllElements(currentPair.getValue().getFilePtr());
-        TermPosting termPosting = new TermPosting(currentPair.getKey(), allElements,
-                Math.log(tree.getNumberOfTermsAdded() / allElements.size()));
+        PostingsList postingsList = postingsFile.read(currentPair.getValue().getFilePtr());
+        Vector<TermDocDetail> allElements = new Vector<>(postingsList.size());
+        for (int i = 0; i < postingsList.size(); i++)
+            allElements.add(new TermDocDetail(postingsList.getDocID(i), postingsList.getFreq(i)));
+        TermPosting termPosting = new TermPosting(currentPair.getKey(), currentPair.getValue().getTermID(), allElements,
+                Math.log((double) numberOfDocuments / allElements.size()));
 
         lastOffsetRead++;
         return termPosting;
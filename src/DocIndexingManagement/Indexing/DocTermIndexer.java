@@ -1,8 +1,387 @@
 package DocIndexingManagement.Indexing;
 
+import Primitives.DocVector;
+import QueryManagement.SearchResult;
+import Utilities.VByteUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
 /**
- * Created by danial on 5/28/16.
+ * Forward index: the term vector of every document, written while the documents are indexed, so clustering
+ * and similar document lookups read documents one after another instead of inverting the dictionary.
+ * <p>
+ * File format, name.fwd, per document in docID order: int record length, then variable byte coded:
+ * docID, term count, term ID gaps (increasing IDs), term frequencies.
+ * <p>
+ * Term IDs are those of the dictionary's TermIDs. Frequencies are stored rather than weights, so the vectors stay
+ * valid as documents are added; weights are tf-idf from the document frequencies the index counts itself.
+ * <p>
+ * The file is only appended to, and the term IDs are written before it. On open a record cut short by a crash,
+ * or one whose terms did not reach the disk, is cut off with everything after it.
  */
 public class DocTermIndexer
 {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File dataFile;
+    private final FileChannel data;
+    private final ByteBuffer dataBuffer; // appended, not yet written
+    private long dataEnd; // length of the file with the buffered bytes
+    private final TermIDs termIDs;
+    private int[] documentFrequencies; // by term ID
+    private long[] offsets; // record offset by docID, -1 for none
+    private int numberOfDocuments, lastDocumentID;
+
+    public DocTermIndexer(String name, TermIDs termIDs)
+    {
+        dataFile = new File(name + ".fwd");
+        this.termIDs = termIDs;
+        documentFrequencies = new int[Math.max(termIDs.size(), 1024)];
+        offsets = new long[1024];
+        Arrays.fill(offsets, -1);
+        lastDocumentID = -1;
+        dataBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        FileChannel dataChannel = null;
+        try
+        {
+            dataChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            dataEnd = loadDocuments(dataChannel);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        data = dataChannel;
+    }
+
+    /**
+     * adds the term vector of a document; documents must come in increasing docID order,
+     * a document at or before the last one is already in the index and is skipped
+     */
+    public synchronized void addDocument(Map<String, Integer> termFreqs, int docID)
+    {
+        if (docID <= lastDocumentID)
+            return;
+        // term ID in the high half, so sorting orders by it
+        long[] postings = new long[termFreqs.size()];
+        int size = 0;
+        for (Map.Entry<String, Integer> entry : termFreqs.entrySet())
+            postings[size++] = (long) termIDs.getOrAdd(entry.getKey()) << 32 | entry.getValue();
+        if (termIDs.size() > documentFrequencies.length)
+            documentFrequencies = Arrays.copyOf(documentFrequencies, Math.max(termIDs.size(), 2 * documentFrequencies.length));
+        Arrays.sort(postings);
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + (2 + 2 * size) * VByteUtils.MAX_BYTES);
+        record.putInt(0);
+        VByteUtils.write(record, docID);
+        VByteUtils.write(record, size);
+        int lastTermID = 0;
+        for (long posting : postings)
+        {
+            int termID = (int) (posting >>> 32);
+            VByteUtils.write(record, termID - lastTermID);
+            lastTermID = termID;
+            documentFrequencies[termID]++;
+        }
+        for (long posting : postings)
+            VByteUtils.write(record, (int) posting);
+        record.putInt(0, record.position() - Integer.BYTES);
+        record.flip();
+        if (docID >= offsets.length)
+        {
+            int oldLength = offsets.length;
+            offsets = Arrays.copyOf(offsets, Math.max(docID + 1, 2 * oldLength));
+            Arrays.fill(offsets, oldLength, offsets.length, -1);
+        }
+        offsets[docID] = dataEnd;
+        dataEnd += record.remaining();
+        append(record);
+        numberOfDocuments++;
+        lastDocumentID = docID;
+    }
+
+    /**
+     * the weighted vector of docID, null if the index does not have the document
+     */
+    public synchronized DocVector getDocVector(int docID)
+    {
+        if (docID < 0 || docID >= offsets.length || offsets[docID] == -1)
+            return null;
+        try
+        {
+            flushBuffers();
+            ByteBuffer length = read(offsets[docID], Integer.BYTES);
+            DocVector docVector = decode(read(offsets[docID] + Integer.BYTES, length.getInt()));
+            weigh(docVector);
+            return docVector;
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * all documents in docID order, read sequentially and weighted by the statistics at the time of the call
+     */
+    public synchronized DocVectorIterator iterator() throws IOException
+    {
+        flushBuffers();
+        return new DocVectorIterator(dataEnd, Arrays.copyOf(documentFrequencies, documentFrequencies.length), numberOfDocuments);
+    }
+
+    /**
+     * the k documents closest to docID by cosine of their tf-idf vectors, closest first; one pass over the forward index
+     */
+    public Vector<SearchResult> similarDocuments(int docID, int k)
+    {
+        Vector<SearchResult> results = new Vector<>();
+        DocVector target = getDocVector(docID);
+        if (target == null || k <= 0)
+            return results;
+        // worst result on top, so it is the one to replace
+        PriorityQueue<SearchResult> heap = new PriorityQueue<>(k, Collections.reverseOrder());
+        try (DocVectorIterator iterator = iterator())
+        {
+            while (iterator.hasNext())
+            {
+                DocVector docVector = iterator.next();
+                if (docVector.getDocID() == docID)
+                    continue;
+                SearchResult result = new SearchResult(docVector.getDocID(), target.cosine(docVector));
+                if (heap.size() < k)
+                    heap.add(result);
+                else if (result.compareTo(heap.peek()) < 0)
+                {
+                    heap.poll();
+                    heap.add(result);
+                }
+            }
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        results.addAll(heap);
+        Collections.sort(results);
+        return results;
+    }
+
+    public TermIDs getTermIDs()
+    {
+        return termIDs;
+    }
+
+    /**
+     * number of distinct terms, the length of a dense vector over the term IDs
+     */
+    public int getTermCount()
+    {
+        return termIDs.size();
+    }
+
+    public synchronized int getNumberOfDocuments()
+    {
+        return numberOfDocuments;
+    }
+
+    public synchronized int getLastDocumentID()
+    {
+        return lastDocumentID;
+    }
+
+    /**
+     * forces the term IDs and then the buffered documents to disk
+     */
+    public synchronized void sync()
+    {
+        try
+        {
+            termIDs.sync();
+            flushBuffers();
+            data.force(false);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void close()
+    {
+        sync();
+        try
+        {
+            data.close();
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private void append(ByteBuffer record)
+    {
+        try
+        {
+            if (record.remaining() > dataBuffer.remaining())
+                flushBuffers();
+            if (record.remaining() > dataBuffer.remaining())
+            {
+                termIDs.flush();
+                write(data, record);
+            } else
+                dataBuffer.put(record);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * writes the buffered term IDs before the buffered documents, a document never reaches the file before its terms
+     */
+    private void flushBuffers() throws IOException
+    {
+        termIDs.flush();
+        dataBuffer.flip();
+        write(data, dataBuffer);
+        dataBuffer.clear();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        long position = channel.size();
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+            if (data.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("forward index " + dataFile + " is cut short");
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * reads all documents for the offsets and document frequencies, returns the length of the file after
+     * cutting off the documents that did not fully reach the disk
+     */
+    private long loadDocuments(FileChannel channel) throws IOException
+    {
+        long end = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile), BUFFER_SIZE)))
+        {
+            byte[] record = new byte[256];
+            while (end < channel.size())
+            {
+                int length = in.readInt();
+                if (length > record.length)
+                    record = new byte[Math.max(length, 2 * record.length)];
+                in.readFully(record, 0, length);
+                DocVector docVector = decode(ByteBuffer.wrap(record, 0, length));
+                if (docVector.size() > 0 && docVector.getTermID(docVector.size() - 1) >= termIDs.size())
+                    break;
+                for (int i = 0; i < docVector.size(); i++)
+                    documentFrequencies[docVector.getTermID(i)]++;
+                int docID = docVector.getDocID();
+                if (docID >= offsets.length)
+                {
+                    int oldLength = offsets.length;
+                    offsets = Arrays.copyOf(offsets, Math.max(docID + 1, 2 * oldLength));
+                    Arrays.fill(offsets, oldLength, offsets.length, -1);
+                }
+                offsets[docID] = end;
+                numberOfDocuments++;
+                lastDocumentID = docID;
+                end += Integer.BYTES + length;
+            }
+        } catch (EOFException e)
+        {
+            // the last record is cut short
+        }
+        if (end < channel.size())
+            channel.truncate(end);
+        return end;
+    }
+
+    private static DocVector decode(ByteBuffer record)
+    {
+        int docID = VByteUtils.read(record);
+        int[] termIDs = new int[VByteUtils.read(record)];
+        int[] freqs = new int[termIDs.length];
+        for (int i = 0, termID = 0; i < termIDs.length; i++)
+            termIDs[i] = termID += VByteUtils.read(record);
+        for (int i = 0; i < freqs.length; i++)
+            freqs[i] = VByteUtils.read(record);
+        return new DocVector(docID, termIDs, freqs);
+    }
+
+    private void weigh(DocVector docVector)
+    {
+        weigh(docVector, documentFrequencies, numberOfDocuments);
+    }
+
+    private static void weigh(DocVector docVector, int[] documentFrequencies, int numberOfDocuments)
+    {
+        for (int i = 0; i < docVector.size(); i++)
+            docVector.setWeight(i, (1 + Math.log(docVector.getFreq(i)))
+                    * Math.log((double) numberOfDocuments / documentFrequencies[docVector.getTermID(i)]));
+    }
+
+    /**
+     * reads the forward index from start to end through its own stream, documents added meanwhile are not seen
+     */
+    public class DocVectorIterator implements Iterator<DocVector>, Closeable
+    {
+        private final DataInputStream in;
+        private final int[] documentFrequencies;
+        private final int numberOfDocuments;
+        private long remaining;
+        private byte[] record;
+
+        DocVectorIterator(long end, int[] documentFrequencies, int numberOfDocuments) throws IOException
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile), BUFFER_SIZE));
+            this.documentFrequencies = documentFrequencies;
+            this.numberOfDocuments = numberOfDocuments;
+            remaining = end;
+            record = new byte[256];
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return remaining > 0;
+        }
+
+        @Override
+        public DocVector next()
+        {
+            if (remaining == 0)
+                throw new NoSuchElementException();
+            try
+            {
+                int length = in.readInt();
+                if (length > record.length)
+                    record = new byte[Math.max(length, 2 * record.length)];
+                in.readFully(record, 0, length);
+                remaining -= Integer.BYTES + length;
+                DocVector docVector = decode(ByteBuffer.wrap(record, 0, length));
+                weigh(docVector, documentFrequencies, numberOfDocuments);
+                return docVector;
+            } catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
 }
@@ -0,0 +1,24 @@
+package DocIndexingManagement.Indexing;
+
+import DataStructures.Postings.PostingsCursor;
+
+/**
+ * What queries read from an index: the postings of a term and the statistics of its documents.
+ * A QueryEngine works over any of them, whichever one the documents are indexed into.
+ */
+public interface InvertedIndex
+{
+    /**
+     * the postings of term in docID order, null if no document has it
+     */
+    PostingsCursor getPostingsCursor(String term);
+
+    int getNumberOfDocuments();
+
+    int getLastDocumentID();
+
+    /**
+     * length of every document in term occurrences, indexed by docID
+     */
+    int[] getDocumentLengths();
+}
@@ -0,0 +1,344 @@
+package DocIndexingManagement.Indexing;
+
+import DataStructures.Postings.PostingsList;
+import Utilities.VByteUtils;
+import javafx.util.Pair;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable part of a SegmentedIndex: the terms of a range of documents and their postings, written once
+ * from start to end and only read afterwards.
+ * <p>
+ * File format:
+ * <pre>
+ * int magic, int level, int number of documents, int last docID
+ * postings, per term in term order: (docID gap, freq) per posting, variable byte coded
+ * terms, in term order: term length, term bytes (UTF-8), posting count, postings length in bytes; variable byte coded
+ * term index, every INDEX_INTERVAL-th term: term length, term bytes, long offset in the terms, long postings offset
+ * long terms offset, long term index offset, int term index entries, int term count
+ * </pre>
+ * The term index is kept in RAM, so a lookup reads one block of terms and the postings of the term.
+ * <p>
+ * Readers hold a reference while they use the segment; the file is deleted when the last one lets
+ * a segment go that the index already dropped.
+ */
+public class Segment
+{
+    public static final int INDEX_INTERVAL = 64;
+    private static final int MAGIC = 0x5345474d;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+    private static final int TRAILER_SIZE = 2 * Long.BYTES + 2 * Integer.BYTES;
+
+    private final File file;
+    private final FileChannel channel;
+    private final int level, numberOfDocuments, lastDocumentID, termCount;
+    private final long termsOffset, termIndexOffset;
+    private final String[] indexTerms;
+    private final long[] indexTermsOffsets, indexPostingsOffsets;
+    private final AtomicInteger references;
+    private volatile boolean dropped;
+
+    public Segment(File file) throws IOException
+    {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        ByteBuffer header = read(0, HEADER_SIZE);
+        if (header.getInt() != MAGIC)
+            throw new IOException("not a segment: " + file);
+        level = header.getInt();
+        numberOfDocuments = header.getInt();
+        lastDocumentID = header.getInt();
+        ByteBuffer trailer = read(channel.size() - TRAILER_SIZE, TRAILER_SIZE);
+        termsOffset = trailer.getLong();
+        termIndexOffset = trailer.getLong();
+        int entries = trailer.getInt();
+        termCount = trailer.getInt();
+        ByteBuffer termIndex = read(termIndexOffset, (int) (channel.size() - TRAILER_SIZE - termIndexOffset));
+        indexTerms = new String[entries];
+        indexTermsOffsets = new long[entries];
+        indexPostingsOffsets = new long[entries];
+        for (int i = 0; i < entries; i++)
+        {
+            indexTerms[i] = readTerm(termIndex);
+            indexTermsOffsets[i] = termsOffset + termIndex.getLong();
+            indexPostingsOffsets[i] = termIndex.getLong();
+        }
+        references = new AtomicInteger(1); // the reference of the index
+    }
+
+    /**
+     * writes the postings of sortedPostings, terms in increasing order, as a segment file forced to disk;
+     * level counts the merges behind the segment, 0 for a segment written from RAM
+     */
+    public static Segment write(File file, Iterator<Pair<String, PostingsList>> sortedPostings, int level,
+                                int numberOfDocuments, int lastDocumentID) throws IOException
+    {
+        ByteArrayOutputStream terms = new ByteArrayOutputStream();
+        DataOutputStream termsOut = new DataOutputStream(terms);
+        ByteArrayOutputStream termIndex = new ByteArrayOutputStream();
+        DataOutputStream termIndexOut = new DataOutputStream(termIndex);
+        ByteArrayOutputStream postings = new ByteArrayOutputStream();
+        int termCount = 0, entries = 0;
+        long postingsOffset = HEADER_SIZE;
+        try (FileOutputStream fileOut = new FileOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16)))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(level);
+            out.writeInt(numberOfDocuments);
+            out.writeInt(lastDocumentID);
+            while (sortedPostings.hasNext())
+            {
+                Pair<String, PostingsList> termPostings = sortedPostings.next();
+                PostingsList postingsList = termPostings.getValue();
+                byte[] term = termPostings.getKey().getBytes(StandardCharsets.UTF_8);
+                if (termCount % INDEX_INTERVAL == 0)
+                {
+                    VByteUtils.write(termIndexOut, term.length);
+                    termIndexOut.write(term);
+                    termIndexOut.writeLong(terms.size());
+                    termIndexOut.writeLong(postingsOffset);
+                    entries++;
+                }
+                postings.reset();
+                int lastDocID = 0;
+                for (int i = 0; i < postingsList.size(); i++)
+                {
+                    VByteUtils.write(postings, postingsList.getDocID(i) - lastDocID);
+                    VByteUtils.write(postings, postingsList.getFreq(i));
+                    lastDocID = postingsList.getDocID(i);
+                }
+                postings.writeTo(out);
+                postingsOffset += postings.size();
+                VByteUtils.write(termsOut, term.length);
+                termsOut.write(term);
+                VByteUtils.write(termsOut, postingsList.size());
+                VByteUtils.write(termsOut, postings.size());
+                termCount++;
+            }
+            terms.writeTo(out);
+            termIndex.writeTo(out);
+            out.writeLong(postingsOffset);
+            out.writeLong(postingsOffset + terms.size());
+            out.writeInt(entries);
+            out.writeInt(termCount);
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        return new Segment(file);
+    }
+
+    /**
+     * postings of term in this segment, or null if no document of the segment has it
+     */
+    public PostingsList getPostings(String term) throws IOException
+    {
+        int entry = floorEntry(term);
+        if (entry < 0)
+            return null;
+        long blockEnd = entry + 1 < indexTerms.length ? indexTermsOffsets[entry + 1] : termIndexOffset;
+        ByteBuffer block = read(indexTermsOffsets[entry], (int) (blockEnd - indexTermsOffsets[entry]));
+        long postingsOffset = indexPostingsOffsets[entry];
+        while (block.hasRemaining())
+        {
+            int compareResult = readTerm(block).compareTo(term);
+            int size = VByteUtils.read(block);
+            int length = VByteUtils.read(block);
+            if (compareResult > 0)
+                return null;
+            if (compareResult == 0)
+                return decodePostings(read(postingsOffset, length), size, new PostingsList(size));
+            postingsOffset += length;
+        }
+        return null;
+    }
+
+    /**
+     * all terms with their postings in term order, read sequentially; the returned list is reused by the next call
+     */
+    public TermIterator iterator() throws IOException
+    {
+        return new TermIterator();
+    }
+
+    public int getLevel()
+    {
+        return level;
+    }
+
+    public int getNumberOfDocuments()
+    {
+        return numberOfDocuments;
+    }
+
+    public int getLastDocumentID()
+    {
+        return lastDocumentID;
+    }
+
+    public int getTermCount()
+    {
+        return termCount;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public long length()
+    {
+        return file.length();
+    }
+
+    /**
+     * takes a reference for a reader, false if the segment is already closed
+     */
+    public boolean retain()
+    {
+        for (int count = references.get(); count > 0; count = references.get())
+            if (references.compareAndSet(count, count + 1))
+                return true;
+        return false;
+    }
+
+    /**
+     * gives a reference back; the last one closes the segment, and deletes its file if the index dropped it
+     */
+    public void release()
+    {
+        if (references.decrementAndGet() > 0)
+            return;
+        try
+        {
+            channel.close();
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        if (dropped)
+            file.delete();
+    }
+
+    /**
+     * called by the index when the segment is merged into another, gives back the reference of the index
+     */
+    void drop()
+    {
+        dropped = true;
+        release();
+    }
+
+    private int floorEntry(String term)
+    {
+        int from = 0, to = indexTerms.length - 1, found = -1;
+        while (from <= to)
+        {
+            int mid = (from + to) >>> 1;
+            if (indexTerms[mid].compareTo(term) <= 0)
+            {
+                found = mid;
+                from = mid + 1;
+            } else
+                to = mid - 1;
+        }
+        return found;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("segment " + file + " is cut short");
+        buffer.flip();
+        return buffer;
+    }
+
+    private static String readTerm(ByteBuffer buffer)
+    {
+        byte[] term = new byte[VByteUtils.read(buffer)];
+        buffer.get(term);
+        return new String(term, StandardCharsets.UTF_8);
+    }
+
+    private static PostingsList decodePostings(ByteBuffer postings, int size, PostingsList postingsList)
+    {
+        int docID = 0;
+        for (int i = 0; i < size; i++)
+        {
+            docID += VByteUtils.read(postings);
+            postingsList.append(docID, VByteUtils.read(postings));
+        }
+        return postingsList;
+    }
+
+    public class TermIterator implements Iterator<Pair<String, PostingsList>>, Closeable
+    {
+        private final DataInputStream terms, postings;
+        private final PostingsList postingsList;
+        private int remainingTerms;
+        private byte[] postingsBytes;
+
+        TermIterator() throws IOException
+        {
+            terms = openAt(termsOffset);
+            postings = openAt(HEADER_SIZE);
+            postingsList = new PostingsList();
+            postingsBytes = new byte[64];
+            remainingTerms = termCount;
+        }
+
+        private DataInputStream openAt(long position) throws IOException
+        {
+            FileInputStream in = new FileInputStream(file);
+            in.getChannel().position(position);
+            return new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return remainingTerms > 0;
+        }
+
+        @Override
+        public Pair<String, PostingsList> next()
+        {
+            if (remainingTerms == 0)
+                throw new NoSuchElementException();
+            remainingTerms--;
+            try
+            {
+                byte[] term = new byte[VByteUtils.read(terms)];
+                terms.readFully(term);
+                int size = VByteUtils.read(terms);
+                int length = VByteUtils.read(terms);
+                if (postingsBytes.length < length)
+                    postingsBytes = new byte[Math.max(length, 2 * postingsBytes.length)];
+                postings.readFully(postingsBytes, 0, length);
+                postingsList.clear();
+                decodePostings(ByteBuffer.wrap(postingsBytes, 0, length), size, postingsList);
+                return new Pair<>(new String(term, StandardCharsets.UTF_8), postingsList);
+            } catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            terms.close();
+            postings.close();
+        }
+    }
+}
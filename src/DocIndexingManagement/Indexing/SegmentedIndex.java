@@ -0,0 +1,563 @@
+package DocIndexingManagement.Indexing;
+
+import DataStructures.Postings.PostingsCursor;
+import DataStructures.Postings.PostingsList;
+import Primitives.TermDocDetail;
+import Primitives.TermPosting;
+import javafx.util.Pair;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log structured index made of immutable segments. Documents are buffered in RAM and written as a new segment
+ * when the buffer is full; a background thread merges MERGE_FACTOR neighbouring segments of one level into
+ * a segment of the next level, so there are a logarithmic number of segments and every posting is rewritten
+ * a logarithmic number of times. Files are only written from start to end, never changed in place.
+ * <p>
+ * Segments hold increasing ranges of documents in list order, so the postings of a term are the postings
+ * of its segments one after another. Readers take a snapshot of the list and are not blocked by indexing
+ * or merging; documents become visible to them when their segment is written.
+ * <p>
+ * The manifest lists the segment files; it is replaced atomically after every flush and merge, once the new
+ * segment is on disk. After a crash the index reopens with the segments of the last manifest, documents
+ * in RAM are lost and indexing resumes after getLastDocumentID.
+ * <p>
+ * As an InvertedIndex it answers queries from the written segments only; segments keep no positions,
+ * so phrases match nothing.
+ */
+public class SegmentedIndex implements InvertedIndex
+{
+    public static final long DEFAULT_MEMORY_BUDGET = 64 * 1024 * 1024;
+    public static final int MERGE_FACTOR = 4;
+    private static final int TERM_OVERHEAD = 96; // map entry, string and postings buffer headers
+    private static final int MANIFEST_MAGIC = 0x5345474c;
+    private static final int MANIFEST_VERSION = 1;
+
+    private final String name;
+    private final long memoryBudget;
+    private final File manifest;
+    private final Object segmentsLock; // orders changes of the segment list and manifest writes
+    private volatile Segment[] segments; // replaced on every change, never changed itself
+    private final ExecutorService merger;
+    private HashMap<String, PostingsList> buffer;
+    private long memoryUsed;
+    private int documentsInBuffer;
+    private int lastDocumentID; // last document added
+    private int nextSegmentNumber;
+    private Segment[] sequentialReadSegments;
+    private Iterator<Pair<String, PostingsList>> sequentialRead;
+
+    public SegmentedIndex(String name, long memoryBudget)
+    {
+        this.name = name;
+        this.memoryBudget = memoryBudget;
+        manifest = new File(name + ".segments");
+        segmentsLock = new Object();
+        segments = new Segment[0];
+        buffer = new HashMap<>();
+        lastDocumentID = -1;
+        if (manifest.exists())
+            readManifest();
+        deleteUnlistedSegments();
+        merger = Executors.newSingleThreadExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "segment merger " + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleMerge();
+    }
+
+    public SegmentedIndex(String name)
+    {
+        this(name, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * adds a document with its counted terms; documents must come in increasing docID order from one thread
+     */
+    public synchronized void addDocument(Map<String, Integer> termFreqs, int docID)
+    {
+        for (Map.Entry<String, Integer> entry : termFreqs.entrySet())
+        {
+            PostingsList postingsList = buffer.get(entry.getKey());
+            if (postingsList == null)
+            {
+                postingsList = new PostingsList();
+                buffer.put(entry.getKey(), postingsList);
+                memoryUsed += TERM_OVERHEAD + 2L * entry.getKey().length() + postingsList.capacityInBytes();
+            }
+            long oldCapacity = postingsList.capacityInBytes();
+            postingsList.append(docID, entry.getValue());
+            memoryUsed += postingsList.capacityInBytes() - oldCapacity;
+        }
+        lastDocumentID = docID;
+        documentsInBuffer++;
+        if (memoryUsed > memoryBudget)
+            flush();
+    }
+
+    /**
+     * writes the documents held in RAM as a new segment and makes them visible to readers
+     */
+    public synchronized void flush()
+    {
+        if (documentsInBuffer == 0)
+            return;
+        final String[] terms = buffer.keySet().toArray(new String[buffer.size()]);
+        Arrays.sort(terms);
+        Iterator<Pair<String, PostingsList>> sortedPostings = new Iterator<Pair<String, PostingsList>>()
+        {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return next < terms.length;
+            }
+
+            @Override
+            public Pair<String, PostingsList> next()
+            {
+                String term = terms[next++];
+                return new Pair<>(term, buffer.get(term));
+            }
+        };
+        try
+        {
+            Segment segment = Segment.write(newSegmentFile(), sortedPostings, 0, documentsInBuffer, lastDocumentID);
+            synchronized (segmentsLock)
+            {
+                Segment[] newSegments = Arrays.copyOf(segments, segments.length + 1);
+                newSegments[segments.length] = segment;
+                segments = newSegments;
+                writeManifest();
+            }
+        } catch (IOException e)
+        {
+            // the documents stay in RAM and go with the next flush
+            e.printStackTrace();
+            return;
+        }
+        buffer = new HashMap<>();
+        memoryUsed = 0;
+        documentsInBuffer = 0;
+        scheduleMerge();
+    }
+
+    /**
+     * the current segments, each retained for the caller, who gives them back with release
+     */
+    public Segment[] acquire()
+    {
+        while (true)
+        {
+            Segment[] snapshot = segments;
+            int retained = 0;
+            while (retained < snapshot.length && snapshot[retained].retain())
+                retained++;
+            if (retained == snapshot.length)
+                return snapshot;
+            // a merge closed one of them meanwhile, the list has changed since
+            for (int i = 0; i < retained; i++)
+                snapshot[i].release();
+        }
+    }
+
+    public static void release(Segment[] snapshot)
+    {
+        for (Segment segment : snapshot)
+            segment.release();
+    }
+
+    /**
+     * postings of term over all segments, or null if no written document has it
+     */
+    public PostingsList getPostings(String term)
+    {
+        Segment[] snapshot = acquire();
+        PostingsList postingsList = null;
+        try
+        {
+            for (Segment segment : snapshot)
+            {
+                PostingsList segmentPostings = segment.getPostings(term);
+                if (segmentPostings == null)
+                    continue;
+                if (postingsList == null)
+                    postingsList = segmentPostings;
+                else
+                    postingsList.appendAll(segmentPostings);
+            }
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        } finally
+        {
+            release(snapshot);
+        }
+        return postingsList;
+    }
+
+    /**
+     * a cursor over the postings of term in the segments at the time of the call
+     */
+    @Override
+    public PostingsCursor getPostingsCursor(String term)
+    {
+        PostingsList postingsList = getPostings(term);
+        return postingsList == null ? null : postingsList.cursor();
+    }
+
+    /**
+     * length of every written document in term occurrences, indexed by docID; one pass over the segments
+     */
+    @Override
+    public int[] getDocumentLengths()
+    {
+        Segment[] snapshot = acquire();
+        int[] lengths = new int[snapshot.length > 0 ? snapshot[snapshot.length - 1].getLastDocumentID() + 1 : 0];
+        try (SegmentMerger sortedPostings = new SegmentMerger(snapshot))
+        {
+            while (sortedPostings.hasNext())
+            {
+                PostingsList postingsList = sortedPostings.next().getValue();
+                for (int i = 0; i < postingsList.size(); i++)
+                    lengths[postingsList.getDocID(i)] += postingsList.getFreq(i);
+            }
+        } catch (IOException | UncheckedIOException e)
+        {
+            e.printStackTrace();
+        } finally
+        {
+            release(snapshot);
+        }
+        return lengths;
+    }
+
+    /**
+     * sequential read of all terms in term order over the segments at the time of the call
+     */
+    public void initializeForSequentialRead()
+    {
+        endSequentialRead();
+        sequentialReadSegments = acquire();
+        try
+        {
+            sequentialRead = new SegmentMerger(sequentialReadSegments);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+            endSequentialRead();
+        }
+    }
+
+    public TermPosting getNextTermPosting()
+    {
+        if (sequentialRead == null)
+            initializeForSequentialRead();
+        if (sequentialRead == null || !sequentialRead.hasNext())
+        {
+            endSequentialRead();
+            return null;
+        }
+        Pair<String, PostingsList> termPostings = sequentialRead.next();
+        PostingsList postingsList = termPostings.getValue();
+        Vector<TermDocDetail> allElements = new Vector<>(postingsList.size());
+        for (int i = 0; i < postingsList.size(); i++)
+            allElements.add(new TermDocDetail(postingsList.getDocID(i), postingsList.getFreq(i)));
+        return new TermPosting(termPostings.getKey(), allElements,
+                Math.log((double) getNumberOfDocuments(sequentialReadSegments) / allElements.size()));
+    }
+
+    private void endSequentialRead()
+    {
+        if (sequentialRead instanceof SegmentMerger)
+            ((SegmentMerger) sequentialRead).close();
+        sequentialRead = null;
+        if (sequentialReadSegments != null)
+            release(sequentialReadSegments);
+        sequentialReadSegments = null;
+    }
+
+    /**
+     * documents in the written segments
+     */
+    @Override
+    public int getNumberOfDocuments()
+    {
+        return getNumberOfDocuments(segments);
+    }
+
+    private static int getNumberOfDocuments(Segment[] snapshot)
+    {
+        int numberOfDocuments = 0;
+        for (Segment segment : snapshot)
+            numberOfDocuments += segment.getNumberOfDocuments();
+        return numberOfDocuments;
+    }
+
+    /**
+     * last document added, -1 if none; after a reopen the last document in a segment
+     */
+    @Override
+    public synchronized int getLastDocumentID()
+    {
+        return lastDocumentID;
+    }
+
+    public int getNumberOfSegments()
+    {
+        return segments.length;
+    }
+
+    /**
+     * writes the documents in RAM, waits for the merges and closes the segments
+     */
+    public void close()
+    {
+        flush();
+        endSequentialRead();
+        merger.shutdown();
+        try
+        {
+            merger.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e)
+        {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+        synchronized (segmentsLock)
+        {
+            release(segments);
+            segments = new Segment[0];
+        }
+    }
+
+    private void scheduleMerge()
+    {
+        if (!merger.isShutdown())
+            merger.execute(this::mergeSegments);
+    }
+
+    /**
+     * merges runs of MERGE_FACTOR neighbouring segments of one level until there are none.
+     * Only this thread removes segments and flushes only append, so the chosen run keeps its place in the list.
+     */
+    private void mergeSegments()
+    {
+        int first;
+        while ((first = findMergeCandidates(segments)) >= 0)
+        {
+            Segment[] candidates = Arrays.copyOfRange(segments, first, first + MERGE_FACTOR);
+            Segment merged;
+            try (SegmentMerger sortedPostings = new SegmentMerger(candidates))
+            {
+                merged = Segment.write(newSegmentFile(), sortedPostings, candidates[0].getLevel() + 1,
+                        getNumberOfDocuments(candidates), candidates[MERGE_FACTOR - 1].getLastDocumentID());
+            } catch (IOException | UncheckedIOException e)
+            {
+                e.printStackTrace();
+                return;
+            }
+            synchronized (segmentsLock)
+            {
+                Segment[] newSegments = new Segment[segments.length - MERGE_FACTOR + 1];
+                System.arraycopy(segments, 0, newSegments, 0, first);
+                newSegments[first] = merged;
+                System.arraycopy(segments, first + MERGE_FACTOR, newSegments, first + 1, segments.length - first - MERGE_FACTOR);
+                segments = newSegments;
+                writeManifest();
+            }
+            for (Segment segment : candidates)
+                segment.drop();
+        }
+    }
+
+    /**
+     * first of MERGE_FACTOR neighbouring segments of the same level, -1 if there are none
+     */
+    private static int findMergeCandidates(Segment[] snapshot)
+    {
+        int runStart = 0;
+        for (int i = 1; i <= snapshot.length; i++)
+        {
+            if (i < snapshot.length && snapshot[i].getLevel() == snapshot[runStart].getLevel())
+                continue;
+            if (i - runStart >= MERGE_FACTOR)
+                return runStart;
+            runStart = i;
+        }
+        return -1;
+    }
+
+    private File newSegmentFile()
+    {
+        synchronized (segmentsLock)
+        {
+            return new File(name + "_seg" + nextSegmentNumber++);
+        }
+    }
+
+    /**
+     * manifest: magic, version, next segment number, segment count, file name of every segment in list order
+     */
+    private void writeManifest()
+    {
+        File newManifest = new File(manifest.getPath() + ".tmp");
+        try
+        {
+            try (FileOutputStream file = new FileOutputStream(newManifest);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file)))
+            {
+                out.writeInt(MANIFEST_MAGIC);
+                out.writeInt(MANIFEST_VERSION);
+                out.writeInt(nextSegmentNumber);
+                out.writeInt(segments.length);
+                for (Segment segment : segments)
+                    out.writeUTF(segment.getFile().getPath());
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(newManifest.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private void readManifest()
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest))))
+        {
+            if (in.readInt() != MANIFEST_MAGIC || in.readInt() != MANIFEST_VERSION)
+                throw new IOException("unknown manifest " + manifest);
+            nextSegmentNumber = in.readInt();
+            Segment[] listed = new Segment[in.readInt()];
+            for (int i = 0; i < listed.length; i++)
+                listed[i] = new Segment(new File(in.readUTF()));
+            segments = listed;
+            if (listed.length > 0)
+                lastDocumentID = listed[listed.length - 1].getLastDocumentID();
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * removes segments a crash left behind: merge results not yet listed and merged segments not yet deleted
+     */
+    private void deleteUnlistedSegments()
+    {
+        File prefix = new File(name + "_seg");
+        File directory = prefix.getAbsoluteFile().getParentFile();
+        String[] files = directory.list();
+        if (files == null)
+            return;
+        HashSet<String> listed = new HashSet<>();
+        for (Segment segment : segments)
+            listed.add(segment.getFile().getAbsoluteFile().getName());
+        for (String file : files)
+            if (file.startsWith(prefix.getName()) && file.substring(prefix.getName().length()).matches("[0-9]+")
+                    && !listed.contains(file))
+                new File(directory, file).delete();
+    }
+
+    /**
+     * merged postings of segments holding increasing document ranges, one term at a time in term order;
+     * the returned list is reused by the next call
+     */
+    static class SegmentMerger implements Iterator<Pair<String, PostingsList>>, Closeable
+    {
+        private final PriorityQueue<SegmentReader> queue;
+        private final Vector<SegmentReader> readers;
+        private final PostingsList merged;
+
+        SegmentMerger(Segment[] segments) throws IOException
+        {
+            queue = new PriorityQueue<>();
+            readers = new Vector<>();
+            merged = new PostingsList();
+            for (int i = 0; i < segments.length; i++)
+            {
+                SegmentReader reader = new SegmentReader(segments[i].iterator(), i);
+                readers.add(reader);
+                if (reader.next())
+                    queue.add(reader);
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Pair<String, PostingsList> next()
+        {
+            String term = queue.peek().term;
+            merged.clear();
+            // segments hold increasing docIDs, so appending them in segment order keeps the merged list sorted
+            while (!queue.isEmpty() && queue.peek().term.equals(term))
+            {
+                SegmentReader reader = queue.poll();
+                merged.appendAll(reader.postingsList);
+                if (reader.next())
+                    queue.add(reader);
+            }
+            return new Pair<>(term, merged);
+        }
+
+        @Override
+        public void close()
+        {
+            for (SegmentReader reader : readers)
+                try
+                {
+                    reader.iterator.close();
+                } catch (IOException e)
+                {
+                    e.printStackTrace();
+                }
+        }
+    }
+
+    static class SegmentReader implements Comparable<SegmentReader>
+    {
+        private final Segment.TermIterator iterator;
+        private final int segmentNumber;
+        String term;
+        PostingsList postingsList;
+
+        SegmentReader(Segment.TermIterator iterator, int segmentNumber)
+        {
+            this.iterator = iterator;
+            this.segmentNumber = segmentNumber;
+        }
+
+        boolean next()
+        {
+            if (!iterator.hasNext())
+                return false;
+            Pair<String, PostingsList> termPostings = iterator.next();
+            term = termPostings.getKey();
+            postingsList = termPostings.getValue();
+            return true;
+        }
+
+        @Override
+        public int compareTo(SegmentReader other)
+        {
+            int compareResult = term.compareTo(other.term);
+            return compareResult != 0 ? compareResult : Integer.compare(segmentNumber, other.segmentNumber);
+        }
+    }
+}
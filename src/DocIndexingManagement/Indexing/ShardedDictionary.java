@@ -0,0 +1,446 @@
+package DocIndexingManagement.Indexing;
+
+import DataStructures.Postings.PostingsCursor;
+import DataStructures.Postings.PostingsList;
+import FileManagement.WriteAheadLog;
+import Primitives.TermAbstractDetail;
+import Primitives.TermPosting;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Terms hash partitioned over independent dictionaries, each with its own tree, postings file and log.
+ * Every shard has its own lock, so threads indexing different terms do not wait for each other.
+ * <p>
+ * close writes the totals of the whole index to a state file after closing the shards, and a later run can reopen
+ * the shards as they are. Documents reach the shards out of order, so after a crash there is no single point to
+ * resume from: shards left without the state file are not recovered, they start empty and isLeftOpen tells so.
+ * <p>
+ * All shards take their term IDs from one TermIDs, so an ID names the same term whichever shard a posting comes from.
+ * <p>
+ * As an InvertedIndex a term is read from its shard alone, with the shard's cursor over its postings file;
+ * the cursor is taken under the shard's lock and reads the file lazily, like the one of Dictionary.
+ */
+public class ShardedDictionary implements InvertedIndex
+{
+    private static final int STATE_MAGIC = 0x53484453, STATE_VERSION = 1;
+
+    private final Dictionary[] shards;
+    private final TermIDs termIDs;
+    private final ReentrantLock[] locks;
+    private final AtomicInteger numberOfDocuments, lastDocumentID;
+    private final File stateFile;
+    private final boolean reopened, leftOpen;
+    private int currentShard;
+
+    public ShardedDictionary(String name, int shardCount)
+    {
+        this(name, shardCount, false);
+    }
+
+    /**
+     * @param reopen whether to take the shards the last run closed, or to start empty
+     */
+    public ShardedDictionary(String name, int shardCount, boolean reopen)
+    {
+        stateFile = new File("index" + name + ".shards");
+        int[] state = reopen ? readState(shardCount) : null;
+        boolean logsLeft = false;
+        for (int i = 0; reopen && state == null && i < shardCount; i++)
+            logsLeft |= WriteAheadLog.exists("index" + name + "_" + i + ".wal");
+        // until close writes it again, a crash must not find the state and take the shards as closed
+        stateFile.delete();
+        reopened = state != null;
+        leftOpen = logsLeft;
+        shards = new Dictionary[shardCount];
+        termIDs = new TermIDs("index" + name + ".terms", reopened);
+        locks = new ReentrantLock[shardCount];
+        for (int i = 0; i < shardCount; i++)
+        {
+            shards[i] = new Dictionary("index" + name + "_" + i, "postingVector" + name + "_" + i, reopened, termIDs);
+            locks[i] = new ReentrantLock();
+        }
+        numberOfDocuments = new AtomicInteger(reopened ? state[0] : 0);
+        lastDocumentID = new AtomicInteger(reopened ? state[1] : -1);
+        currentShard = -1;
+    }
+
+    public int shardOf(String term)
+    {
+        return (term.hashCode() & 0x7fffffff) % shards.length;
+    }
+
+    public TermAbstractDetail search(String term)
+    {
+        int shard = shardOf(term);
+        locks[shard].lock();
+        try
+        {
+            return shards[shard].search(term);
+        } finally
+        {
+            locks[shard].unlock();
+        }
+    }
+
+    public PostingsList getPostings(String term)
+    {
+        int shard = shardOf(term);
+        locks[shard].lock();
+        try
+        {
+            TermAbstractDetail termAbstractDetail = shards[shard].search(term);
+            return termAbstractDetail == null ? null : shards[shard].getPostings(termAbstractDetail);
+        } finally
+        {
+            locks[shard].unlock();
+        }
+    }
+
+    public void insert(String term, int docID)
+    {
+        int shard = shardOf(term);
+        locks[shard].lock();
+        try
+        {
+            shards[shard].insert(term, docID);
+        } finally
+        {
+            locks[shard].unlock();
+        }
+    }
+
+    public void addPostings(String term, int[] docIDs, int[] freqs, int size)
+    {
+        int shard = shardOf(term);
+        locks[shard].lock();
+        try
+        {
+            shards[shard].addPostings(term, docIDs, freqs, size);
+        } finally
+        {
+            locks[shard].unlock();
+        }
+    }
+
+    /**
+     * adds the counted terms of one document, each shard takes its part as one document;
+     * safe to call from several threads at once
+     */
+    public void addDocument(Map<String, Integer> termFreqs, int docID)
+    {
+        Vector<HashMap<String, Integer>> parts = split(termFreqs);
+        for (int i = 0; i < shards.length; i++)
+        {
+            if (parts.elementAt(i).isEmpty())
+                continue;
+            locks[i].lock();
+            try
+            {
+                shards[i].addDocument(parts.elementAt(i), docID);
+            } finally
+            {
+                locks[i].unlock();
+            }
+        }
+        documentAdded(docID);
+    }
+
+    /**
+     * adds one document with the positions of its terms, like addDocument
+     */
+    public void addPositionalDocument(Map<String, int[]> termPositions, int docID)
+    {
+        Vector<HashMap<String, int[]>> parts = split(termPositions);
+        for (int i = 0; i < shards.length; i++)
+        {
+            if (parts.elementAt(i).isEmpty())
+                continue;
+            locks[i].lock();
+            try
+            {
+                shards[i].addPositionalDocument(parts.elementAt(i), docID);
+            } finally
+            {
+                locks[i].unlock();
+            }
+        }
+        documentAdded(docID);
+    }
+
+    /**
+     * the terms of a document by the shard they belong to
+     */
+    private <T> Vector<HashMap<String, T>> split(Map<String, T> terms)
+    {
+        Vector<HashMap<String, T>> parts = new Vector<>(shards.length);
+        for (int i = 0; i < shards.length; i++)
+            parts.add(new HashMap<String, T>());
+        for (Map.Entry<String, T> entry : terms.entrySet())
+            parts.elementAt(shardOf(entry.getKey())).put(entry.getKey(), entry.getValue());
+        return parts;
+    }
+
+    private void documentAdded(int docID)
+    {
+        numberOfDocuments.incrementAndGet();
+        lastDocumentID.accumulateAndGet(docID, Math::max);
+    }
+
+    @Override
+    public PostingsCursor getPostingsCursor(String term)
+    {
+        int shard = shardOf(term);
+        locks[shard].lock();
+        try
+        {
+            return shards[shard].getPostingsCursor(term);
+        } finally
+        {
+            locks[shard].unlock();
+        }
+    }
+
+    /**
+     * the terms of a document are spread over the shards, its length is the sum of its lengths in all of them
+     */
+    @Override
+    public int[] getDocumentLengths()
+    {
+        int[] lengths = new int[lastDocumentID.get() + 1];
+        for (int i = 0; i < shards.length; i++)
+        {
+            int[] shardLengths;
+            locks[i].lock();
+            try
+            {
+                shardLengths = shards[i].getDocumentLengths();
+            } finally
+            {
+                locks[i].unlock();
+            }
+            if (shardLengths.length > lengths.length)
+                lengths = Arrays.copyOf(lengths, shardLengths.length);
+            for (int docID = 0; docID < shardLengths.length; docID++)
+                lengths[docID] += shardLengths[docID];
+        }
+        return lengths;
+    }
+
+    /**
+     * terms starting with prefix over all shards, in term order
+     */
+    public Vector<String> expandPrefix(String prefix)
+    {
+        Vector<String> terms = new Vector<>();
+        for (int i = 0; i < shards.length; i++)
+        {
+            locks[i].lock();
+            try
+            {
+                terms.addAll(shards[i].expandPrefix(prefix));
+            } finally
+            {
+                locks[i].unlock();
+            }
+        }
+        Collections.sort(terms);
+        return terms;
+    }
+
+    public Vector<String> expandWildcard(String pattern)
+    {
+        Vector<String> terms = new Vector<>();
+        for (int i = 0; i < shards.length; i++)
+        {
+            locks[i].lock();
+            try
+            {
+                terms.addAll(shards[i].expandWildcard(pattern));
+            } finally
+            {
+                locks[i].unlock();
+            }
+        }
+        Collections.sort(terms);
+        return terms;
+    }
+
+    public void checkpoint()
+    {
+        for (int i = 0; i < shards.length; i++)
+        {
+            locks[i].lock();
+            try
+            {
+                shards[i].checkpoint();
+            } finally
+            {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * closes the shards and then writes the state file, the next run reopens them as they are
+     */
+    public void close()
+    {
+        for (int i = 0; i < shards.length; i++)
+        {
+            locks[i].lock();
+            try
+            {
+                shards[i].close();
+            } finally
+            {
+                locks[i].unlock();
+            }
+        }
+        termIDs.close();
+        writeState();
+    }
+
+    /**
+     * whether the shards are the ones the last run closed, instead of starting empty
+     */
+    public boolean isReopened()
+    {
+        return reopened;
+    }
+
+    /**
+     * whether the last run left shards it did not close, which were dropped to start empty
+     */
+    public boolean isLeftOpen()
+    {
+        return leftOpen;
+    }
+
+    /**
+     * state file: magic, version, shard count, number of documents, last document ID
+     */
+    private void writeState()
+    {
+        File newState = new File(stateFile.getPath() + ".tmp");
+        try
+        {
+            try (FileOutputStream file = new FileOutputStream(newState);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file)))
+            {
+                out.writeInt(STATE_MAGIC);
+                out.writeInt(STATE_VERSION);
+                out.writeInt(shards.length);
+                out.writeInt(numberOfDocuments.get());
+                out.writeInt(lastDocumentID.get());
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(newState.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * number of documents and last document ID of the state file, null if there is none for shardCount shards
+     */
+    private int[] readState(int shardCount)
+    {
+        if (!stateFile.exists())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile))))
+        {
+            if (in.readInt() != STATE_MAGIC || in.readInt() != STATE_VERSION)
+                throw new IOException("unknown state file " + stateFile);
+            if (in.readInt() != shardCount)
+                return null;
+            return new int[]{in.readInt(), in.readInt()};
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * sequential scan over all shards one after another; not meant to run alongside inserts
+     */
+    public void initializeForSequentialRead()
+    {
+        currentShard = 0;
+        shards[currentShard].initializeForSequentialRead();
+    }
+
+    public TermPosting getNextTermPosting()
+    {
+        if (currentShard == -1)
+            initializeForSequentialRead();
+        TermPosting termPosting;
+        while ((termPosting = shards[currentShard].getNextTermPosting()) == null)
+        {
+            if (currentShard == shards.length - 1)
+            {
+                currentShard = -1;
+                return null;
+            }
+            shards[++currentShard].initializeForSequentialRead();
+        }
+        // idf is computed per shard, make it use the totals of the whole dictionary
+        termPosting.setIdf(Math.log((double) numberOfDocuments.get() / termPosting.getData().size()));
+        return termPosting;
+    }
+
+    @Override
+    public int getNumberOfDocuments()
+    {
+        return numberOfDocuments.get();
+    }
+
+    @Override
+    public int getLastDocumentID()
+    {
+        return lastDocumentID.get();
+    }
+
+    public long getNumberOfTermsAdded()
+    {
+        long numberOfTermsAdded = 0;
+        for (Dictionary shard : shards)
+            numberOfTermsAdded += shard.tree.getNumberOfTermsAdded();
+        return numberOfTermsAdded;
+    }
+
+    /**
+     * the term IDs of all shards
+     */
+    public TermIDs getTermIDs()
+    {
+        return termIDs;
+    }
+
+    public int getShardCount()
+    {
+        return shards.length;
+    }
+
+    public Dictionary getShard(int shard)
+    {
+        return shards[shard];
+    }
+
+    public ReentrantLock getLock(int shard)
+    {
+        return locks[shard];
+    }
+}
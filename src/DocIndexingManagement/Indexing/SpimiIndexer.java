@@ -0,0 +1,389 @@
+package DocIndexingManagement.Indexing;
+
+import DataStructures.Postings.PostingsList;
+import FileManagement.WriteAheadLog;
+import Utilities.VByteUtils;
+import javafx.util.Pair;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Single pass in-memory indexer: postings of a batch of documents are kept in RAM,
+ * written as a sorted and compressed run when the memory budget is reached,
+ * and all runs are k-way merged into the dictionary at the end.
+ * <p>
+ * Run format: term count, then per term in sorted order:
+ * term length, term bytes (UTF-8), posting count, (docID gap, frequency, position count, position gaps) per posting;
+ * all variable byte coded, documents added without positions have a position count of 0.
+ * <p>
+ * Every run is forced to disk and then logged with the last document it covers, so after a crash
+ * the indexer takes its runs back and indexing goes on from the document after the last run.
+ */
+public class SpimiIndexer
+{
+    public static final long DEFAULT_MEMORY_BUDGET = 64 * 1024 * 1024;
+    public static final double BULK_LOAD_FILL_FACTOR = 0.9; // room for terms added later
+    private static final int TERM_OVERHEAD = 96; // map entry, string and postings buffer headers
+    private static final byte RUN = 16; // log record: last document in the run, its number of documents, file name
+
+    private final String runPrefix;
+    private final long memoryBudget;
+    private HashMap<String, PostingsList> postings;
+    private Vector<File> runs;
+    private Vector<Integer> runLastDocumentIDs, runDocumentCounts;
+    private int documentsInMemory; // documents added since the last run
+    private int runCount; // runs written since the log was created, names the next run
+    private long memoryUsed;
+    private final WriteAheadLog runLog;
+    private int lastDocumentID; // last document added
+    private int lastFlushedDocumentID; // last document in a run
+
+    public SpimiIndexer(String runPrefix, long memoryBudget)
+    {
+        this.runPrefix = runPrefix;
+        this.memoryBudget = memoryBudget;
+        postings = new HashMap<>();
+        runs = new Vector<>();
+        runLastDocumentIDs = new Vector<>();
+        runDocumentCounts = new Vector<>();
+        memoryUsed = 0;
+        lastDocumentID = lastFlushedDocumentID = -1;
+        String runLogName = runPrefix + ".wal";
+        boolean recover = WriteAheadLog.exists(runLogName);
+        runLog = new WriteAheadLog(runLogName);
+        if (recover)
+            recoverRuns();
+    }
+
+    public SpimiIndexer()
+    {
+        this("spimiRun", DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * documents must be added in increasing docID order
+     */
+    public void addDocument(Vector<String> words, int docID)
+    {
+        for (String word : words)
+        {
+            PostingsList buffer = postings.get(word);
+            if (buffer == null)
+            {
+                buffer = new PostingsList();
+                postings.put(word, buffer);
+                memoryUsed += TERM_OVERHEAD + 2L * word.length() + buffer.capacityInBytes();
+            }
+            long oldCapacity = buffer.capacityInBytes();
+            buffer.add(docID);
+            memoryUsed += buffer.capacityInBytes() - oldCapacity;
+        }
+        lastDocumentID = docID;
+        documentsInMemory++;
+        if (memoryUsed > memoryBudget)
+            flushRun();
+    }
+
+    /**
+     * adds a document whose term frequencies are already counted, docIDs must increase as above
+     */
+    public void addDocument(Map<String, Integer> termFreqs, int docID)
+    {
+        for (Map.Entry<String, Integer> entry : termFreqs.entrySet())
+        {
+            PostingsList buffer = postings.get(entry.getKey());
+            if (buffer == null)
+            {
+                buffer = new PostingsList();
+                postings.put(entry.getKey(), buffer);
+                memoryUsed += TERM_OVERHEAD + 2L * entry.getKey().length() + buffer.capacityInBytes();
+            }
+            long oldCapacity = buffer.capacityInBytes();
+            buffer.append(docID, entry.getValue());
+            memoryUsed += buffer.capacityInBytes() - oldCapacity;
+        }
+        lastDocumentID = docID;
+        documentsInMemory++;
+        if (memoryUsed > memoryBudget)
+            flushRun();
+    }
+
+    /**
+     * adds a document with the positions of its terms, docIDs must increase as above
+     */
+    public void addPositionalDocument(Map<String, int[]> termPositions, int docID)
+    {
+        for (Map.Entry<String, int[]> entry : termPositions.entrySet())
+        {
+            PostingsList buffer = postings.get(entry.getKey());
+            if (buffer == null)
+            {
+                buffer = new PostingsList();
+                postings.put(entry.getKey(), buffer);
+                memoryUsed += TERM_OVERHEAD + 2L * entry.getKey().length() + buffer.capacityInBytes();
+            }
+            long oldCapacity = buffer.capacityInBytes();
+            int[] positions = entry.getValue();
+            buffer.appendWithPositions(docID, positions.length, positions, 0, positions.length);
+            memoryUsed += buffer.capacityInBytes() - oldCapacity;
+        }
+        lastDocumentID = docID;
+        documentsInMemory++;
+        if (memoryUsed > memoryBudget)
+            flushRun();
+    }
+
+    /**
+     * writes the postings held in RAM as a new sorted run
+     */
+    public void flushRun()
+    {
+        if (postings.isEmpty())
+            return;
+        String[] terms = postings.keySet().toArray(new String[postings.size()]);
+        Arrays.sort(terms);
+        File runFile = new File(runPrefix + runCount++);
+        try (FileOutputStream file = new FileOutputStream(runFile);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16)))
+        {
+            VByteUtils.write(out, terms.length);
+            for (String term : terms)
+            {
+                byte[] termBytes = term.getBytes("UTF-8");
+                VByteUtils.write(out, termBytes.length);
+                out.write(termBytes);
+                writePostings(out, postings.get(term));
+            }
+            out.flush();
+            file.getFD().sync();
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        runs.add(runFile);
+        runLastDocumentIDs.add(lastDocumentID);
+        runDocumentCounts.add(documentsInMemory);
+        lastFlushedDocumentID = lastDocumentID;
+        logRun(runFile, lastDocumentID, documentsInMemory);
+        documentsInMemory = 0;
+        postings = new HashMap<>();
+        memoryUsed = 0;
+    }
+
+    /**
+     * flushes the last run and merges all runs into dictionary in term order, run files are deleted afterwards.
+     * An empty dictionary is bulk loaded from the merged runs instead of inserting term by term.
+     * Runs the dictionary already holds, because a crash came after it took them, are skipped.
+     */
+    public void finish(Dictionary dictionary)
+    {
+        flushRun();
+        Vector<File> newRuns = new Vector<>();
+        int newDocuments = 0;
+        for (int i = 0; i < runs.size(); i++)
+            if (runLastDocumentIDs.elementAt(i) > dictionary.getLastDocumentID())
+            {
+                newRuns.add(runs.elementAt(i));
+                newDocuments += runDocumentCounts.elementAt(i);
+            }
+        try
+        {
+            if (!newRuns.isEmpty())
+                dictionary.addSortedPostings(new RunMerger(newRuns), lastFlushedDocumentID, newDocuments, BULK_LOAD_FILL_FACTOR);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        // the log goes first: runs listed in it must exist
+        runLog.delete();
+        for (File run : runs)
+            run.delete();
+        runs.clear();
+        runLastDocumentIDs.clear();
+        runDocumentCounts.clear();
+        runCount = 0;
+    }
+
+    /**
+     * last document whose postings are in a run on disk, -1 if none; indexing resumes after it
+     */
+    public int getLastFlushedDocumentID()
+    {
+        return lastFlushedDocumentID;
+    }
+
+    private void logRun(File runFile, int lastDocumentID, int documents)
+    {
+        byte[] name = runFile.getPath().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + name.length);
+        record.putInt(lastDocumentID);
+        record.putInt(documents);
+        record.put(name);
+        record.flip();
+        runLog.append(RUN, record);
+        runLog.sync();
+    }
+
+    private void recoverRuns()
+    {
+        try
+        {
+            for (WriteAheadLog.Record record : runLog.recover())
+            {
+                if (record.getType() != RUN)
+                    continue;
+                runCount++;
+                ByteBuffer payload = record.getPayload();
+                int runLastDocumentID = payload.getInt();
+                int documents = payload.getInt();
+                byte[] name = new byte[payload.remaining()];
+                payload.get(name);
+                File runFile = new File(new String(name, StandardCharsets.UTF_8));
+                if (!runFile.exists())
+                    continue;
+                runs.add(runFile);
+                runLastDocumentIDs.add(runLastDocumentID);
+                runDocumentCounts.add(documents);
+                lastDocumentID = lastFlushedDocumentID = runLastDocumentID;
+            }
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private void writePostings(DataOutputStream out, PostingsList postingsList) throws IOException
+    {
+        VByteUtils.write(out, postingsList.size());
+        int lastDocID = 0;
+        for (int i = 0; i < postingsList.size(); i++)
+        {
+            VByteUtils.write(out, postingsList.getDocID(i) - lastDocID);
+            VByteUtils.write(out, postingsList.getFreq(i));
+            int count = postingsList.getPositionCount(i);
+            VByteUtils.write(out, count);
+            int[] positions = postingsList.getPositions();
+            for (int j = postingsList.getPositionsOffset(i), lastPosition = 0; count-- > 0; lastPosition = positions[j++])
+                VByteUtils.write(out, positions[j] - lastPosition);
+            lastDocID = postingsList.getDocID(i);
+        }
+    }
+
+    public int getNumberOfRuns()
+    {
+        return runs.size();
+    }
+
+    /**
+     * merged postings of all runs, one term at a time in term order; the returned list is reused by the next call
+     */
+    static class RunMerger implements Iterator<Pair<String, PostingsList>>
+    {
+        private final PriorityQueue<RunReader> queue;
+        private final PostingsList merged;
+
+        RunMerger(Vector<File> runs) throws IOException
+        {
+            queue = new PriorityQueue<>();
+            merged = new PostingsList();
+            for (int i = 0; i < runs.size(); i++)
+            {
+                RunReader reader = new RunReader(runs.elementAt(i), i);
+                if (reader.next())
+                    queue.add(reader);
+                else
+                    reader.close();
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Pair<String, PostingsList> next()
+        {
+            String term = queue.peek().term;
+            merged.clear();
+            // runs hold increasing docIDs, so appending them in run order keeps the merged list sorted
+            while (!queue.isEmpty() && queue.peek().term.equals(term))
+            {
+                RunReader reader = queue.poll();
+                try
+                {
+                    reader.appendPostingsTo(merged);
+                    if (reader.next())
+                        queue.add(reader);
+                    else
+                        reader.close();
+                } catch (IOException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+            return new Pair<>(term, merged);
+        }
+    }
+
+    static class RunReader implements Comparable<RunReader>
+    {
+        private final DataInputStream in;
+        private final int runNumber;
+        private int remainingTerms;
+        private int[] positions;
+        String term;
+
+        RunReader(File run, int runNumber) throws IOException
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+            this.runNumber = runNumber;
+            remainingTerms = VByteUtils.read(in);
+            positions = new int[16];
+        }
+
+        boolean next() throws IOException
+        {
+            if (remainingTerms == 0)
+                return false;
+            remainingTerms--;
+            byte[] termBytes = new byte[VByteUtils.read(in)];
+            in.readFully(termBytes);
+            term = new String(termBytes, "UTF-8");
+            return true;
+        }
+
+        void appendPostingsTo(PostingsList buffer) throws IOException
+        {
+            int size = VByteUtils.read(in);
+            int docID = 0;
+            for (int i = 0; i < size; i++)
+            {
+                docID += VByteUtils.read(in);
+                int freq = VByteUtils.read(in);
+                int count = VByteUtils.read(in);
+                if (count > positions.length)
+                    positions = new int[Math.max(count, 2 * positions.length)];
+                for (int j = 0, position = 0; j < count; j++)
+                    positions[j] = position += VByteUtils.read(in);
+                buffer.appendWithPositions(docID, freq, positions, 0, count);
+            }
+        }
+
+        void close() throws IOException
+        {
+            in.close();
+        }
+
+        @Override
+        public int compareTo(RunReader other)
+        {
+            int compareResult = term.compareTo(other.term);
+            return compareResult != 0 ? compareResult : Integer.compare(runNumber, other.runNumber);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package DocIndexingManagement.Indexing;
+
+import Utilities.VByteUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * Dense int IDs for terms: a term gets the next ID the first time it is seen and keeps it for good,
+ * so postings, document vectors and weights can be kept in arrays indexed by term ID.
+ * <p>
+ * The file lists the terms in ID order, each as its UTF-8 length, variable byte coded, and bytes. It is only appended to;
+ * whatever refers to term IDs must sync it before its own files, so an ID on disk always has its term on disk.
+ * A term cut short by a crash is cut off on open.
+ */
+public class TermIDs
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer; // appended, not yet written
+    private final HashMap<String, Integer> ids;
+    private final Vector<String> terms;
+
+    /**
+     * @param reopen false to start with no terms even if the file has some
+     */
+    public TermIDs(String fileName, boolean reopen)
+    {
+        file = new File(fileName);
+        ids = new HashMap<>();
+        terms = new Vector<>();
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        FileChannel fileChannel = null;
+        try
+        {
+            fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (reopen)
+                load(fileChannel);
+            else
+                fileChannel.truncate(0);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        channel = fileChannel;
+    }
+
+    /**
+     * the ID of term, given now if it has none yet
+     */
+    public synchronized int getOrAdd(String term)
+    {
+        Integer id = ids.get(term);
+        if (id != null)
+            return id;
+        id = terms.size();
+        ids.put(term, id);
+        terms.add(term);
+        byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+        if (VByteUtils.MAX_BYTES + termBytes.length > buffer.remaining())
+            flush();
+        if (VByteUtils.MAX_BYTES + termBytes.length > buffer.remaining())
+        {
+            ByteBuffer record = ByteBuffer.allocate(VByteUtils.MAX_BYTES + termBytes.length);
+            VByteUtils.write(record, termBytes.length);
+            record.put(termBytes);
+            record.flip();
+            write(record);
+        } else
+        {
+            VByteUtils.write(buffer, termBytes.length);
+            buffer.put(termBytes);
+        }
+        return id;
+    }
+
+    /**
+     * the ID of term, -1 if it has none
+     */
+    public synchronized int getID(String term)
+    {
+        Integer id = ids.get(term);
+        return id == null ? -1 : id;
+    }
+
+    public synchronized String getTerm(int id)
+    {
+        return terms.elementAt(id);
+    }
+
+    /**
+     * number of terms with an ID, one more than the largest ID
+     */
+    public synchronized int size()
+    {
+        return terms.size();
+    }
+
+    /**
+     * writes the buffered terms to the file without forcing it
+     */
+    public synchronized void flush()
+    {
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    public synchronized void sync()
+    {
+        flush();
+        try
+        {
+            channel.force(false);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void close()
+    {
+        sync();
+        try
+        {
+            channel.close();
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private void write(ByteBuffer data)
+    {
+        try
+        {
+            long position = channel.size();
+            while (data.hasRemaining())
+                position += channel.write(data, position);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private void load(FileChannel fileChannel) throws IOException
+    {
+        long end = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)))
+        {
+            while (end < fileChannel.size())
+            {
+                int length = VByteUtils.read(in);
+                byte[] term = new byte[length];
+                in.readFully(term);
+                String termString = new String(term, StandardCharsets.UTF_8);
+                ids.put(termString, terms.size());
+                terms.add(termString);
+                end += VByteUtils.size(length) + length;
+            }
+        } catch (EOFException e)
+        {
+            fileChannel.truncate(end);
+        }
+    }
+}
@@ -2,19 +2,28 @@ package FileManagement; /**
  * Created by 9231020 on 5/1/2016.
  */
 
-import sun.nio.cs.StandardCharsets;
-
 import java.io.*;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.Vector;
 
 
-public class FileReader {
+public class FileReader implements Closeable {
+    private static final String ARTICLE_MARKER = "<مقاله>";
     String address;
     /*DataInputStream dis = null;
     InputStream fis = null;*/
     File file;
-    Scanner scanner;
+    FileChannel channel;
+    CharsetDecoder decoder;
+    ByteBuffer byteBuffer;
+    CharBuffer charBuffer;
+    StringBuilder token;
+    boolean endOfInput;
 //    InputStream is = null;
 //    InputStreamReader isr = null;
 //    BufferedReader br = null;
@@ -24,10 +33,15 @@ public class FileReader {
         this.address = address;
         file = new File(this.address);
         try {
-            scanner = new Scanner(file);
+            channel = new FileInputStream(file).getChannel();
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         }
+        decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        token = new StringBuilder();
+        endOfInput = false;
 //        try {
 //            // open input stream test.txt for reading purpose.
 //            is = new FileInputStream(this.address);
@@ -51,18 +65,44 @@ public class FileReader {
 //        }
     }
 
+    /**
+     * returns the tokens up to and including the next article marker, null at end of file.
+     * bufferSize is the size of the chunks read from the file; a call with another size than the last one
+     * allocates the buffers again, carrying over what was read and not yet returned.
+     */
     public Vector<String> readWithBufferSize(int bufferSize) {
-
+        if (byteBuffer == null) {
+            byteBuffer = ByteBuffer.allocateDirect(bufferSize);
+            charBuffer = CharBuffer.allocate(bufferSize);
+            charBuffer.flip();
+        } else if (byteBuffer.capacity() != bufferSize) {
+            resizeBuffers(bufferSize);
+        }
         Vector<String> strings = new Vector<String>();
-        String token = "";
-        int size = 0;
-        while (scanner.hasNext()){
-            token = scanner.next();
-            size += token.length();
-            strings.add(token);
-            if (token.equals("<مقاله>")){
-                return strings;
+        while (charBuffer.hasRemaining() || fillCharBuffer()) {
+            char[] chars = charBuffer.array();
+            int position = charBuffer.position(), limit = charBuffer.limit();
+            while (position < limit) {
+                char c = chars[position++];
+                if (!isDelimiter(c)) {
+                    token.append(c);
+                    continue;
+                }
+                if (token.length() == 0)
+                    continue;
+                String word = token.toString();
+                token.setLength(0);
+                strings.add(word);
+                if (word.equals(ARTICLE_MARKER)) {
+                    charBuffer.position(position);
+                    return strings;
+                }
             }
+            charBuffer.position(position);
+        }
+        if (token.length() > 0) {
+            strings.add(token.toString());
+            token.setLength(0);
         }
         if (strings.size() == 0) {
             return null;
@@ -70,6 +110,84 @@ public class FileReader {
         return strings;
     }
 
+    /**
+     * the byte buffer holds the start of a character not decoded yet, the char buffer the decoded characters
+     * not scanned yet; a buffer smaller than what it holds is allocated large enough for it
+     */
+    private void resizeBuffers(int bufferSize) {
+        byteBuffer.flip();
+        ByteBuffer bytes = ByteBuffer.allocateDirect(Math.max(bufferSize, byteBuffer.remaining()));
+        bytes.put(byteBuffer);
+        byteBuffer = bytes;
+        CharBuffer chars = CharBuffer.allocate(Math.max(bufferSize, charBuffer.remaining()));
+        chars.put(charBuffer);
+        chars.flip();
+        charBuffer = chars;
+    }
+
+    /**
+     * whitespace and the Persian and Latin punctuation that never belongs to a term
+     */
+    protected static boolean isDelimiter(char c) {
+        switch (c) {
+            case ' ': case '\t': case '\n': case '\r': case '\f':
+            case '\u00A0': // no-break space
+            case '\u060C': // Persian comma
+            case '\u061B': // Persian semicolon
+            case '\u061F': // Persian question mark
+            case '\u00AB': case '\u00BB': // guillemets
+            case '.': case ',': case ';': case ':': case '!': case '?':
+            case '(': case ')': case '[': case ']': case '"':
+                return true;
+            default:
+                return c > 0x2000 && Character.isWhitespace(c);
+        }
+    }
+
+    /**
+     * decodes the next chunk of the file, returns false when nothing is left
+     */
+    private boolean fillCharBuffer() {
+        if (endOfInput)
+            return false;
+        charBuffer.clear();
+        try {
+            while (charBuffer.position() == 0 && !endOfInput) {
+                int read = channel.read(byteBuffer);
+                byteBuffer.flip();
+                decoder.decode(byteBuffer, charBuffer, read == -1);
+                byteBuffer.compact();
+                if (read == -1) {
+                    decoder.flush(charBuffer);
+                    endOfInput = true;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            endOfInput = true;
+        }
+        if (endOfInput)
+            close();
+        charBuffer.flip();
+        return charBuffer.hasRemaining();
+    }
+
+    /**
+     * releases the file, reading to the end of it closes it as well
+     */
+    @Override
+    public void close() {
+        endOfInput = true;
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+
 
     // creates buffer
             /*char[] cbuf = new char[bufferSize/2];
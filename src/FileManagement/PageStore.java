@@ -0,0 +1,308 @@
+package FileManagement;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.Vector;
+
+/**
+ * Memory mapped view of a file, split into fixed size segments which are mapped on demand.
+ * All reads and writes are plain memory copies; the file only grows when a new segment is mapped.
+ * <p>
+ * A protected store logs the before-image of every block of its checkpointed bytes ahead of the first change
+ * to that block since the checkpoint. Recovery writes the images back and cuts the file at the checkpointed size,
+ * which returns the file to its state at the checkpoint however many changes reached the disk after it.
+ */
+public class PageStore
+{
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+    public static final int UNDO_BLOCK_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final int segmentSize;
+    private final Vector<MappedByteBuffer> segments;
+    private long size; // logical end of data, the mapped file itself is rounded up to segments
+    private WriteAheadLog undoLog;
+    private int storeNumber; // tells the stores sharing one undo log apart
+    private long protectedSize; // bytes at the last checkpoint, appended bytes need no before-image
+    private final BitSet loggedBlocks;
+
+    public PageStore(RandomAccessFile file, int segmentSize)
+    {
+        this.channel = file.getChannel();
+        this.segmentSize = segmentSize;
+        segments = new Vector<>();
+        loggedBlocks = new BitSet();
+        try
+        {
+            size = channel.size();
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    public PageStore(RandomAccessFile file)
+    {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * reserves length bytes at the end of the store and returns their position
+     */
+    public long allocate(int length)
+    {
+        long position = size;
+        ensureCapacity(position + length);
+        size = position + length;
+        return position;
+    }
+
+    /**
+     * starts a new checkpoint interval: the bytes stored now are protected by before-images in undoLog
+     */
+    public void protect(WriteAheadLog undoLog, int storeNumber)
+    {
+        this.undoLog = undoLog;
+        this.storeNumber = storeNumber;
+        protectedSize = size;
+        loggedBlocks.clear();
+    }
+
+    /**
+     * writes back a before-image logged by this store and remembers that its block is already logged
+     */
+    public void restoreImage(ByteBuffer image)
+    {
+        long position = image.getLong(Integer.BYTES);
+        image.position(Integer.BYTES + Long.BYTES);
+        WriteAheadLog log = undoLog;
+        undoLog = null;
+        write(position, image);
+        undoLog = log;
+        loggedBlocks.set((int) (position / UNDO_BLOCK_SIZE));
+    }
+
+    /**
+     * store number a before-image was logged by
+     */
+    public static int storeNumberOf(ByteBuffer image)
+    {
+        return image.getInt(0);
+    }
+
+    /**
+     * cuts the store back to size bytes, dropping everything appended after it
+     */
+    public void truncate(long size)
+    {
+        force();
+        segments.clear();
+        try
+        {
+            channel.truncate(size);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        this.size = size;
+        protectedSize = Math.min(protectedSize, size);
+    }
+
+    public long readLong(long position)
+    {
+        checkRead(position, Long.BYTES);
+        int offset = (int) (position % segmentSize);
+        if (offset + Long.BYTES <= segmentSize)
+            return segmentAt(position).getLong(offset);
+        ByteBuffer temp = ByteBuffer.allocate(Long.BYTES);
+        read(position, temp);
+        return temp.getLong(0);
+    }
+
+    public int readInt(long position)
+    {
+        checkRead(position, Integer.BYTES);
+        int offset = (int) (position % segmentSize);
+        if (offset + Integer.BYTES <= segmentSize)
+            return segmentAt(position).getInt(offset);
+        ByteBuffer temp = ByteBuffer.allocate(Integer.BYTES);
+        read(position, temp);
+        return temp.getInt(0);
+    }
+
+    public void writeLong(long position, long value)
+    {
+        logBeforeImages(position, Long.BYTES);
+        int offset = (int) (position % segmentSize);
+        ensureCapacity(position + Long.BYTES);
+        if (offset + Long.BYTES <= segmentSize)
+            segmentAt(position).putLong(offset, value);
+        else
+        {
+            ByteBuffer temp = ByteBuffer.allocate(Long.BYTES);
+            temp.putLong(0, value);
+            write(position, temp);
+        }
+        growTo(position + Long.BYTES);
+    }
+
+    public void writeInt(long position, int value)
+    {
+        logBeforeImages(position, Integer.BYTES);
+        int offset = (int) (position % segmentSize);
+        ensureCapacity(position + Integer.BYTES);
+        if (offset + Integer.BYTES <= segmentSize)
+            segmentAt(position).putInt(offset, value);
+        else
+        {
+            ByteBuffer temp = ByteBuffer.allocate(Integer.BYTES);
+            temp.putInt(0, value);
+            write(position, temp);
+        }
+        growTo(position + Integer.BYTES);
+    }
+
+    public void read(long position, byte[] destination, int offset, int length)
+    {
+        read(position, ByteBuffer.wrap(destination, offset, length));
+    }
+
+    /**
+     * fills the remaining bytes of destination; reading past the logical end fails and leaves the store as it is
+     */
+    public void read(long position, ByteBuffer destination)
+    {
+        checkRead(position, destination.remaining());
+        while (destination.hasRemaining())
+        {
+            int offset = (int) (position % segmentSize);
+            int length = Math.min(destination.remaining(), segmentSize - offset);
+            ByteBuffer view = segmentAt(position).duplicate();
+            view.position(offset);
+            view.limit(offset + length);
+            destination.put(view);
+            position += length;
+        }
+    }
+
+    public void write(long position, byte[] source, int offset, int length)
+    {
+        write(position, ByteBuffer.wrap(source, offset, length));
+    }
+
+    /**
+     * copies the remaining bytes of source to position, growing the store if required
+     */
+    public void write(long position, ByteBuffer source)
+    {
+        long end = position + source.remaining();
+        logBeforeImages(position, source.remaining());
+        ensureCapacity(end);
+        while (source.hasRemaining())
+        {
+            int offset = (int) (position % segmentSize);
+            int length = Math.min(source.remaining(), segmentSize - offset);
+            ByteBuffer view = segmentAt(position).duplicate();
+            view.position(offset);
+            int oldLimit = source.limit();
+            source.limit(source.position() + length);
+            view.put(source);
+            source.limit(oldLimit);
+            position += length;
+        }
+        growTo(end);
+    }
+
+    public void force()
+    {
+        for (MappedByteBuffer segment : segments)
+            segment.force();
+    }
+
+    /**
+     * flushes the mapped segments and cuts the file back to its logical size
+     */
+    public void close()
+    {
+        force();
+        segments.clear();
+        try
+        {
+            channel.truncate(size);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * logs the blocks of [position, position + length) not logged since the checkpoint and forces the log,
+     * the images must be on disk before the changed bytes can be
+     */
+    private void logBeforeImages(long position, int length)
+    {
+        if (undoLog == null || position >= protectedSize)
+            return;
+        int firstBlock = (int) (position / UNDO_BLOCK_SIZE);
+        int lastBlock = (int) ((Math.min(position + length, protectedSize) - 1) / UNDO_BLOCK_SIZE);
+        boolean logged = false;
+        for (int block = loggedBlocks.nextClearBit(firstBlock); block <= lastBlock; block = loggedBlocks.nextClearBit(block + 1))
+        {
+            long blockStart = (long) block * UNDO_BLOCK_SIZE;
+            int imageLength = (int) Math.min(UNDO_BLOCK_SIZE, protectedSize - blockStart);
+            ByteBuffer image = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + imageLength);
+            image.putInt(storeNumber);
+            image.putLong(blockStart);
+            read(blockStart, image);
+            image.flip();
+            undoLog.append(WriteAheadLog.PAGE_IMAGE, image);
+            loggedBlocks.set(block);
+            logged = true;
+        }
+        if (logged)
+            undoLog.sync();
+    }
+
+    private MappedByteBuffer segmentAt(long position)
+    {
+        return segments.elementAt((int) (position / segmentSize));
+    }
+
+    /**
+     * maps the segments of [position, position + length), which must lie within the data; only writes grow the store
+     */
+    private void checkRead(long position, int length)
+    {
+        if (position < 0 || position + length > size)
+            throw new IndexOutOfBoundsException("read of " + length + " bytes at " + position + " past the end of the store at " + size);
+        ensureCapacity(position + length);
+    }
+
+    private void growTo(long end)
+    {
+        if (end > size)
+            size = end;
+    }
+
+    private void ensureCapacity(long end)
+    {
+        try
+        {
+            while ((long) segments.size() * segmentSize < end)
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                        (long) segments.size() * segmentSize, segmentSize));
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
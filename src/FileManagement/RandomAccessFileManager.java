@@ -2,6 +2,7 @@ package FileManagement;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.HashMap;
 import java.util.Vector;
@@ -11,6 +12,7 @@ public class RandomAccessFileManager
     private static String path = "";
     private static HashMap<String, Integer> fileNames = new HashMap<>();
     private static Vector<RandomAccessFile> instances = new Vector<>();
+    private static Vector<PageStore> pageStores = new Vector<>();
 
     protected RandomAccessFileManager()
     {
@@ -18,6 +20,19 @@ public class RandomAccessFileManager
     }
 
     public static int createNewInstance(String fileName)
+    {
+        return open(fileName, true);
+    }
+
+    /**
+     * like createNewInstance but keeps the content of an existing file, used to recover it
+     */
+    public static int openExistingInstance(String fileName)
+    {
+        return open(fileName, false);
+    }
+
+    private static int open(String fileName, boolean deleteExisting)
     {
         Integer id = fileNames.get(fileName);
         if (id != null)
@@ -27,12 +42,14 @@ public class RandomAccessFileManager
         try
         {
             File file = new File(path + fileName);
-            if (file.exists())
+            if (deleteExisting && file.exists())
             {
                 file.delete();
                 System.out.println("deleting last index file name" + fileName);
             }
-            instances.add(new RandomAccessFile(path + fileName, "rw"));
+            RandomAccessFile instance = new RandomAccessFile(path + fileName, "rw");
+            instances.add(instance);
+            pageStores.add(new PageStore(instance));
             fileNames.put(fileName, instances.size() - 1);
         } catch (FileNotFoundException e)
         {
@@ -46,11 +63,23 @@ public class RandomAccessFileManager
         return instances.elementAt(id);
     }
 
-    @Override
-    protected void finalize() throws Throwable
+    public static PageStore getPageStore(int id)
     {
+        return pageStores.elementAt(id);
+    }
+
+    public static void closeAll() throws IOException
+    {
+        for (PageStore pageStore : pageStores)
+            pageStore.close();
         for (RandomAccessFile instance : instances)
             instance.close();
+    }
+
+    @Override
+    protected void finalize() throws Throwable
+    {
+        closeAll();
         super.finalize();
     }
 }
@@ -0,0 +1,258 @@
+package FileManagement;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Vector;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log for crash recovery. Records are buffered and forced to disk in groups,
+ * so a crash loses at most the records of the last group and never a part of a record.
+ * <p>
+ * Record format: int payload length, int CRC32 of type and payload, byte type, payload.
+ * Reading stops at the first record that is cut short or fails its checksum, that is where the crash hit the log.
+ * A checkpoint replaces the whole log by a new one starting with the checkpoint record.
+ */
+public class WriteAheadLog
+{
+    public static final byte CHECKPOINT = 1;
+    public static final byte PAGE_IMAGE = 2; // types up to 15 belong to the log, callers use the others
+    public static final int DEFAULT_GROUP_COMMIT_BYTES = 256 * 1024;
+    public static final long DEFAULT_GROUP_COMMIT_MILLIS = 20;
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES + 1;
+
+    private final File file;
+    private final int groupCommitBytes;
+    private final long groupCommitMillis;
+    private final CRC32 crc;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private ByteBuffer buffer; // records appended since the last write to the file
+    private long writtenSize;
+    private long lastForceTime;
+
+    public WriteAheadLog(String fileName, int groupCommitBytes, long groupCommitMillis)
+    {
+        file = new File(fileName);
+        this.groupCommitBytes = groupCommitBytes;
+        this.groupCommitMillis = groupCommitMillis;
+        crc = new CRC32();
+        buffer = ByteBuffer.allocate(Math.max(groupCommitBytes, 4096));
+        lastForceTime = System.currentTimeMillis();
+    }
+
+    public WriteAheadLog(String fileName)
+    {
+        this(fileName, DEFAULT_GROUP_COMMIT_BYTES, DEFAULT_GROUP_COMMIT_MILLIS);
+    }
+
+    public static boolean exists(String fileName)
+    {
+        return new File(fileName).exists();
+    }
+
+    /**
+     * reads the complete records of an existing log and cuts off the damaged tail, appends go after them
+     */
+    public synchronized Vector<Record> recover() throws IOException
+    {
+        open();
+        ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+        while (content.hasRemaining())
+            if (channel.read(content, content.position()) < 0)
+                break;
+        content.flip();
+        Vector<Record> records = new Vector<>();
+        while (content.remaining() >= RECORD_HEADER_SIZE)
+        {
+            int start = content.position();
+            int length = content.getInt();
+            int checksum = content.getInt();
+            if (length < 0 || content.remaining() < 1 + length)
+            {
+                content.position(start);
+                break;
+            }
+            ByteBuffer typeAndPayload = content.slice();
+            typeAndPayload.limit(1 + length);
+            crc.reset();
+            crc.update(typeAndPayload.duplicate());
+            if ((int) crc.getValue() != checksum)
+            {
+                content.position(start);
+                break;
+            }
+            byte type = typeAndPayload.get();
+            records.add(new Record(type, typeAndPayload.slice()));
+            content.position(start + RECORD_HEADER_SIZE + length);
+        }
+        writtenSize = content.position();
+        channel.truncate(writtenSize);
+        return records;
+    }
+
+    /**
+     * adds a record to the current group, it is durable after the next commit that forces the group
+     */
+    public synchronized void append(byte type, ByteBuffer payload)
+    {
+        int length = payload.remaining();
+        if (buffer.remaining() < RECORD_HEADER_SIZE + length)
+        {
+            writeBuffer();
+            if (buffer.capacity() < RECORD_HEADER_SIZE + length)
+                buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        }
+        crc.reset();
+        crc.update(type);
+        crc.update(payload.duplicate());
+        buffer.putInt(length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(type);
+        buffer.put(payload);
+    }
+
+    /**
+     * group commit: forces the log once the group is large or old enough, otherwise leaves it to a later commit
+     */
+    public synchronized void commit()
+    {
+        if (buffer.position() >= groupCommitBytes || System.currentTimeMillis() - lastForceTime >= groupCommitMillis)
+            sync();
+    }
+
+    /**
+     * forces every record appended so far
+     */
+    public synchronized void sync()
+    {
+        writeBuffer();
+        try
+        {
+            channel.force(false);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        lastForceTime = System.currentTimeMillis();
+    }
+
+    /**
+     * starts a new log holding only a checkpoint record; the old log is replaced atomically once the new one is on disk
+     */
+    public synchronized void checkpoint(ByteBuffer state)
+    {
+        buffer.clear();
+        File newFile = new File(file.getPath() + ".tmp");
+        try
+        {
+            close();
+            try (RandomAccessFile newLog = new RandomAccessFile(newFile, "rw"))
+            {
+                newLog.setLength(0);
+                append(CHECKPOINT, state);
+                buffer.flip();
+                while (buffer.hasRemaining())
+                    newLog.getChannel().write(buffer);
+                buffer.clear();
+                newLog.getChannel().force(true);
+            }
+            Files.move(newFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            open();
+            writtenSize = channel.size();
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        lastForceTime = System.currentTimeMillis();
+    }
+
+    /**
+     * bytes in the log, including the records not written yet
+     */
+    public synchronized long size()
+    {
+        return writtenSize + buffer.position();
+    }
+
+    public synchronized void close()
+    {
+        if (channel == null)
+            return;
+        writeBuffer();
+        try
+        {
+            randomAccessFile.close();
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+
+    /**
+     * closes and removes the log, used once the files it protects no longer need recovery
+     */
+    public synchronized void delete()
+    {
+        buffer.clear();
+        close();
+        file.delete();
+        writtenSize = 0;
+    }
+
+    private void open() throws IOException
+    {
+        if (channel != null)
+            return;
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+    }
+
+    private void writeBuffer()
+    {
+        if (buffer.position() == 0)
+            return;
+        buffer.flip();
+        try
+        {
+            open();
+            while (buffer.hasRemaining())
+                writtenSize += channel.write(buffer, writtenSize);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        buffer.clear();
+    }
+
+    public static class Record
+    {
+        private final byte type;
+        private final ByteBuffer payload;
+
+        Record(byte type, ByteBuffer payload)
+        {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public byte getType()
+        {
+            return type;
+        }
+
+        /**
+         * the payload as a read only view, positioned at its start
+         */
+        public ByteBuffer getPayload()
+        {
+            return payload.asReadOnlyBuffer();
+        }
+    }
+}
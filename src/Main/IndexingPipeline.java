@@ -0,0 +1,264 @@
+package Main;
+
+import FileManagement.FileReader;
+
+import java.util.HashMap;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Multi threaded version of Main.doMainProcess:
+ * one reader thread splits the input into articles, a pool of workers stems them, removes stop words
+ * and counts term frequencies, and the calling thread merges the articles into the index in article order.
+ * With a sharded dictionary the workers add their articles themselves and the merge stage only keeps count.
+ * The queues are bounded and a semaphore caps the number of articles held in memory at any time.
+ * After a failure in any stage the reader stops and the other stages drain their queues without processing,
+ * the poison pills are handed on however a thread stops, and run rethrows the first failure once all threads are done.
+ */
+public class IndexingPipeline
+{
+    private static final Article POISON = new Article(-1, null);
+
+    private final FileReader reader;
+    private final int workerCount;
+    private final BlockingQueue<Article> readQueue, processedQueue;
+    private final Semaphore inFlight;
+    private final AtomicLong stemTime, deleteTime;
+    private final AtomicReference<Throwable> failure;
+    private long mergeTime;
+
+    public IndexingPipeline(FileReader reader, int workerCount, int queueCapacity)
+    {
+        this.reader = reader;
+        this.workerCount = workerCount;
+        readQueue = new ArrayBlockingQueue<>(queueCapacity);
+        processedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        inFlight = new Semaphore(2 * queueCapacity + workerCount);
+        stemTime = new AtomicLong();
+        deleteTime = new AtomicLong();
+        failure = new AtomicReference<>();
+        mergeTime = 0;
+    }
+
+    /**
+     * indexes every article of the reader, numbering them from firstArticleNumber
+     *
+     * @return the number of articles indexed
+     * @throws IllegalStateException if reading or processing the articles failed, the articles merged so far stay indexed
+     */
+    public int run(final int firstArticleNumber)
+    {
+        Thread readerThread = new Thread(() -> readArticles(firstArticleNumber), "indexing-reader");
+        readerThread.start();
+        Thread[] workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++)
+        {
+            workers[i] = new Thread(this::processArticles, "indexing-worker-" + i);
+            workers[i].start();
+        }
+
+        int nextArticle = firstArticleNumber;
+        try
+        {
+            // workers finish out of order, keep early articles until their turn comes
+            HashMap<Integer, Article> pending = new HashMap<>();
+            int finishedWorkers = 0;
+            while (finishedWorkers < workerCount)
+            {
+                Article article = processedQueue.take();
+                if (article == POISON)
+                {
+                    finishedWorkers++;
+                    continue;
+                }
+                pending.put(article.number, article);
+                while (failure.get() == null && (article = pending.remove(nextArticle)) != null)
+                {
+                    long a1 = System.currentTimeMillis();
+                    try
+                    {
+                        merge(article);
+                    } catch (RuntimeException | Error e)
+                    {
+                        failure.compareAndSet(null, e);
+                        break;
+                    }
+                    mergeTime += System.currentTimeMillis() - a1;
+                    inFlight.release();
+                    nextArticle++;
+                }
+                // after a failure the articles are dropped, and their permits let the reader get to its end
+                if (failure.get() != null)
+                {
+                    inFlight.release(pending.size());
+                    pending.clear();
+                }
+            }
+            readerThread.join();
+            for (Thread worker : workers)
+                worker.join();
+        } catch (InterruptedException e)
+        {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+        if (failure.get() != null)
+            throw new IllegalStateException("indexing stopped after article " + (nextArticle - 1), failure.get());
+        return nextArticle - firstArticleNumber;
+    }
+
+    private void readArticles(int articleNumber)
+    {
+        try
+        {
+            Vector<String> words;
+            while (failure.get() == null && (words = reader.readWithBufferSize(1000000)) != null)
+            {
+                inFlight.acquire();
+                readQueue.put(new Article(articleNumber++, words));
+            }
+        } catch (InterruptedException e)
+        {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error e)
+        {
+            failure.compareAndSet(null, e);
+        } finally
+        {
+            for (int i = 0; i < workerCount; i++)
+                putPoison(readQueue);
+        }
+    }
+
+    /**
+     * a worker keeps taking articles after a failure, without processing them, so the reader is never left blocked
+     */
+    private void processArticles()
+    {
+        try
+        {
+            Article article;
+            while ((article = readQueue.take()) != POISON)
+                if (failure.get() == null && processArticle(article))
+                    processedQueue.put(article);
+                else
+                    inFlight.release();
+        } catch (InterruptedException e)
+        {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        } finally
+        {
+            putPoison(processedQueue);
+        }
+    }
+
+    /**
+     * stems the article and counts its terms, false if that failed
+     */
+    private boolean processArticle(Article article)
+    {
+        try
+        {
+            long a1 = System.currentTimeMillis();
+            Main.stemming(article.words);
+            long a2 = System.currentTimeMillis();
+            Main.delete_stop_words(article.words);
+            long a3 = System.currentTimeMillis();
+            article.findPositions();
+            if (Main.shardedDictionary != null)
+            {
+                Main.shardedDictionary.addPositionalDocument(article.termPositions, article.number);
+                article.termPositions = null;
+            }
+            stemTime.addAndGet(a2 - a1);
+            deleteTime.addAndGet(a3 - a2);
+            return true;
+        } catch (RuntimeException | Error e)
+        {
+            failure.compareAndSet(null, e);
+            return false;
+        }
+    }
+
+    /**
+     * puts a poison pill even if the thread was interrupted, the next stage waits for it
+     */
+    private static void putPoison(BlockingQueue<Article> queue)
+    {
+        boolean interrupted = Thread.interrupted();
+        while (true)
+        {
+            try
+            {
+                queue.put(POISON);
+                break;
+            } catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void merge(Article article)
+    {
+        if (Main.docTermIndexer != null)
+            Main.docTermIndexer.addDocument(article.termFreqs, article.number);
+        if (article.termPositions == null) // already added by its worker
+            return;
+        if (Main.segmentedIndex != null)
+        {
+            Main.segmentedIndex.addDocument(article.termFreqs, article.number);
+            return;
+        }
+        if (Main.use_spimi)
+        {
+            Main.spimiIndexer.addPositionalDocument(article.termPositions, article.number);
+            return;
+        }
+        Main.dictionary.addPositionalDocument(article.termPositions, article.number);
+    }
+
+    public long getStemTime()
+    {
+        return stemTime.get();
+    }
+
+    public long getDeleteTime()
+    {
+        return deleteTime.get();
+    }
+
+    public long getMergeTime()
+    {
+        return mergeTime;
+    }
+
+    static class Article
+    {
+        final int number;
+        Vector<String> words;
+        HashMap<String, int[]> termPositions;
+        HashMap<String, Integer> termFreqs;
+
+        Article(int number, Vector<String> words)
+        {
+            this.number = number;
+            this.words = words;
+        }
+
+        void findPositions()
+        {
+            termPositions = Main.term_positions(words);
+            termFreqs = Main.term_freqs(termPositions);
+            words = null;
+        }
+    }
+}
@@ -1,12 +1,24 @@
 package Main;
 
+import DataStructures.Vector.WeightsFile;
 import DocIndexingManagement.Indexing.Dictionary;
+import DocIndexingManagement.Indexing.DocTermIndexer;
+import DocIndexingManagement.Indexing.InvertedIndex;
+import DocIndexingManagement.Indexing.SegmentedIndex;
+import DocIndexingManagement.Indexing.ShardedDictionary;
+import DocIndexingManagement.Indexing.SpimiIndexer;
+import DocIndexingManagement.Indexing.TermIDs;
 import FileManagement.FileReader;
+import FileManagement.RandomAccessFileManager;
 import Primitives.*;
+import QueryManagement.QueryEngine;
+import QueryManagement.SearchResult;
 import Stemmer.StateHandler;
 import Ui.GUI;
 
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Vector;
 
 public class Main {
@@ -19,7 +31,22 @@ public class Main {
     public static HashMap<String,Character> hashmap;
     public static Vector<String> words;
     public static Dictionary dictionary;
-    public static Dictionary userDictionary;
+    public static QueryEngine queryEngine;
+    public static int top_k = QueryEngine.DEFAULT_TOP_K;
+    public static SpimiIndexer spimiIndexer;
+    public static ShardedDictionary shardedDictionary;
+    public static SegmentedIndex segmentedIndex;
+    public static DocTermIndexer docTermIndexer;
+    public static WeightsFile weightsFile;
+    public static boolean use_forward_index = true; // document vectors for clustering, written along the index
+    public static boolean use_segments = false; // immutable segments merged in the background instead of the dictionary
+    public static int shard_count = 0; // 0 keeps the single dictionary
+    public static boolean use_spimi = true;
+    public static boolean use_pipeline = true;
+    public static int worker_count = Runtime.getRuntime().availableProcessors();
+    public static int queue_capacity = 64;
+    public static boolean index_ready = false; // indexing is done, queries may run
+    public static boolean index_closed = false;
 
     public static long stemm_time  ;
     public static long tree_adding ;
@@ -37,49 +64,150 @@ public class Main {
         mainFileReader = new FileReader("/Users/mohammad/workspace/ISR/PersianStemmer/Phase.txt");
         stopWordsReader = new FileReader("/Users/mohammad/workspace/ISR/PersianStemmer/StopWords.txt");
         gui = new GUI();
+        // the index stays open while the window is; closing the window exits and this closes it
+        Runtime.getRuntime().addShutdownHook(new Thread(Main::close_index, "close index"));
 
         gui.setVisible(true);
         words = new Vector<String>();
         dictionary = Dictionary.getIntance(1);
-        //userDictionary = Dictionary.getIntance();
+        if (dictionary.getReplayedRecords() >= 0)
+            System.out.println("index recovered after a crash, replayed records: " + dictionary.getReplayedRecords());
+        spimiIndexer = new SpimiIndexer();
+        if (use_segments && shard_count > 0)
+            throw new IllegalStateException("segments and shards are two indexes, use one of them");
+        if (shard_count > 0){
+            shardedDictionary = new ShardedDictionary("S", shard_count, true);
+            if (shardedDictionary.isLeftOpen())
+                System.out.println("the shards of the last run were not closed, the index is built again from the first article");
+        }
+        if (use_segments)
+            segmentedIndex = new SegmentedIndex("segments");
+        if (use_forward_index){
+            docTermIndexer = new DocTermIndexer("forward", term_ids());
+            if (docTermIndexer.getNumberOfDocuments() > 0)
+                System.out.println("forward index opened, documents: " + docTermIndexer.getNumberOfDocuments() + ", terms: " + docTermIndexer.getTermCount());
+        }
         stemm_time = tree_adding = delete_time = sum_time = 0;
         article_number = 1;
     }
 
-    public static void process_user_query(String query){
-        userDictionary = Dictionary.getIntance(2);
-        String[] tokens = query.split(" +");
+    /**
+     * after a crash the dictionary and the spimi runs recover what reached the disk, indexing resumes after it
+     */
+    public static void skipIndexedArticles(){
+        int last_indexed = Math.max(dictionary.getLastDocumentID(), spimiIndexer.getLastFlushedDocumentID());
+        if (segmentedIndex != null)
+            last_indexed = segmentedIndex.getLastDocumentID();
+        else if (shardedDictionary != null) // reopened shards, or empty ones
+            last_indexed = shardedDictionary.getLastDocumentID();
+        int first_article = article_number;
+        while (article_number <= last_indexed && mainFileReader.readWithBufferSize(1000000) != null)
+            article_number++;
+        if (article_number > first_article)
+            System.out.println("resuming from article ID = " + article_number);
+    }
+
+    /**
+     * incremental indexing: the articles of files are added to the index the last run left, numbered after its
+     * last document. Unless the index is sharded they go through spimi, so the dictionary takes each file in one
+     * step and only the new postings are written; after a crash in between, the same files are given again and
+     * the articles already in recovered runs are skipped. Shards the last run did not close cannot be added to.
+     */
+    public static void ingest(String[] files){
+        if (shardedDictionary != null && shardedDictionary.isLeftOpen())
+            throw new IllegalStateException("the shards of the last run were not closed, articles cannot be added to them");
+        use_spimi = true;
+        for (String file : files){
+            mainFileReader = new FileReader(file);
+            int first_article = query_index().getLastDocumentID() + 1;
+            article_number = Math.max(first_article, 1);
+            skipIndexedArticles();
+            doMainProcess();
+            mainFileReader.close();
+            System.out.println(file + ": articles " + first_article + " to " + (article_number - 1) + " added");
+        }
+    }
+
+    /**
+     * stems the query like the articles and returns the best articles for it, best first;
+     * a query with AND, OR, NOT, parentheses or "phrases" returns every matching article instead, in article order;
+     * nothing before indexing is done or after the index is closed
+     */
+    public static synchronized Vector<SearchResult> process_user_query(String query){
+        if (!index_ready || index_closed)
+            return new Vector<SearchResult>();
+        if (queryEngine == null)
+            queryEngine = new QueryEngine(query_index());
+        if (QueryEngine.isBooleanQuery(query))
+            return process_boolean_query(query);
+        String[] tokens = query.trim().split(" +");
         Vector<String> words = new Vector<String>();
         for(int i = 0 ; i < tokens.length ; i++){
             words.add(tokens[i]);
         }
+        normalize_query_words(words);
+        long a1 = System.currentTimeMillis();
+        Vector<SearchResult> results = queryEngine.search(words, top_k);
+        System.out.println("query " + words + ": " + results.size() + " results in " + (System.currentTimeMillis() - a1) + " ms");
+        return results;
+    }
+
+    public static Vector<SearchResult> process_boolean_query(String query){
+        Vector<SearchResult> results = new Vector<SearchResult>();
+        long a1 = System.currentTimeMillis();
+        Vector<Integer> docIDs;
+        try {
+            docIDs = queryEngine.searchBoolean(query, Main::normalize_query_words);
+        } catch (IllegalArgumentException e) {
+            System.out.println("bad query: " + e.getMessage());
+            return results;
+        }
+        System.out.println("query " + query + ": " + docIDs.size() + " articles in " + (System.currentTimeMillis() - a1) + " ms");
+        for (int docID : docIDs)
+            results.add(new SearchResult(docID, 0));
+        return results;
+    }
+
+    /**
+     * stems the words of a query term or phrase like the articles and removes the stop words;
+     * stemming leaves the last word of a list as it is, so an empty word is stemmed after them
+     */
+    public static void normalize_query_words(Vector<String> words){
+        words.add("");
         stemming(words);
+        words.remove(words.size() - 1);
         delete_stop_words(words);
-        // create dictionary for user command
-        for(String s : words){
-            userDictionary.insert(s,1);
-        }
-        TermPosting termPosting;
-        while ((termPosting = userDictionary.getNextTermPosting()) != null){
-            Vector<TermDocDetail> termDocDetails = termPosting.getData();
-            TermVector termVector = new TermVector(termPosting.getTerm());
-            // calculate weight of query words
-            for(int i = 0 ; i < termDocDetails.size() ; i++){
-                TermDocDetail termDocDetail = termDocDetails.elementAt(i);
-                double Nij = (double)termDocDetail.getOccurences();
-                double NmaxJ = 10;
-                double N = (double)1;
-                double Ni = (double)termDocDetails.size();
-                double weight = (Nij/NmaxJ)/(Math.log(N/Ni)/Math.log(2));
-                TermFreqVector termFreqVector = termVector.getFreqWeight();
-                FreqWeight freqWeight = new FreqWeight();
-                freqWeight.setFreq((long) weight);
-                termFreqVector.addNewFreqWeight(freqWeight,i);
+    }
+
+    /**
+     * positions of every term in words, the stemmed article without its stop words
+     */
+    public static HashMap<String, int[]> term_positions(Vector<String> words){
+        HashMap<String, Vector<Integer>> positionLists = new HashMap<String, Vector<Integer>>();
+        for (int i = 0; i < words.size(); i++){
+            Vector<Integer> positionList = positionLists.get(words.elementAt(i));
+            if (positionList == null){
+                positionList = new Vector<Integer>();
+                positionLists.put(words.elementAt(i), positionList);
             }
+            positionList.add(i);
+        }
+        HashMap<String, int[]> termPositions = new HashMap<String, int[]>();
+        for (Map.Entry<String, Vector<Integer>> entry : positionLists.entrySet()){
+            int[] positions = new int[entry.getValue().size()];
+            for (int i = 0; i < positions.length; i++)
+                positions[i] = entry.getValue().elementAt(i);
+            termPositions.put(entry.getKey(), positions);
         }
+        return termPositions;
     }
 
-
+    public static HashMap<String, Integer> term_freqs(Map<String, int[]> termPositions){
+        HashMap<String, Integer> termFreqs = new HashMap<String, Integer>();
+        for (Map.Entry<String, int[]> entry : termPositions.entrySet())
+            termFreqs.put(entry.getKey(), entry.getValue().length);
+        return termFreqs;
+    }
 
     public static void createStopWordsSet(){
         hashmap = new HashMap<String, Character>();
@@ -93,17 +221,47 @@ public class Main {
     }
 
     public static void createDictionary(Vector<String> words , int article_number){
-        for (String s : words){
-            //TODO insert docID instead of 0
-            dictionary.insert(s, article_number);
-        }
+        HashMap<String, int[]> termPositions = term_positions(words);
+        if (docTermIndexer != null)
+            docTermIndexer.addDocument(term_freqs(termPositions), article_number);
+        if (segmentedIndex != null)
+            segmentedIndex.addDocument(term_freqs(termPositions), article_number);
+        else if (shardedDictionary != null)
+            shardedDictionary.addPositionalDocument(termPositions, article_number);
+        else if (use_spimi)
+            spimiIndexer.addPositionalDocument(termPositions, article_number);
+        else
+            dictionary.addPositionalDocument(termPositions, article_number);
+    }
+
+    /**
+     * the index the documents go to and queries search
+     */
+    public static InvertedIndex query_index(){
+        return segmentedIndex != null ? segmentedIndex : shardedDictionary != null ? shardedDictionary : dictionary;
+    }
+
+    /**
+     * the term IDs of the index in use, shared by its postings, the forward index and the weights;
+     * segments have none of their own and take those of the dictionary
+     */
+    public static TermIDs term_ids(){
+        return shardedDictionary != null ? shardedDictionary.getTermIDs() : dictionary.getTermIDs();
     }
 
+    /**
+     * weighs every term in its documents; the vectors go to one weights file, in the order the terms are read
+     */
     public static void calculate_words_weight(){
+        if (weightsFile == null)
+            weightsFile = new WeightsFile("weights");
         TermPosting termPosting;
-        while ((termPosting =  dictionary.getNextTermPosting()) != null){
+        while ((termPosting = (segmentedIndex != null ? segmentedIndex.getNextTermPosting()
+                : shardedDictionary != null ? shardedDictionary.getNextTermPosting() : dictionary.getNextTermPosting())) != null){
             Vector<TermDocDetail> termDocDetails = termPosting.getData();
-            TermVector termVector = new TermVector(termPosting.getTerm());
+            int termID = termPosting.getTermID() >= 0 ? termPosting.getTermID() : term_ids().getOrAdd(termPosting.getTerm());
+            TermVector termVector = new TermVector(weightsFile, termID);
+            TermFreqVector termFreqVector = termVector.getFreqWeight();
             for(int i = 0 ; i < termDocDetails.size() ; i++){
             TermDocDetail termDocDetail = termDocDetails.elementAt(i);
                 double Nij = (double)termDocDetail.getOccurences();
@@ -111,17 +269,25 @@ public class Main {
                 double N = (double)article_number;
                 double Ni = (double)termDocDetails.size();
                 double weight = (Nij/NmaxJ)/(Math.log(N/Ni)/Math.log(2));
-                TermFreqVector termFreqVector = termVector.getFreqWeight();
                 FreqWeight freqWeight = new FreqWeight();
-                freqWeight.setFreq((long) weight);
+                freqWeight.setFreq(termDocDetail.getOccurences());
+                freqWeight.setValue(weight);
                 termFreqVector.addNewFreqWeight(freqWeight,i);
             }
+            termFreqVector.flush();
         }
     }
 
     public static void doMainProcess(){
         String article_name = "";
-        while ((words =mainFileReader.readWithBufferSize(1000000))!= null){
+        if (use_pipeline){
+            IndexingPipeline pipeline = new IndexingPipeline(mainFileReader, worker_count, queue_capacity);
+            article_number += pipeline.run(article_number);
+            stemm_time += pipeline.getStemTime();
+            delete_time += pipeline.getDeleteTime();
+            tree_adding += pipeline.getMergeTime();
+        }
+        while (!use_pipeline && (words =mainFileReader.readWithBufferSize(1000000))!= null){
 ////            System.out.println(words.size());
 //            if(last_tokens_ended_with_ARTICLE==true){
 //                //System.out.println(words.elementAt(0));
@@ -168,6 +334,18 @@ public class Main {
             tree_adding+= (a4-a3);
             article_number++;
         }
+        if (segmentedIndex != null){
+            long a1 = System.currentTimeMillis();
+            segmentedIndex.flush();
+            tree_adding += System.currentTimeMillis() - a1;
+        }
+        else if (use_spimi && shardedDictionary == null){
+            long a1 = System.currentTimeMillis();
+            spimiIndexer.finish(dictionary);
+            tree_adding += System.currentTimeMillis() - a1;
+        }
+        if (docTermIndexer != null)
+            docTermIndexer.sync();
     }
 
     public static void stemming(Vector<String> words){
@@ -218,7 +396,16 @@ public class Main {
         createStopWordsSet();
 //        long a3 = System.currentTimeMillis();
 //        System.out.println(a3-a2);
-        doMainProcess();
+        if (args.length > 0)
+            ingest(args);
+        else if (shardedDictionary != null ? shardedDictionary.isReopened() : dictionary.isReopened()){
+            article_number = query_index().getLastDocumentID() + 1;
+            System.out.println("index reopened, number of documents = " + query_index().getNumberOfDocuments());
+        }
+        else {
+            skipIndexedArticles();
+            doMainProcess();
+        }
         long a2 = System.currentTimeMillis();
         sum_time = a2-a1;
 //        long a4 = System.currentTimeMillis();
@@ -226,6 +413,35 @@ public class Main {
         System.out.println("stemm time =  " + stemm_time + "   delete time =   " + delete_time + "   adding time =  " + tree_adding + " read file time = " + (sum_time-(delete_time+tree_adding+stemm_time)) + "  sum time =  " + sum_time);
         System.out.println("number_of_articles = " + article_number);
         System.out.println(word_counter);
+        synchronized (Main.class){
+            index_ready = true;
+        }
+        gui.indexingFinished();
         System.out.println("khar!");
     }
+
+    /**
+     * closes the index once, after indexing is done and no query runs; an index still being written is left
+     * to the recovery of the next run
+     */
+    public static synchronized void close_index(){
+        if (!index_ready || index_closed)
+            return;
+        index_closed = true;
+        // the forward index goes first, it writes term IDs the dictionary closes
+        if (docTermIndexer != null)
+            docTermIndexer.close();
+        if (weightsFile != null)
+            weightsFile.close();
+        dictionary.close();
+        if (shardedDictionary != null)
+            shardedDictionary.close();
+        if (segmentedIndex != null)
+            segmentedIndex.close();
+        try {
+            RandomAccessFileManager.closeAll();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 }
\ No newline at end of file
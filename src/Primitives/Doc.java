@@ -7,8 +7,20 @@ public class Doc
 {
     private int docId;
     private TermVector termVector;
+    private DocVector docVector;
     private double distanceFromLeader;
 
+    public Doc(DocVector docVector)
+    {
+        this.docId = docVector.getDocID();
+        this.docVector = docVector;
+    }
+
+    public int getDocId()
+    {
+        return docId;
+    }
+
     public double getDistanceFromLeader()
     {
         return distanceFromLeader;
@@ -24,4 +36,12 @@ public class Doc
         return this.termVector;
     }
 
+    /**
+     * the weighted terms of the document, from the forward index
+     */
+    public DocVector getDocVector()
+    {
+        return this.docVector;
+    }
+
 }
@@ -0,0 +1,93 @@
+package Primitives;
+
+/**
+ * Sparse term vector of one document: term IDs in increasing order with the term frequencies,
+ * and the weights of the terms once a DocTermIndexer has weighed them.
+ */
+public class DocVector
+{
+    private final int docID;
+    private final int[] termIDs;
+    private final int[] freqs;
+    private final double[] weights;
+    private double norm;
+
+    public DocVector(int docID, int[] termIDs, int[] freqs)
+    {
+        this.docID = docID;
+        this.termIDs = termIDs;
+        this.freqs = freqs;
+        weights = new double[termIDs.length];
+        norm = -1;
+    }
+
+    public int getDocID()
+    {
+        return docID;
+    }
+
+    public int size()
+    {
+        return termIDs.length;
+    }
+
+    public int getTermID(int index)
+    {
+        return termIDs[index];
+    }
+
+    public int getFreq(int index)
+    {
+        return freqs[index];
+    }
+
+    public double getWeight(int index)
+    {
+        return weights[index];
+    }
+
+    public void setWeight(int index, double weight)
+    {
+        weights[index] = weight;
+        norm = -1;
+    }
+
+    /**
+     * euclidean length of the weights
+     */
+    public double getNorm()
+    {
+        if (norm < 0)
+        {
+            double sum = 0;
+            for (double weight : weights)
+                sum += weight * weight;
+            norm = Math.sqrt(sum);
+        }
+        return norm;
+    }
+
+    /**
+     * dot product of the weights, walking both term lists in order
+     */
+    public double dot(DocVector other)
+    {
+        double sum = 0;
+        for (int i = 0, j = 0; i < termIDs.length && j < other.termIDs.length; )
+        {
+            if (termIDs[i] < other.termIDs[j])
+                i++;
+            else if (termIDs[i] > other.termIDs[j])
+                j++;
+            else
+                sum += weights[i++] * other.weights[j++];
+        }
+        return sum;
+    }
+
+    public double cosine(DocVector other)
+    {
+        double norms = getNorm() * other.getNorm();
+        return norms == 0 ? 0 : dot(other) / norms;
+    }
+}
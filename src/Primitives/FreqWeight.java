@@ -2,7 +2,8 @@ package Primitives;
 
 import Primitives.Interfaces.Parsable;
 import Primitives.Interfaces.Sizeofable;
-import Utilities.ByteUtils;
+
+import java.nio.ByteBuffer;
 
 public class FreqWeight implements Sizeofable, Parsable
 {
@@ -61,38 +62,33 @@ public class FreqWeight implements Sizeofable, Parsable
         this.weight = weight;
     }
 
+    public long getFreq()
+    {
+        return freq;
+    }
+
     public void setFreq(long freq)
     {
         this.freq = freq;
     }
 
     @Override
-    public byte[] toByteArray()
+    public void writeTo(ByteBuffer buffer, int offset)
     {
-        byte[] bytes = new byte[sizeof()];
-        byte[] freqByte = ByteUtils.longToBytes(freq);
-        byte[] weightByte = ByteUtils.doubleToBytes(weight);
-        System.arraycopy(ByteUtils.intToBytes(freqByte.length), 0, bytes, 0, 1);
-        System.arraycopy(freqByte, 0, bytes, 1, freqByte.length);
-        System.arraycopy(weightByte, 0, bytes, freqByte.length+1, weightByte.length);
-        return bytes;
+        buffer.putLong(offset, freq);
+        buffer.putDouble(offset + Long.BYTES, weight);
     }
 
     @Override
-    public void parseFromByteArray(byte[] input)
+    public void readFrom(ByteBuffer buffer, int offset)
     {
-        int size = ByteUtils.bytesToInt(new byte[]{input[0]});
-        byte[] freqByte = new byte[size];
-        byte[] weightByte = new byte[input.length-size-1];
-        System.arraycopy(input, 1, freqByte, 0, freqByte.length);
-        System.arraycopy(input, freqByte.length+1, weightByte, 0, weightByte.length);
-        freq = ByteUtils.bytesToLong(freqByte);
-        weight = ByteUtils.bytesToDouble(weightByte);
+        freq = buffer.getLong(offset);
+        weight = buffer.getDouble(offset + Long.BYTES);
     }
 
     @Override
     public int sizeof()
     {
-        return Long.BYTES + Double.BYTES + 1; // store size
+        return Long.BYTES + Double.BYTES;
     }
 }
@@ -1,11 +1,19 @@
 package Primitives.Interfaces;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by danial on 5/2/16.
  */
 public interface Parsable
 {
-    byte[] toByteArray();
+    /**
+     * writes the value into buffer starting at offset, using absolute puts so the buffer position is left alone
+     */
+    void writeTo(ByteBuffer buffer, int offset);
 
-    void parseFromByteArray(byte[] input);
+    /**
+     * reads the value written by writeTo from buffer starting at offset
+     */
+    void readFrom(ByteBuffer buffer, int offset);
 }
@@ -0,0 +1,13 @@
+package Primitives.Interfaces;
+
+/**
+ * Merges a new occurrence into the value already stored for a key, used by tree upserts.
+ */
+public interface ValueMerger<Value>
+{
+    /**
+     * @param oldValue the stored value, null when the key does not exist yet
+     * @return the value to store for the key, may be oldValue itself after changing it in place
+     */
+    Value merge(Value oldValue);
+}
@@ -2,47 +2,53 @@ package Primitives;
 
 import Primitives.Interfaces.Parsable;
 import Primitives.Interfaces.Sizeofable;
-import Utilities.ByteUtils;
+
+import java.nio.ByteBuffer;
 
 public class TermAbstractDetail implements Parsable, Sizeofable
 {
     private Integer occurences;
     private Long filePtr; // for details stored on file
+    private int termID;
+
+    public TermAbstractDetail()
+    {
+        this(0, null);
+    }
 
     public TermAbstractDetail(Integer occurences, Long filePtr)
+    {
+        this(occurences, filePtr, -1);
+    }
+
+    public TermAbstractDetail(Integer occurences, Long filePtr, int termID)
     {
         this.occurences = occurences;
         this.filePtr = filePtr;
+        this.termID = termID;
     }
 
     @Override
-    public byte[] toByteArray()
+    public void writeTo(ByteBuffer buffer, int offset)
     {
-        byte[] bytes = new byte[sizeof()];
-        byte[] occrByte = ByteUtils.intToBytes(occurences);
-        byte[] ptrByte = ByteUtils.longToBytes(filePtr);
-        System.arraycopy(ByteUtils.intToBytes(occrByte.length), 0, bytes, 0, 1);
-        System.arraycopy(occrByte, 0, bytes, 1, occrByte.length);
-        System.arraycopy(ptrByte, 0, bytes, occrByte.length+1, ptrByte.length);
-        return bytes;
+        buffer.putInt(offset, occurences == null ? 0 : occurences);
+        buffer.putLong(offset + Integer.BYTES, filePtr == null ? -1 : filePtr);
+        buffer.putInt(offset + Integer.BYTES + Long.BYTES, termID);
     }
 
     @Override
-    public void parseFromByteArray(byte[] input)
+    public void readFrom(ByteBuffer buffer, int offset)
     {
-        int size = ByteUtils.bytesToInt(new byte[]{input[0]});
-        byte[] occrByte = new byte[size];
-        byte[] ptrByte = new byte[input.length-size-1];
-        System.arraycopy(input, 1, occrByte, 0, occrByte.length);
-        System.arraycopy(input, occrByte.length+1, ptrByte, 0, ptrByte.length);
-        occurences = ByteUtils.bytesToInt(occrByte);
-        filePtr = ByteUtils.bytesToLong(ptrByte);
+        occurences = buffer.getInt(offset);
+        long ptr = buffer.getLong(offset + Integer.BYTES);
+        filePtr = ptr == -1 ? null : ptr;
+        termID = buffer.getInt(offset + Integer.BYTES + Long.BYTES);
     }
 
     @Override
     public int sizeof()
     {
-        return Integer.BYTES + Long.BYTES + 1; // for store size
+        return 2 * Integer.BYTES + Long.BYTES;
     }
 
     public Integer getOccurences()
@@ -65,6 +71,14 @@ public class TermAbstractDetail implements Parsable, Sizeofable
         this.filePtr = filePtr;
     }
 
+    /**
+     * dense ID of the term in its dictionary, -1 if it has none
+     */
+    public int getTermID()
+    {
+        return termID;
+    }
+
     public void incrementOccurences()
     {
         occurences++;
@@ -2,11 +2,13 @@ package Primitives;
 
 import Primitives.Interfaces.Parsable;
 import Primitives.Interfaces.Sizeofable;
-import Utilities.ByteUtils;
+
+import java.nio.ByteBuffer;
 
 public class TermDocDetail implements Sizeofable, Parsable
 {
     private Integer occurences;
+    private int docID;
 
     public TermDocDetail() {
         this.occurences = 0;
@@ -17,17 +19,22 @@ public class TermDocDetail implements Sizeofable, Parsable
         this.occurences = occurences;
     }
 
+    public TermDocDetail(int docID, Integer occurences)
+    {
+        this.docID = docID;
+        this.occurences = occurences;
+    }
+
     @Override
-    public byte[] toByteArray()
+    public void writeTo(ByteBuffer buffer, int offset)
     {
-        return ByteUtils.intToBytes(occurences);
+        buffer.putInt(offset, occurences);
     }
 
     @Override
-    public void parseFromByteArray(byte[] input)
+    public void readFrom(ByteBuffer buffer, int offset)
     {
-//        System.out.println(input);
-        occurences = 10;//ByteUtils.bytesToInt(input);
+        occurences = buffer.getInt(offset);
     }
 
     @Override
@@ -46,6 +53,16 @@ public class TermDocDetail implements Sizeofable, Parsable
         this.occurences = occurences;
     }
 
+    public int getDocID()
+    {
+        return docID;
+    }
+
+    public void setDocID(int docID)
+    {
+        this.docID = docID;
+    }
+
     public void incrementOccurences()
     {
         occurences++;
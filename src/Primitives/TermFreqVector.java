@@ -1,35 +1,71 @@
 package Primitives;
 
-import DataStructures.Vector.FileVector;
-import FileManagement.RandomAccessFileManager;
+import DataStructures.Vector.WeightsFile;
 
+import java.util.Arrays;
+
+/**
+ * Weights of one term in the documents of its postings. New weights are kept in RAM until flush
+ * writes the whole vector to the weights file in one go; reads go to the file.
+ */
 public class TermFreqVector
 {
-    private FileVector<FreqWeight> fileVector;
-    private final int fileID;
-    private Long indexPtr;
+    private final WeightsFile weightsFile;
+    private final int termID;
     private TermVector termVectorParent;
+    private long[] freqs;
+    private double[] weights;
+    private int size; // of the vector in RAM, 0 once it is flushed
 
-    public TermFreqVector(TermVector termVectorParent, String fileName)
+    public TermFreqVector(TermVector termVectorParent, WeightsFile weightsFile, int termID)
     {
         this.termVectorParent = termVectorParent;
-        fileID = RandomAccessFileManager.createNewInstance(fileName);
-        fileVector = new FileVector<>(FreqWeight.class, fileID);
-        indexPtr = null;
+        this.weightsFile = weightsFile;
+        this.termID = termID;
+        freqs = new long[0];
+        weights = new double[0];
+        size = 0;
     }
 
     public void addNewFreqWeight(FreqWeight freqWeight, int location)
     {
-        if(indexPtr == null)
-            indexPtr = fileVector.writeElementAt(null, location, freqWeight);
-        else
-            fileVector.writeElementAt(indexPtr, location, freqWeight);
+        if (location >= freqs.length)
+        {
+            freqs = Arrays.copyOf(freqs, Math.max(location + 1, 2 * freqs.length));
+            weights = Arrays.copyOf(weights, freqs.length);
+        }
+        freqs[location] = freqWeight.getFreq();
+        weights[location] = freqWeight.getValue();
+        size = Math.max(size, location + 1);
+    }
+
+    /**
+     * writes the vector to the weights file, replacing what the term had there
+     */
+    public void flush()
+    {
+        if (size == 0)
+            return;
+        weightsFile.write(termID, freqs, weights, size);
+        freqs = new long[0];
+        weights = new double[0];
+        size = 0;
     }
 
     public FreqWeight elementAt(int offset)
     {
-        FreqWeight freqWeight = fileVector.elementAt(indexPtr, offset);
-        freqWeight.setTermVectorParent(termVectorParent);
+        FreqWeight freqWeight;
+        if (size > 0)
+        {
+            if (offset >= size)
+                return null;
+            freqWeight = new FreqWeight();
+            freqWeight.setFreq(freqs[offset]);
+            freqWeight.setValue(weights[offset]);
+        } else
+            freqWeight = weightsFile.elementAt(termID, offset);
+        if (freqWeight != null)
+            freqWeight.setTermVectorParent(termVectorParent);
         return freqWeight;
     }
 
@@ -40,6 +76,6 @@ public class TermFreqVector
 
     public int size()
     {
-        return fileVector.size();
+        return size > 0 ? size : weightsFile.size(termID);
     }
 }
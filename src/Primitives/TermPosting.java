@@ -5,12 +5,19 @@ import java.util.Vector;
 public class TermPosting
 {
     private String term;
+    private int termID;
     private Vector<TermDocDetail> data;
     private double idf;
 
     public TermPosting(String term, Vector<TermDocDetail> data, double idf)
+    {
+        this(term, -1, data, idf);
+    }
+
+    public TermPosting(String term, int termID, Vector<TermDocDetail> data, double idf)
     {
         this.term = term;
+        this.termID = termID;
         this.data = data;
         this.idf = idf;
     }
@@ -25,6 +32,14 @@ public class TermPosting
         this.term = term;
     }
 
+    /**
+     * dense ID of the term, -1 if the index gives none
+     */
+    public int getTermID()
+    {
+        return termID;
+    }
+
     public Vector<TermDocDetail> getData()
     {
         return data;
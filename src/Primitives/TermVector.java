@@ -1,13 +1,15 @@
 package Primitives;
 
+import DataStructures.Vector.WeightsFile;
+
 public class TermVector
 {
     private TermFreqVector termFreqVector;
 
 
-    public TermVector(String term)
+    public TermVector(WeightsFile weightsFile, int termID)
     {
-        termFreqVector = new TermFreqVector(this, term);
+        termFreqVector = new TermFreqVector(this, weightsFile, termID);
     }
 
     public int getLength()
@@ -0,0 +1,61 @@
+package QueryManagement;
+
+/**
+ * Okapi BM25: idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * length / average length)),
+ * with idf = log(1 + (N - df + 0.5) / (df + 0.5)) so terms in most documents still count a little.
+ */
+public class Bm25Scorer implements Scorer
+{
+    public static final double DEFAULT_K1 = 1.2;
+    public static final double DEFAULT_B = 0.75;
+
+    private final int numberOfDocuments;
+    private final double k1, b;
+    private final double[] lengthNorms; // k1 * (1 - b + b * length / average length) per docID
+
+    public Bm25Scorer(int numberOfDocuments, int[] documentLengths, double k1, double b)
+    {
+        this.numberOfDocuments = numberOfDocuments;
+        this.k1 = k1;
+        this.b = b;
+        long totalLength = 0;
+        int lengthCount = 0;
+        for (int length : documentLengths)
+            if (length > 0)
+            {
+                totalLength += length;
+                lengthCount++;
+            }
+        double averageLength = lengthCount == 0 ? 1 : (double) totalLength / lengthCount;
+        lengthNorms = new double[documentLengths.length];
+        for (int docID = 0; docID < documentLengths.length; docID++)
+            lengthNorms[docID] = k1 * (1 - b + b * documentLengths[docID] / averageLength);
+    }
+
+    public Bm25Scorer(int numberOfDocuments, int[] documentLengths)
+    {
+        this(numberOfDocuments, documentLengths, DEFAULT_K1, DEFAULT_B);
+    }
+
+    @Override
+    public double idf(int documentFrequency)
+    {
+        return Math.log(1 + (numberOfDocuments - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    @Override
+    public double score(double idf, int freq, int docID)
+    {
+        double lengthNorm = docID < lengthNorms.length ? lengthNorms[docID] : k1;
+        return idf * freq * (k1 + 1) / (freq + lengthNorm);
+    }
+
+    /**
+     * the length part is smallest for an empty document, and the score grows with tf
+     */
+    @Override
+    public double maxScore(double idf, int maxFreq)
+    {
+        return idf * maxFreq * (k1 + 1) / (maxFreq + k1 * (1 - b));
+    }
+}
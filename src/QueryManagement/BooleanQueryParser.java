@@ -0,0 +1,155 @@
+package QueryManagement;
+
+import java.util.Comparator;
+import java.util.Vector;
+import java.util.function.Consumer;
+
+/**
+ * Turns a boolean query into a tree of DocIterators over the index of a QueryEngine.
+ * <pre>
+ * query  := and (OR and)*
+ * and    := unary (AND? unary)*
+ * unary  := NOT unary | ( query ) | "word word ..." | word
+ * </pre>
+ * Words are given to the normalizer the way the articles were stemmed, a phrase as a whole; a word it drops
+ * (a stop word) drops out of its group, and a group of NOTs alone is taken against all documents.
+ */
+class BooleanQueryParser
+{
+    private final QueryEngine engine;
+    private final Consumer<Vector<String>> normalizer;
+    private final Vector<String> tokens;
+    private int position;
+
+    BooleanQueryParser(QueryEngine engine, String query, Consumer<Vector<String>> normalizer)
+    {
+        this.engine = engine;
+        this.normalizer = normalizer;
+        tokens = tokenize(query);
+    }
+
+    /**
+     * the iterator of the whole query, null if nothing of it is left after normalizing
+     */
+    DocIterator parse()
+    {
+        position = 0;
+        if (tokens.isEmpty())
+            return null;
+        DocIterator query = parseQuery();
+        if (position < tokens.size())
+            throw new IllegalArgumentException("unexpected " + tokens.elementAt(position) + " in query");
+        return query;
+    }
+
+    /**
+     * whether query uses any operator, otherwise it is better answered as a ranked query
+     */
+    static boolean isBooleanQuery(String query)
+    {
+        for (String token : tokenize(query))
+            if (isOperator(token))
+                return true;
+        return false;
+    }
+
+    private DocIterator parseQuery()
+    {
+        Vector<DocIterator> operands = new Vector<>();
+        addOperand(operands, parseAnd());
+        while (accept("OR"))
+            addOperand(operands, parseAnd());
+        if (operands.isEmpty())
+            return null;
+        return operands.size() == 1 ? operands.firstElement() : new DocIterator.Or(operands.toArray(new DocIterator[operands.size()]));
+    }
+
+    private DocIterator parseAnd()
+    {
+        Vector<DocIterator> included = new Vector<>(), excluded = new Vector<>();
+        do
+        {
+            accept("AND");
+            boolean negated = false;
+            while (accept("NOT"))
+                negated = !negated;
+            addOperand(negated ? excluded : included, parseOperand());
+        } while (position < tokens.size() && !tokens.elementAt(position).equals("OR") && !tokens.elementAt(position).equals(")"));
+        if (included.isEmpty() && excluded.isEmpty())
+            return null;
+        if (included.isEmpty())
+            included.add(engine.allDocuments());
+        // terms lead with the shortest, other operands follow
+        included.sort(Comparator.comparingInt(iterator -> iterator instanceof DocIterator.Term
+                ? ((DocIterator.Term) iterator).postingsCursor.size() : Integer.MAX_VALUE));
+        DocIterator include = included.size() == 1 ? included.firstElement()
+                : new DocIterator.And(included.toArray(new DocIterator[included.size()]));
+        if (excluded.isEmpty())
+            return include;
+        DocIterator exclude = excluded.size() == 1 ? excluded.firstElement()
+                : new DocIterator.Or(excluded.toArray(new DocIterator[excluded.size()]));
+        return new DocIterator.AndNot(include, exclude);
+    }
+
+    private DocIterator parseOperand()
+    {
+        if (position == tokens.size())
+            throw new IllegalArgumentException("query ends after an operator");
+        String token = tokens.elementAt(position++);
+        if (token.equals("("))
+        {
+            DocIterator query = parseQuery();
+            if (!accept(")"))
+                throw new IllegalArgumentException("missing ) in query");
+            return query;
+        }
+        Vector<String> words = new Vector<>();
+        if (token.equals("\""))
+        {
+            while (position < tokens.size() && !tokens.elementAt(position).equals("\""))
+                words.add(tokens.elementAt(position++));
+            if (!accept("\""))
+                throw new IllegalArgumentException("missing \" in query");
+        } else if (isOperator(token) || token.equals(")"))
+            throw new IllegalArgumentException("unexpected " + token + " in query");
+        else
+            words.add(token);
+        normalizer.accept(words);
+        if (words.isEmpty())
+            return null;
+        return words.size() == 1 ? engine.termDocuments(words.firstElement()) : engine.phraseDocuments(words);
+    }
+
+    private static void addOperand(Vector<DocIterator> operands, DocIterator operand)
+    {
+        if (operand != null)
+            operands.add(operand);
+    }
+
+    private boolean accept(String token)
+    {
+        if (position < tokens.size() && tokens.elementAt(position).equals(token))
+        {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isOperator(String token)
+    {
+        return token.equals("AND") || token.equals("OR") || token.equals("NOT") || token.equals("(") || token.equals("\"");
+    }
+
+    /**
+     * words, with parentheses and quotes as tokens of their own
+     */
+    private static Vector<String> tokenize(String query)
+    {
+        Vector<String> tokens = new Vector<>();
+        for (String word : query.replace("(", " ( ").replace(")", " ) ").replace("\"", " \" ").trim().split("\\s+"))
+            if (!word.isEmpty())
+                tokens.add(word);
+        return tokens;
+    }
+}
@@ -0,0 +1,300 @@
+package QueryManagement;
+
+import DataStructures.Postings.PostingsCursor;
+
+import java.util.Arrays;
+
+/**
+ * Matching documents of a boolean query node in increasing docID order; like a PostingsCursor it starts
+ * on its first document, and docID() is NO_MORE_DOCS once it has passed the last one.
+ */
+abstract class DocIterator
+{
+    static final int NO_MORE_DOCS = PostingsCursor.NO_MORE_DOCS;
+
+    abstract int docID();
+
+    /**
+     * moves to the next document and returns its docID
+     */
+    abstract int next();
+
+    /**
+     * moves to the first document whose docID is not less than target and returns its docID; the iterator does not move back
+     */
+    abstract int advance(int target);
+
+    /**
+     * documents of a term, straight from its postings
+     */
+    static class Term extends DocIterator
+    {
+        final PostingsCursor postingsCursor;
+
+        Term(PostingsCursor postingsCursor)
+        {
+            this.postingsCursor = postingsCursor;
+        }
+
+        @Override
+        int docID()
+        {
+            return postingsCursor.docID();
+        }
+
+        @Override
+        int next()
+        {
+            return postingsCursor.next();
+        }
+
+        @Override
+        int advance(int target)
+        {
+            return postingsCursor.advance(target);
+        }
+    }
+
+    static class Empty extends DocIterator
+    {
+        @Override
+        int docID()
+        {
+            return NO_MORE_DOCS;
+        }
+
+        @Override
+        int next()
+        {
+            return NO_MORE_DOCS;
+        }
+
+        @Override
+        int advance(int target)
+        {
+            return NO_MORE_DOCS;
+        }
+    }
+
+    /**
+     * every document of the index, the ones whose length is not 0; the base of a query that starts with NOT
+     */
+    static class All extends DocIterator
+    {
+        private final int[] documentLengths;
+        private int docID;
+
+        All(int[] documentLengths)
+        {
+            this.documentLengths = documentLengths;
+            docID = -1;
+            next();
+        }
+
+        @Override
+        int docID()
+        {
+            return docID;
+        }
+
+        @Override
+        int next()
+        {
+            return advance(docID + 1);
+        }
+
+        @Override
+        int advance(int target)
+        {
+            if (docID >= target)
+                return docID;
+            for (docID = target; docID < documentLengths.length; docID++)
+                if (documentLengths[docID] > 0)
+                    return docID;
+            return docID = NO_MORE_DOCS;
+        }
+    }
+
+    /**
+     * documents of all iterators; the first one leads, so it should be the shortest
+     */
+    static class And extends DocIterator
+    {
+        final DocIterator[] iterators;
+        private int docID;
+
+        And(DocIterator[] iterators)
+        {
+            this.iterators = iterators;
+            docID = align(iterators[0].docID());
+        }
+
+        @Override
+        int docID()
+        {
+            return docID;
+        }
+
+        @Override
+        int next()
+        {
+            return docID = align(iterators[0].next());
+        }
+
+        @Override
+        int advance(int target)
+        {
+            return docID = align(iterators[0].advance(target));
+        }
+
+        /**
+         * first document from candidate on that all iterators have
+         */
+        private int align(int candidate)
+        {
+            while (candidate != NO_MORE_DOCS)
+            {
+                int i = 1;
+                for (; i < iterators.length; i++)
+                {
+                    int docID = iterators[i].advance(candidate);
+                    if (docID > candidate)
+                    {
+                        candidate = iterators[0].advance(docID);
+                        break;
+                    }
+                }
+                if (i < iterators.length)
+                    continue;
+                if (matches())
+                    return candidate;
+                candidate = iterators[0].next();
+            }
+            return NO_MORE_DOCS;
+        }
+
+        /**
+         * further condition on a document all iterators are on
+         */
+        boolean matches()
+        {
+            return true;
+        }
+    }
+
+    /**
+     * documents of any of the iterators
+     */
+    static class Or extends DocIterator
+    {
+        private final DocIterator[] iterators;
+        private int docID;
+
+        Or(DocIterator[] iterators)
+        {
+            this.iterators = iterators;
+            docID = minDocID();
+        }
+
+        @Override
+        int docID()
+        {
+            return docID;
+        }
+
+        @Override
+        int next()
+        {
+            if (docID == NO_MORE_DOCS)
+                return docID;
+            return advance(docID + 1);
+        }
+
+        @Override
+        int advance(int target)
+        {
+            if (docID >= target)
+                return docID;
+            for (DocIterator iterator : iterators)
+                iterator.advance(target);
+            return docID = minDocID();
+        }
+
+        private int minDocID()
+        {
+            int min = NO_MORE_DOCS;
+            for (DocIterator iterator : iterators)
+                min = Math.min(min, iterator.docID());
+            return min;
+        }
+    }
+
+    /**
+     * documents of include that exclude does not have
+     */
+    static class AndNot extends DocIterator
+    {
+        private final DocIterator include, exclude;
+        private int docID;
+
+        AndNot(DocIterator include, DocIterator exclude)
+        {
+            this.include = include;
+            this.exclude = exclude;
+            docID = skipExcluded(include.docID());
+        }
+
+        @Override
+        int docID()
+        {
+            return docID;
+        }
+
+        @Override
+        int next()
+        {
+            return docID = skipExcluded(include.next());
+        }
+
+        @Override
+        int advance(int target)
+        {
+            return docID = skipExcluded(include.advance(target));
+        }
+
+        private int skipExcluded(int candidate)
+        {
+            while (candidate != NO_MORE_DOCS && exclude.advance(candidate) == candidate)
+                candidate = include.next();
+            return candidate;
+        }
+    }
+
+    /**
+     * documents holding the terms next to each other in the given order; a document whose postings have no positions does not match
+     */
+    static class Phrase extends And
+    {
+        Phrase(Term[] terms)
+        {
+            super(terms);
+        }
+
+        @Override
+        boolean matches()
+        {
+            int[][] positions = new int[iterators.length][];
+            for (int i = 0; i < iterators.length; i++)
+                positions[i] = ((Term) iterators[i]).postingsCursor.positions();
+            for (int first : positions[0])
+            {
+                int i = 1;
+                while (i < positions.length && Arrays.binarySearch(positions[i], first + i) >= 0)
+                    i++;
+                if (i == positions.length)
+                    return true;
+            }
+            return false;
+        }
+    }
+}
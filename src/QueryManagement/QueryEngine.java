@@ -0,0 +1,271 @@
+package QueryManagement;
+
+import DataStructures.Postings.PostingsCursor;
+import DocIndexingManagement.Indexing.InvertedIndex;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Ranked retrieval over an index: the k best documents for a bag of query terms, scored by BM25 or tf-idf.
+ * Postings are read document at a time through cursors, and a cursor only decodes the blocks it stops in.
+ * <p>
+ * Disjunctive queries find their documents with WAND: cursors are kept in docID order, and the pivot is the first cursor at which
+ * the summed score bounds pass the score of the k-th best document so far. A document before the pivot
+ * cannot get into the top k, so the cursors before the pivot skip straight to it, and only documents that
+ * may enter the heap are scored. Conjunctive queries lead with the shortest list and let the others
+ * advance to its documents.
+ * <p>
+ * Boolean queries with AND, OR, NOT and quoted phrases are answered by BooleanQueryParser as sets of documents,
+ * phrases from the positions of the postings; other queries never read positions.
+ */
+public class QueryEngine
+{
+    public static final int DEFAULT_TOP_K = 10;
+
+    private final InvertedIndex index;
+    private final boolean bm25;
+    private Scorer scorer;
+    private int scorerDocuments; // number of documents the scorer was built for
+    private int[] documentLengths;
+    private int lengthsDocuments; // number of documents the lengths were read for
+
+    public QueryEngine(InvertedIndex index, boolean bm25)
+    {
+        this.index = index;
+        this.bm25 = bm25;
+        scorerDocuments = lengthsDocuments = -1;
+    }
+
+    public QueryEngine(InvertedIndex index)
+    {
+        this(index, true);
+    }
+
+    /**
+     * the k best documents holding any of terms, best first; a term given twice counts twice
+     */
+    public Vector<SearchResult> search(Vector<String> terms, int k)
+    {
+        Vector<TermCursor> cursors = openCursors(terms);
+        return wand(cursors.toArray(new TermCursor[cursors.size()]), k);
+    }
+
+    /**
+     * the k best documents holding all of terms, best first
+     */
+    public Vector<SearchResult> searchConjunctive(Vector<String> terms, int k)
+    {
+        Vector<TermCursor> cursors = openCursors(terms);
+        if (cursors.isEmpty() || cursors.size() < new HashSet<>(terms).size())
+            return new Vector<>();
+        cursors.sort(Comparator.comparingInt(TermCursor::size));
+        PriorityQueue<SearchResult> heap = new PriorityQueue<>(Math.max(k, 1), Collections.reverseOrder());
+        TermCursor lead = cursors.firstElement();
+        int candidate = lead.docID();
+        while (candidate != TermCursor.NO_MORE_DOCS && k > 0)
+        {
+            int i = 1;
+            for (; i < cursors.size(); i++)
+            {
+                int docID = cursors.elementAt(i).advance(candidate);
+                if (docID > candidate)
+                {
+                    candidate = lead.advance(docID);
+                    break;
+                }
+            }
+            if (i < cursors.size())
+                continue;
+            double score = 0;
+            for (TermCursor cursor : cursors)
+                score += cursor.score();
+            offer(heap, k, new SearchResult(candidate, score));
+            candidate = lead.next();
+        }
+        return sortedResults(heap);
+    }
+
+    /**
+     * a cursor for every distinct term of the index in terms, weighted by how often the query has it
+     */
+    private Vector<TermCursor> openCursors(Vector<String> terms)
+    {
+        HashMap<String, Integer> queryFreqs = new HashMap<>();
+        for (String term : terms)
+        {
+            Integer freq = queryFreqs.get(term);
+            queryFreqs.put(term, freq == null ? 1 : freq + 1);
+        }
+        Scorer scorer = getScorer();
+        Vector<TermCursor> cursors = new Vector<>();
+        for (Map.Entry<String, Integer> entry : queryFreqs.entrySet())
+        {
+            PostingsCursor postingsCursor = index.getPostingsCursor(entry.getKey());
+            if (postingsCursor != null && postingsCursor.docID() != PostingsCursor.NO_MORE_DOCS)
+                cursors.add(new TermCursor(postingsCursor, scorer, entry.getValue()));
+        }
+        return cursors;
+    }
+
+    public Vector<SearchResult> search(Vector<String> terms)
+    {
+        return search(terms, DEFAULT_TOP_K);
+    }
+
+    /**
+     * all documents matching a boolean query in docID order; normalizer stems the words of the query in place
+     * and removes the ones that are not indexed
+     */
+    public Vector<Integer> searchBoolean(String query, Consumer<Vector<String>> normalizer)
+    {
+        Vector<Integer> docIDs = new Vector<>();
+        DocIterator iterator = new BooleanQueryParser(this, query, normalizer).parse();
+        if (iterator == null)
+            return docIDs;
+        for (int docID = iterator.docID(); docID != DocIterator.NO_MORE_DOCS; docID = iterator.next())
+            docIDs.add(docID);
+        return docIDs;
+    }
+
+    /**
+     * whether query has boolean operators, parentheses or phrases for searchBoolean
+     */
+    public static boolean isBooleanQuery(String query)
+    {
+        return BooleanQueryParser.isBooleanQuery(query);
+    }
+
+    DocIterator termDocuments(String term)
+    {
+        PostingsCursor postingsCursor = index.getPostingsCursor(term);
+        if (postingsCursor == null)
+            return new DocIterator.Empty();
+        return new DocIterator.Term(postingsCursor);
+    }
+
+    DocIterator phraseDocuments(Vector<String> terms)
+    {
+        DocIterator.Term[] iterators = new DocIterator.Term[terms.size()];
+        for (int i = 0; i < iterators.length; i++)
+        {
+            DocIterator iterator = termDocuments(terms.elementAt(i));
+            if (!(iterator instanceof DocIterator.Term))
+                return iterator;
+            iterators[i] = (DocIterator.Term) iterator;
+        }
+        return new DocIterator.Phrase(iterators);
+    }
+
+    DocIterator allDocuments()
+    {
+        return new DocIterator.All(getDocumentLengths());
+    }
+
+    private Vector<SearchResult> wand(TermCursor[] cursors, int k)
+    {
+        // worst result on top, so it is the one to replace
+        PriorityQueue<SearchResult> heap = new PriorityQueue<>(Math.max(k, 1), Collections.reverseOrder());
+        double threshold = 0;
+        int live = cursors.length;
+        while (k > 0)
+        {
+            live = sortByDocID(cursors, live);
+            int pivot = -1;
+            double bound = 0;
+            for (int i = 0; i < live; i++)
+            {
+                bound += cursors[i].getMaxScore();
+                if (bound > threshold)
+                {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot == -1)
+                break;
+            int pivotDocID = cursors[pivot].docID();
+            if (cursors[0].docID() == pivotDocID)
+            {
+                double score = 0;
+                for (int i = 0; i < live && cursors[i].docID() == pivotDocID; i++)
+                {
+                    score += cursors[i].score();
+                    cursors[i].next();
+                }
+                if (offer(heap, k, new SearchResult(pivotDocID, score)) && heap.size() == k)
+                    threshold = heap.peek().getScore();
+            } else
+                for (int i = 0; i < pivot; i++)
+                    cursors[i].advance(pivotDocID);
+        }
+        return sortedResults(heap);
+    }
+
+    /**
+     * keeps result if it is among the k best so far
+     */
+    private static boolean offer(PriorityQueue<SearchResult> heap, int k, SearchResult result)
+    {
+        if (heap.size() == k)
+        {
+            if (result.compareTo(heap.peek()) >= 0)
+                return false;
+            heap.poll();
+        }
+        heap.add(result);
+        return true;
+    }
+
+    private static Vector<SearchResult> sortedResults(PriorityQueue<SearchResult> heap)
+    {
+        Vector<SearchResult> results = new Vector<>(heap);
+        Collections.sort(results);
+        return results;
+    }
+
+    /**
+     * insertion sort, the cursors are almost in order after a step; returns the number of cursors not at their end
+     */
+    private static int sortByDocID(TermCursor[] cursors, int live)
+    {
+        for (int i = 1; i < live; i++)
+        {
+            TermCursor cursor = cursors[i];
+            int j = i - 1;
+            for (; j >= 0 && cursors[j].docID() > cursor.docID(); j--)
+                cursors[j + 1] = cursors[j];
+            cursors[j + 1] = cursor;
+        }
+        while (live > 0 && cursors[live - 1].docID() == TermCursor.NO_MORE_DOCS)
+            live--;
+        return live;
+    }
+
+    /**
+     * the scorer for the current index; document statistics are read again after documents are added
+     */
+    private Scorer getScorer()
+    {
+        // documents inserted term by term are not counted, their docIDs still bound the number
+        int numberOfDocuments = Math.max(index.getNumberOfDocuments(), index.getLastDocumentID());
+        if (scorer == null || scorerDocuments != numberOfDocuments)
+        {
+            scorer = bm25 ? new Bm25Scorer(numberOfDocuments, getDocumentLengths())
+                    : new TfIdfScorer(numberOfDocuments);
+            scorerDocuments = numberOfDocuments;
+        }
+        return scorer;
+    }
+
+    private int[] getDocumentLengths()
+    {
+        int numberOfDocuments = Math.max(index.getNumberOfDocuments(), index.getLastDocumentID());
+        if (documentLengths == null || lengthsDocuments != numberOfDocuments)
+        {
+            documentLengths = index.getDocumentLengths();
+            lengthsDocuments = numberOfDocuments;
+        }
+        return documentLengths;
+    }
+}
@@ -0,0 +1,16 @@
+package QueryManagement;
+
+/**
+ * Weight of a query term in a document. The idf of a term is computed once per query and passed to the other methods.
+ */
+public interface Scorer
+{
+    double idf(int documentFrequency);
+
+    double score(double idf, int freq, int docID);
+
+    /**
+     * upper bound of score over all documents holding the term at most maxFreq times, used to skip documents
+     */
+    double maxScore(double idf, int maxFreq);
+}
@@ -0,0 +1,39 @@
+package QueryManagement;
+
+/**
+ * A document found by a query with its score; the natural order puts the better result first.
+ */
+public class SearchResult implements Comparable<SearchResult>
+{
+    private final int docID;
+    private final double score;
+
+    public SearchResult(int docID, double score)
+    {
+        this.docID = docID;
+        this.score = score;
+    }
+
+    public int getDocID()
+    {
+        return docID;
+    }
+
+    public double getScore()
+    {
+        return score;
+    }
+
+    @Override
+    public int compareTo(SearchResult other)
+    {
+        int compareResult = Double.compare(other.score, score);
+        return compareResult != 0 ? compareResult : Integer.compare(docID, other.docID);
+    }
+
+    @Override
+    public String toString()
+    {
+        return docID + " " + score;
+    }
+}
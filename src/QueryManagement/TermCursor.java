@@ -0,0 +1,57 @@
+package QueryManagement;
+
+import DataStructures.Postings.PostingsCursor;
+
+/**
+ * Position of a query term in its postings, with the term's weight and score bound for the query.
+ */
+class TermCursor
+{
+    static final int NO_MORE_DOCS = PostingsCursor.NO_MORE_DOCS;
+
+    private final PostingsCursor postingsCursor;
+    private final Scorer scorer;
+    private final double idf, queryWeight, maxScore;
+
+    /**
+     * queryWeight multiplies the term's scores, it is the number of times the term is in the query
+     */
+    TermCursor(PostingsCursor postingsCursor, Scorer scorer, int queryWeight)
+    {
+        this.postingsCursor = postingsCursor;
+        this.scorer = scorer;
+        this.queryWeight = queryWeight;
+        idf = scorer.idf(postingsCursor.size());
+        maxScore = queryWeight * scorer.maxScore(idf, postingsCursor.getMaxFreq());
+    }
+
+    int docID()
+    {
+        return postingsCursor.docID();
+    }
+
+    double score()
+    {
+        return queryWeight * scorer.score(idf, postingsCursor.freq(), postingsCursor.docID());
+    }
+
+    double getMaxScore()
+    {
+        return maxScore;
+    }
+
+    int size()
+    {
+        return postingsCursor.size();
+    }
+
+    int next()
+    {
+        return postingsCursor.next();
+    }
+
+    int advance(int target)
+    {
+        return postingsCursor.advance(target);
+    }
+}
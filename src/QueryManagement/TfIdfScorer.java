@@ -0,0 +1,32 @@
+package QueryManagement;
+
+/**
+ * (1 + log tf) * log(N / df)
+ */
+public class TfIdfScorer implements Scorer
+{
+    private final int numberOfDocuments;
+
+    public TfIdfScorer(int numberOfDocuments)
+    {
+        this.numberOfDocuments = numberOfDocuments;
+    }
+
+    @Override
+    public double idf(int documentFrequency)
+    {
+        return Math.log((double) numberOfDocuments / documentFrequency);
+    }
+
+    @Override
+    public double score(double idf, int freq, int docID)
+    {
+        return (1 + Math.log(freq)) * idf;
+    }
+
+    @Override
+    public double maxScore(double idf, int maxFreq)
+    {
+        return score(idf, maxFreq, 0);
+    }
+}
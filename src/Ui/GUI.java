@@ -3,8 +3,6 @@ package Ui;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
-import sun.plugin.dom.core.*;
-import sun.plugin.dom.core.Document;
 
 import javax.swing.*;
 import javax.swing.event.DocumentListener;
@@ -27,6 +25,7 @@ public class GUI extends JFrame{
     JButton open;
     JTextField fileField;
     JButton run;
+    JTextArea resultsArea;
 
     public void initFileChooser(){
         FileDialog fd = new FileDialog(this,"choose a file",FileDialog.LOAD);
@@ -88,14 +87,40 @@ public class GUI extends JFrame{
         run = new JButton("RUN");
         run.setSize(200,(int)this.getHeight()/10);
         run.setLocation(4*(int)this.getSize().width/10,7*(int)this.getHeight()/40);
+        // queries wait for the index, see indexingFinished
+        run.setEnabled(false);
         this.getContentPane().add(run);
-        run.addMouseListener(new MouseAdapter() {
+        run.addActionListener(new ActionListener() {
             @Override
-            public void mouseClicked(MouseEvent mouseEvent) {
+            public void actionPerformed(ActionEvent actionEvent) {
                 String text = queryField.getText();
-                Main.Main.process_user_query(text);
+                StringBuilder results = new StringBuilder();
+                for (QueryManagement.SearchResult result : Main.Main.process_user_query(text))
+                    results.append("article ").append(result.getDocID()).append("   ").append(String.format("%.4f", result.getScore())).append('\n');
+                resultsArea.setText(results.length() == 0 ? "no results" : results.toString());
             }
         });
+
+        resultsArea = new JTextArea();
+        resultsArea.setEditable(false);
+        JScrollPane resultsPane = new JScrollPane(resultsArea);
+        resultsPane.setSize(18*this.getSize().width/20,20*this.getHeight()/40);
+        resultsPane.setLocation(this.getSize().width/20,12*this.getHeight()/40);
+        this.getContentPane().add(resultsPane);
+        // exiting runs the shutdown hook of Main, which closes the index
+        this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         this.setVisible(true);
     }
+
+    /**
+     * lets queries run, called from the indexing thread once the index is complete
+     */
+    public void indexingFinished(){
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                run.setEnabled(true);
+            }
+        });
+    }
 }
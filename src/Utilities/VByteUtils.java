@@ -0,0 +1,76 @@
+package Utilities;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable byte coding of non negative ints: 7 bits per byte, low groups first,
+ * the high bit of a byte is set when more bytes follow.
+ */
+public class VByteUtils
+{
+    public static final int MAX_BYTES = 5; // bytes needed by the largest int
+
+    /**
+     * number of bytes value takes once coded
+     */
+    public static int size(int value)
+    {
+        int size = 1;
+        while ((value & ~0x7F) != 0)
+        {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    public static void write(OutputStream out, int value) throws IOException
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    public static int read(InputStream in) throws IOException
+    {
+        int value = 0, shift = 0, b;
+        do
+        {
+            b = in.read();
+            if (b == -1)
+                throw new EOFException();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    public static void write(ByteBuffer out, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    public static int read(ByteBuffer in)
+    {
+        int value = 0, shift = 0, b;
+        do
+        {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}